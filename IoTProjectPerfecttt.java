@@ -1,9 +1,25 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.*;
 import java.util.List;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.*;
 import javax.swing.border.*;
 
@@ -11,11 +27,42 @@ import javax.swing.border.*;
  * IoTProjectPerfecttt.java
  * Final single-file IoT simulator (Fullscreen Enabled)
  *
- * Compile: javac IoTProjectPerfecttt.java
+ * Compile: javac IoTProjectPerfecttt.java   (or mvn -B package, which also builds the JMH benchmarks)
  * Run:     java IoTProjectPerfecttt
+ * Fleet:   java IoTProjectPerfecttt --fleet 100000 [--shards 4] [--seconds 30] [--store dir] [--seed n] [--speed 1|10|1000|max] [--ingest] [--rate 0-99=1000] [--signals uniform] [--uplink latency=50ms,loss=0.01] [--outage 50%@10s+15s] [--workers 4] [--types temp] [--summary run.json]
+ * Scenario: java IoTProjectPerfecttt --scenario run.scenario [--fleet options]   (file format in Scenario; AppCDS archive in the README)
+ * Record:  java -Diot.store=telemetry IoTProjectPerfecttt
+ * Export:  java -Diot.export=format=influx,to=export,gzip IoTProjectPerfecttt   (or --fleet ... --export spec; spec in Exporter.parse)
+ * Ingest:  START SERVER listens on 127.0.0.1 (-Diot.port=N, default ephemeral)
+ * Metrics: http://127.0.0.1:9404/metrics (-Diot.metricsPort=N, -1 = off) and JMX iot.simulator:type=Metrics
+ * Alerts:  -Diot.rules=alerts.rules replaces the built-in rules (format in RuleEngine)
+ * Heatmap: java -Diot.fleet=100000 IoTProjectPerfecttt   (Fleet tab: one cell per device, see FleetHeatmap)
+ * Load:    java IoTProjectPerfecttt --load 50000 [--target host:port] [--ramp 10] [--steady 20] [--spike 5] [--spike-factor 5]
+ * Checkpoint: java -Diot.checkpoint=sim.ckpt IoTProjectPerfecttt   (or --fleet ... --checkpoint file[,every=30s] / --restore file; format in Checkpoint)
+ * Replay:  java -Diot.replay=telemetry -Diot.speed=1000 IoTProjectPerfecttt   (or --fleet --replay telemetry)
  */
 public class IoTProjectPerfecttt {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].startsWith("--")) System.setProperty("java.awt.headless", "true");
+        if (args.length > 0 && args[0].equals("--scenario")) {
+            try {
+                if (args.length < 2) throw new IllegalArgumentException("usage: --scenario <file> [--fleet options]");
+                args = Scenario.args(java.nio.file.Paths.get(args[1]), Arrays.copyOfRange(args, 2, args.length));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("[scenario] " + e.getMessage());
+                System.exit(2);
+            }
+        }
+        if (args.length > 0 && args[0].equals("--fleet")) {
+            int status = FleetEngine.runHeadless(args);
+            if (status != 0) System.exit(status);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--load")) {
+            LoadGenerator.runHeadless(args);
+            return;
+        }
+
         try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); }
         catch (Exception ignored) {}
 
@@ -154,22 +201,119 @@ class SensorCard extends JPanel {
 
 /* --------------------- Dashboard --------------------- */
 class Dashboard extends JFrame {
+    static final Color CHART_BG = new Color(248,248,249);
+    static final Color CHART_GRID = new Color(224,224,226);
+    static final Color CHART_AXIS = new Color(70,70,70);
+    static final Color CHART_TEXT = new Color(30,30,30);
+    static final Color CHART_MUTED = new Color(130,130,130);
+    static final Font CHART_AXIS_FONT = new Font("Segoe UI", Font.PLAIN, 12);
+    static final Font CHART_EMPTY_FONT = new Font("Segoe UI", Font.PLAIN, 14);
+    static final Font CHART_TITLE_FONT = new Font("Segoe UI", Font.BOLD, 13);
+    static final BasicStroke CHART_LINE = new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    static final BasicStroke CHART_THIN = new BasicStroke(1.2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    static final BasicStroke[] CHART_GLOW = {
+        new BasicStroke(8, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND),
+        new BasicStroke(6, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND),
+        new BasicStroke(4, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND)
+    };
+
     private final boolean enableTemp, enableMotion;
-    private final DefaultListModel<String> deviceModel = new DefaultListModel<>();
-    private final JTextArea logArea = new JTextArea();
+    private final DeviceRegistry registry = new DeviceRegistry();
+    private final DeviceListModel deviceModel = new DeviceListModel(registry);
+    private final JList<String> deviceList = new JList<>(deviceModel);
+    private final int[] registryIds = { -1, -1 };
+    private long shownRegistry = -1;
+    private final LogRing logRing = new LogRing(Integer.getInteger("iot.logQueue", 1 << 16));
+    private final LogStore logStore = new LogStore(Integer.getInteger("iot.logLines", 1 << 20));
+    private final LogView logView = new LogView(logStore);
+    private final JLabel logStatus = new JLabel(" ");
+    private final javax.swing.Timer frameTimer = new javax.swing.Timer(1000 / LogView.FPS, e -> onFrame());
+    private long shownLines = -1, shownDropped = -1;
     private final JLabel serverLabel = new JLabel("Server: STOPPED", SwingConstants.CENTER);
     private final JLabel devicesLabel = new JLabel("Devices: 0", SwingConstants.CENTER);
 
-    private ScheduledExecutorService executor;
-    private ScheduledFuture<?> tempTask, motionTask;
+    private ExecutorService executor;
+    private Future<?> driverTask;
+    private ReplayDriver driver;
+    private volatile IngestServer server;
+    private IngestClient client;
+
+    // per-hop latency, each measured from the sender's stamp on the sample's frame
+    private static final String HOP_HELP = "Time from sample generation to each pipeline stage.";
+    private final Metrics metrics = new Metrics();
+    private final LatencyHistogram ingestLatency = metrics.summary("iot_latency_seconds", "ingest", HOP_HELP);
+    private final LatencyHistogram insertLatency = metrics.summary("iot_latency_seconds", "insert", HOP_HELP);
+    private final LatencyHistogram postLatency = metrics.summary("iot_latency_seconds", "post", HOP_HELP);
+    private final LatencyHistogram paintLatency = metrics.summary("iot_latency_seconds", "paint", HOP_HELP);
+    private final LatencyHistogram edtLag = metrics.summary("iot_edt_lag_seconds", null, "Queueing delay of a probe posted to the EDT every 100 ms.");
+    private final LatencyHistogram frameTime = metrics.summary("iot_frame_seconds", null, "Chart paint time per frame.");
+    private final LatencyHistogram gcPauses = metrics.summary("iot_gc_pause_seconds", null, "Collection pauses reported by the JVM.");
+    private final LongAdder ingested = new LongAdder();
+    private final AtomicInteger probesPending = new AtomicInteger();
+    private long generatedBefore, framesBefore;
+    private volatile long tempStamp, motionStamp;
+    private final LatestValues latest = new LatestValues(2);    // slot per device: 0 temperature, 1 motion
+    private final MetricsPanel statsPanel = new MetricsPanel(metrics);
+    private volatile WindowAggregator aggregates = newAggregates();
+    private final AlertPanel alertPanel = new AlertPanel();
+    private final LongAdder alerts = new LongAdder();
+    private List<RuleEngine.Rule> ruleSet;
+    private volatile RuleEngine rules;
+    private final Aggregate shownAggregate = new Aggregate();
+
+    /* -Diot.seed fixes the sensor streams; -Diot.replay=<dir> re-drives a recorded store; -Diot.speed=1|10|1000|max. */
+    private final long seed = Long.getLong("iot.seed", new SplittableRandom().nextLong());
+    private final String replayDir = System.getProperty("iot.replay");
+    private final double speed = SimClock.parseSpeed(System.getProperty("iot.speed", "1"));
+    private SimClock clock = SimClock.wall();
 
-    private final Deque<Sample> tempBuf = new ArrayDeque<>();
-    private final Deque<Sample> motionBuf = new ArrayDeque<>();
-    private final int MAX = 90;
+    private final int MAX = Integer.getInteger("iot.history", 90);
+    private final int HISTORY = Math.max(MAX, Integer.getInteger("iot.historyDepth", 1_000_000));
+    private final SampleRing tempBuf = new SampleRing(HISTORY, true);
+    private final SampleRing motionBuf = new SampleRing(HISTORY, true);
+    private final ChartView chartView = new ChartView();
+    private final ButtonGroup spanGroup = new ButtonGroup();
+    private JToggleButton liveBtn;
+
+    /* A device that has not reported for this long (virtual time) is shown offline. */
+    private static final long OFFLINE_AFTER_MS = 5_000;
 
     private final ValueCard tempCard = new ValueCard("Temperature", "— °C", new Color(72,201,176));
     private final ValueCard motionCard = new ValueCard("Motion", "—", new Color(245,158,11));
 
+    /* Both sensors plus their type groups; the sketch range covers the simulated temperatures. */
+    private static WindowAggregator newAggregates() {
+        return new WindowAggregator(2, WindowAggregator.groupByType(2), 2, true, 0, 50);
+    }
+    private TempPanel tempPanel;
+    private MotionPanel motionPanel;
+
+    /* -Diot.fleet=N adds a Fleet tab: N more simulated devices on one shard, drawn as a heatmap. */
+    private final int fleetSize = Math.max(0, Integer.getInteger("iot.fleet", 0));
+    private final JPanel fleetGrid = new JPanel(new BorderLayout());
+    private final JPanel fleetDetail = new JPanel(new BorderLayout());
+    private final JLabel fleetStatus = new JLabel(" ");
+    private FleetHeatmap.Mode fleetMode = FleetHeatmap.Mode.VALUE;
+    private FleetEngine fleet;
+    private FleetHeatmap heatmap;
+    private StripChart fleetChart;
+    private volatile Focus focus;
+
+    /* The device whose samples the fleet thread copies into a ring for the detail chart. */
+    private static final class Focus {
+        final int device;
+        final SampleRing ring = new SampleRing(1 << 14, true);
+        Focus(int device) { this.device = device; }
+    }
+
+    private TelemetryStore store;
+    private int tempId, motionId;
+    private Exporter exporter;
+
+    /* -Diot.checkpoint=<file>: STOP saves the run and the next START, in this or a later session, resumes it. */
+    private final String checkpointFile = System.getProperty("iot.checkpoint");
+    private final List<ReplayDriver.Generated> generated = new ArrayList<>();
+
     Dashboard(boolean t, boolean m) {
         this.enableTemp = t;
         this.enableMotion = m;
@@ -194,9 +338,8 @@ class Dashboard extends JFrame {
         add(header, BorderLayout.NORTH);
 
         // Left device list
-        JList<String> deviceList = new JList<>(deviceModel);
-        deviceList.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-        add(cardWrap("Connected Devices", new JScrollPane(deviceList), 300), BorderLayout.WEST);
+        add(cardWrap("Connected Devices", deviceListPanel(), 300), BorderLayout.WEST);
+        add(cardWrap("Alerts", alertPanel, 320), BorderLayout.EAST);
 
         // Center panel layout
         JPanel center = new JPanel(new BorderLayout(10,10));
@@ -207,25 +350,43 @@ class Dashboard extends JFrame {
         cards.setOpaque(false);
         cards.add(tempCard);
         cards.add(motionCard);
+        cards.add(statsPanel);
         center.add(cards, BorderLayout.NORTH);
 
+        JPanel charts = new JPanel(new BorderLayout(6,6));
+        charts.setOpaque(false);
+        charts.add(viewControls(), BorderLayout.NORTH);
         if (enableTemp && enableMotion) {
             JPanel graphs = new JPanel(new GridLayout(1, 2, 12, 12));
             graphs.setOpaque(false);
-            graphs.add(cardWrap("Temperature Sensor (°C)", new TempPanel(420), -1));
-            graphs.add(cardWrap("Motion Sensor (Activity)", new MotionPanel(420), -1));
-            center.add(graphs, BorderLayout.CENTER);
+            graphs.add(cardWrap("Temperature Sensor (°C)", tempPanel = new TempPanel(420), -1));
+            graphs.add(cardWrap("Motion Sensor (Activity)", motionPanel = new MotionPanel(420), -1));
+            charts.add(graphs, BorderLayout.CENTER);
         } else if (enableTemp) {
-            center.add(cardWrap("Temperature Sensor (°C)", new TempPanel(560), -1), BorderLayout.CENTER);
+            charts.add(cardWrap("Temperature Sensor (°C)", tempPanel = new TempPanel(560), -1), BorderLayout.CENTER);
         } else {
-            center.add(cardWrap("Motion Sensor (Activity)", new MotionPanel(560), -1), BorderLayout.CENTER);
+            charts.add(cardWrap("Motion Sensor (Activity)", motionPanel = new MotionPanel(560), -1), BorderLayout.CENTER);
+        }
+        if (fleetSize > 0) {
+            JTabbedPane tabs = new JTabbedPane();
+            tabs.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+            tabs.addTab("Sensors", charts);
+            tabs.addTab(String.format("Fleet (%,d)", fleetSize), fleetView());
+            center.add(tabs, BorderLayout.CENTER);
+        } else {
+            center.add(charts, BorderLayout.CENTER);
         }
 
-        logArea.setFont(new Font("Consolas", Font.PLAIN, 13));
-        logArea.setEditable(false);
-        JScrollPane logScroll = new JScrollPane(logArea);
+        JScrollPane logScroll = new JScrollPane(logView);
         logScroll.setPreferredSize(new Dimension(0, 160));
-        center.add(cardWrap("Activity Logs", logScroll, -1), BorderLayout.SOUTH);
+        logStatus.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        logStatus.setForeground(new Color(110,110,110));
+        logStatus.setBorder(new EmptyBorder(4,6,2,6));
+        JPanel logPanel = new JPanel(new BorderLayout());
+        logPanel.setOpaque(false);
+        logPanel.add(logScroll, BorderLayout.CENTER);
+        logPanel.add(logStatus, BorderLayout.SOUTH);
+        center.add(cardWrap("Activity Logs", logPanel, -1), BorderLayout.SOUTH);
 
         add(center, BorderLayout.CENTER);
 
@@ -253,7 +414,7 @@ class Dashboard extends JFrame {
             stopSensors();
         });
 
-        clearBtn.addActionListener(e -> logArea.setText(""));
+        clearBtn.addActionListener(e -> { logStore.clear(); logView.refresh(); });
 
         backBtn.addActionListener(e -> {
             stopSensors();
@@ -270,26 +431,190 @@ class Dashboard extends JFrame {
 
         add(bottom, BorderLayout.SOUTH);
 
-        new javax.swing.Timer(200, e -> repaint()).start();
+        frameTimer.start();
 
-        seed();
+        startMetrics();
+        openStore();
+        openExport();
+        loadRules();
+        if (!restoreHistory()) seed();
         log("Dashboard ready. Press START SERVER to begin.");
         setVisible(true);
     }
 
     private void seed() {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long now = clock.now();
         if (enableTemp) {
-            double v = 22 + Math.random()*4;
-            tempBuf.add(new Sample(System.currentTimeMillis(), v));
+            double v = 22 + rnd.nextDouble()*4;
+            tempBuf.add(now, v);
             tempCard.setValue(String.format("%.2f °C", v));
         }
         if (enableMotion) {
-            int v = Math.random() > 0.5 ? 1 : 0;
-            motionBuf.add(new Sample(System.currentTimeMillis(), v));
+            int v = rnd.nextDouble() > 0.5 ? 1 : 0;
+            motionBuf.add(now, v);
             motionCard.setValue(v==1 ? "DETECTED" : "NONE");
         }
     }
 
+    /* Prefix search plus type and status filters over the registry-backed device list. */
+    private JPanel deviceListPanel() {
+        deviceList.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        deviceList.setFixedCellHeight(22);
+        deviceList.setPrototypeCellValue("MotionSensor-100000  ·  offline  ·  active  ·  1,000,000");
+
+        JTextField search = new JTextField();
+        search.setToolTipText("Name prefix");
+        JComboBox<String> type = new JComboBox<>(new String[] { "All types", "Temperature", "Motion" });
+        JComboBox<String> status = new JComboBox<>(new String[] { "Any status", "Online", "Offline" });
+        Runnable apply = () -> deviceModel.filter(search.getText().trim(),
+                type.getSelectedIndex() == 0 ? -1 : type.getSelectedIndex() == 1 ? FleetEngine.TEMP : FleetEngine.MOTION,
+                status.getSelectedIndex() == 0 ? -1 : status.getSelectedIndex() == 1 ? DeviceRegistry.ONLINE : DeviceRegistry.OFFLINE);
+        search.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { apply.run(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { apply.run(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { apply.run(); }
+        });
+        type.addActionListener(e -> apply.run());
+        status.addActionListener(e -> apply.run());
+
+        JPanel filters = new JPanel(new BorderLayout(0, 6));
+        filters.setOpaque(false);
+        filters.setBorder(new EmptyBorder(0, 0, 8, 0));
+        JPanel combos = new JPanel(new GridLayout(1, 2, 6, 0));
+        combos.setOpaque(false);
+        combos.add(type);
+        combos.add(status);
+        filters.add(search, BorderLayout.NORTH);
+        filters.add(combos, BorderLayout.SOUTH);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setOpaque(false);
+        panel.add(filters, BorderLayout.NORTH);
+        panel.add(new JScrollPane(deviceList), BorderLayout.CENTER);
+        return panel;
+    }
+
+    /* Live / span buttons and the decimation mode for the shared chart view. */
+    private JPanel viewControls() {
+        JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        bar.setOpaque(false);
+        String[] names = { "Live", "1m", "10m", "1h", "1d", "All" };
+        long[] spans = { 0, 60_000L, 600_000L, 3_600_000L, 86_400_000L, -1 };
+        for (int i = 0; i < names.length; i++) {
+            long span = spans[i];
+            JToggleButton b = new JToggleButton(names[i], i == 0);
+            b.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+            b.setFocusPainted(false);
+            b.addActionListener(e -> {
+                if (span == 0) chartView.showLive();
+                else chartView.showSpan(span > 0 ? span : recordedSpan());
+            });
+            if (i == 0) liveBtn = b;
+            spanGroup.add(b);
+            bar.add(b);
+        }
+
+        JComboBox<String> mode = new JComboBox<>(new String[] { "Min/Max", "LTTB" });
+        mode.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        mode.addActionListener(e -> chartView.setMode(mode.getSelectedIndex() == 1 ? Decimator.LTTB : Decimator.MINMAX));
+        JLabel hint = new JLabel("Decimation:");
+        hint.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        bar.add(Box.createHorizontalStrut(12));
+        bar.add(hint);
+        bar.add(mode);
+
+        JLabel help = new JLabel("wheel = zoom  ·  drag = pan  ·  double-click = live");
+        help.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        help.setForeground(new Color(120,120,120));
+        bar.add(Box.createHorizontalStrut(12));
+        bar.add(help);
+        return bar;
+    }
+
+    /* Heatmap of the -Diot.fleet devices over the chart of the one last clicked. */
+    private JPanel fleetView() {
+        JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        bar.setOpaque(false);
+        JLabel hint = new JLabel("Color by:");
+        hint.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        JComboBox<String> mode = new JComboBox<>(new String[] { "Value", "Alerts / faults", "Staleness" });
+        mode.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        JLabel legend = new JLabel();
+        legend.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        legend.setForeground(new Color(120,120,120));
+        Runnable apply = () -> {
+            fleetMode = FleetHeatmap.Mode.values()[mode.getSelectedIndex()];
+            if (heatmap != null) heatmap.setMode(fleetMode);
+            legend.setText(fleetMode == FleetHeatmap.Mode.VALUE ? "blue " + (int) FleetHeatmap.TEMP_LO + " °C → red " + (int) FleetHeatmap.TEMP_HI + " °C  ·  motion: dark idle, amber active"
+                         : fleetMode == FleetHeatmap.Mode.ALERTS ? "red alerting  ·  amber drifting  ·  violet stuck  ·  green ok"
+                         : "green fresh → orange → grey silent " + OFFLINE_AFTER_MS / 1000 + " s");
+        };
+        mode.addActionListener(e -> apply.run());
+        apply.run();
+        JLabel help = new JLabel("click a cell for its chart");
+        help.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        help.setForeground(new Color(120,120,120));
+        bar.add(hint);
+        bar.add(mode);
+        bar.add(Box.createHorizontalStrut(12));
+        bar.add(legend);
+        bar.add(Box.createHorizontalStrut(12));
+        bar.add(help);
+
+        fleetStatus.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        fleetStatus.setForeground(new Color(110,110,110));
+        fleetStatus.setBorder(new EmptyBorder(4,6,2,6));
+        fleetGrid.setOpaque(false);
+        fleetGrid.add(emptyNote("Press START SERVER to run the fleet."), BorderLayout.CENTER);
+        fleetGrid.add(fleetStatus, BorderLayout.SOUTH);
+        fleetDetail.setOpaque(false);
+        fleetDetail.setPreferredSize(new Dimension(0, 230));
+        fleetDetail.add(emptyNote("No device selected."), BorderLayout.CENTER);
+
+        JPanel view = new JPanel(new BorderLayout(6,6));
+        view.setOpaque(false);
+        view.add(bar, BorderLayout.NORTH);
+        view.add(cardWrap("Devices", fleetGrid, -1), BorderLayout.CENTER);
+        view.add(fleetDetail, BorderLayout.SOUTH);
+        return view;
+    }
+
+    private static JLabel emptyNote(String text) {
+        JLabel note = new JLabel(text, SwingConstants.CENTER);
+        note.setFont(CHART_EMPTY_FONT);
+        note.setForeground(CHART_MUTED);
+        return note;
+    }
+
+    /* A fresh ring and chart per selection, so the fleet thread never writes into a ring that is being reset. */
+    private void focusDevice(int device) {
+        Focus f = new Focus(device);
+        fleetChart = FleetEngine.typeOf(device) == FleetEngine.TEMP ? new TempPanel(f.ring, 200) : new MotionPanel(f.ring, 200);
+        focus = f;
+        fleetDetail.removeAll();
+        fleetDetail.add(cardWrap(FleetEngine.nameOf(device) + (FleetEngine.typeOf(device) == FleetEngine.TEMP ? " (°C)" : " (Activity)"), fleetChart, -1), BorderLayout.CENTER);
+        fleetDetail.revalidate();
+        fleetDetail.repaint();
+    }
+
+    /* Keeps the span buttons in sync after the view was changed from a chart. */
+    private void viewChanged(boolean live) {
+        if (live) liveBtn.setSelected(true);
+        else spanGroup.clearSelection();
+    }
+
+    private long recordedSpan() {
+        long lo = Long.MAX_VALUE, hi = Long.MIN_VALUE;
+        for (StripChart c : new StripChart[] { tempPanel, motionPanel }) {
+            long[] b = c == null ? null : c.timeBounds();
+            if (b == null) continue;
+            lo = Math.min(lo, b[0]);
+            hi = Math.max(hi, b[1]);
+        }
+        return hi > lo ? hi - lo + 1000 : 60_000L;
+    }
+
     private JPanel cardWrap(String title, JComponent comp, int width) {
         JPanel wrap = new JPanel(new BorderLayout());
         wrap.setOpaque(false);
@@ -310,60 +635,474 @@ class Dashboard extends JFrame {
         return wrap;
     }
 
-    private void log(String msg) {
-        SwingUtilities.invokeLater(() -> {
-            String t = new java.text.SimpleDateFormat("HH:mm:ss").format(new Date());
-            logArea.append("[" + t + "] " + msg + "\n");
-            logArea.setCaretPosition(logArea.getDocument().getLength());
+    /*
+     * Samples are stamped when their frame is opened on the device side; each hop records
+     * the time since that stamp. Published over JMX and on http://127.0.0.1:<iot.metricsPort>/metrics.
+     */
+    private void startMetrics() {
+        tempCard.track(postLatency);
+        motionCard.track(postLatency);
+        metrics.watchGc(gcPauses);
+        metrics.counter("iot_samples_generated_total", "Samples emitted by the simulated devices.",
+                () -> { ReplayDriver d = driver; return generatedBefore + (d != null ? d.samples() : 0); });
+        metrics.counter("iot_samples_ingested_total", "Samples decoded by the ingest server and delivered to the dashboard.", ingested::sum);
+        metrics.rate("iot_samples_per_second", "Samples delivered to the dashboard in the last second.", ingested::sum);
+        metrics.rate("iot_ingest_frames_per_second", "Frames decoded by the ingest server in the last second.",
+                () -> { IngestServer srv = server; return framesBefore + (srv != null ? srv.frames() : 0); });
+        metrics.counter("iot_log_dropped_total", "Activity log records dropped because the log queue was full.", logRing::dropped);
+        metrics.counter("iot_ui_coalesced_total", "Card updates overwritten by a newer value before the EDT showed them.", latest::coalesced);
+        metrics.rate("iot_ui_coalesced_per_second", "Card updates coalesced away in the last second.", latest::coalesced);
+        metrics.counter("iot_alerts_total", "Alerts raised by the rule engine.", alerts::sum);
+        metrics.every(RuleEngine.SWEEP_MS, () -> {
+            // allow one sweep of wall-clock pipeline lag, which is a lot of virtual time at 1000x
+            RuleEngine re = rules;
+            SimClock c = clock;
+            if (re != null) re.tick(c.now() - (long) (RuleEngine.SWEEP_MS * Math.max(1, c.speed())));
+        });
+        metrics.gauge("iot_edt_probes_pending", "EDT probes posted but not yet run (one is posted every 100 ms).", probesPending::get);
+        metrics.every(100, () -> {
+            long posted = System.nanoTime();
+            probesPending.incrementAndGet();
+            SwingUtilities.invokeLater(() -> {
+                edtLag.record(System.nanoTime() - posted);
+                probesPending.decrementAndGet();
+            });
         });
+
+        try {
+            metrics.registerJmx();
+        } catch (javax.management.JMException e) {
+            log("JMX metrics unavailable: " + e.getMessage());
+        }
+        int port = Integer.getInteger("iot.metricsPort", 9404);
+        if (port < 0) return;
+        try {
+            log("Metrics at http://127.0.0.1:" + metrics.serveHttp(port) + "/metrics");
+        } catch (IOException e) {
+            log("Metrics endpoint unavailable on port " + port + ": " + e.getMessage());
+        }
     }
 
-    private void addDevice(String name) {
-        SwingUtilities.invokeLater(() -> {
-            if (!deviceModel.contains(name)) deviceModel.addElement(name);
-            devicesLabel.setText("Devices: " + deviceModel.size());
-        });
+    /* Persists every sample when started with -Diot.store=<dir>. */
+    private void openStore() {
+        String dir = System.getProperty("iot.store");
+        if (dir == null) return;
+        try {
+            store = new TelemetryStore(java.nio.file.Paths.get(dir));
+            tempId = store.register("TempSensor-1", FleetEngine.TEMP);
+            motionId = store.register("MotionSensor-1", FleetEngine.MOTION);
+            log("Recording telemetry to " + dir);
+        } catch (IOException e) {
+            store = null;
+            log("Telemetry store unavailable: " + e.getMessage());
+        }
+    }
+
+    private Checkpoint openCheckpoint() {
+        if (checkpointFile == null || replayDir != null) return null;
+        java.nio.file.Path path = java.nio.file.Paths.get(checkpointFile);
+        if (!java.nio.file.Files.exists(path)) return null;
+        try {
+            return new Checkpoint(path);
+        } catch (IOException e) {
+            log("Checkpoint unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /* The registry and both history rings come back when the dashboard opens; the rest waits for START. */
+    private boolean restoreHistory() {
+        Checkpoint cp = openCheckpoint();
+        if (cp == null) return false;
+        Checkpoint.In reg = cp.first(Checkpoint.REGISTRY);
+        if (reg != null) registry.load(reg);
+        long samples = 0;
+        for (Checkpoint.In in : cp.all(Checkpoint.RING)) {
+            int slot = in.getInt(), n = in.getInt();
+            long[] t = new long[n];
+            double[] v = new double[n];
+            in.getLongs(t, 0, n);
+            in.getDoubles(v, 0, n);
+            SampleRing ring = slot == FleetEngine.TEMP ? tempBuf : motionBuf;
+            for (int i = 0; i < n; i++) ring.add(t[i], v[i]);
+            samples += n;
+            if (n == 0) continue;
+            if (slot == FleetEngine.TEMP) tempCard.setValue(String.format("%.2f °C", v[n - 1]));
+            else motionCard.setValue(v[n - 1] == 1 ? "DETECTED" : "NONE");
+        }
+        log(String.format("Restored %,d samples of history and %,d devices from %s.", samples, registry.size(), checkpointFile));
+        return true;
+    }
+
+    /*
+     * Runs once the driver and the fleet have stopped and the ingest server is closed, so
+     * nothing it copies is still being written. Samples still in flight on the loopback link
+     * at that moment are not in the history.
+     */
+    private void saveCheckpoint() {
+        if (checkpointFile == null || replayDir != null) return;
+        long began = System.nanoTime();
+        List<Checkpoint.Section> sections = new ArrayList<>();
+        sections.add(registry.section());
+        sections.add(ringSection(FleetEngine.TEMP, tempBuf));
+        sections.add(ringSection(FleetEngine.MOTION, motionBuf));
+        sections.add(aggregates.section());
+        for (ReplayDriver.Generated g : generated) sections.add(new Checkpoint.Section(Checkpoint.STREAM, ReplayDriver.Generated.BYTES, g::save));
+        try {
+            if (fleet != null) sections.addAll(fleet.capture(null).sections());
+            long bytes = Checkpoint.write(java.nio.file.Paths.get(checkpointFile), sections);
+            log(String.format("Checkpoint saved to %s (%.1f MB, %d ms).", checkpointFile, bytes / 1e6, (System.nanoTime() - began) / 1_000_000));
+        } catch (IOException e) {
+            log("Checkpoint failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Checkpoint.Section ringSection(int slot, SampleRing ring) {
+        long from = ring.oldest();
+        int n = (int) (ring.written() - from);
+        long[] t = new long[n];
+        double[] v = new double[n];
+        ring.copyRange(from, n, t, v);
+        return new Checkpoint.Section(Checkpoint.RING, 8 + 16L * n, o -> o.putInt(slot).putInt(n).putLongs(t, 0, n).putDoubles(v, 0, n));
+    }
+
+    /* Streams every sample out when started with -Diot.export=<spec>; see Exporter.parse for the spec. */
+    private void openExport() {
+        String spec = System.getProperty("iot.export");
+        if (spec == null) return;
+        try {
+            exporter = Exporter.parse(spec);
+            log("Exporting telemetry to " + exporter.target);
+        } catch (IOException | IllegalArgumentException e) {
+            exporter = null;
+            log("Telemetry export unavailable: " + e.getMessage());
+        }
+    }
+
+    @Override public void dispose() {
+        frameTimer.stop();
+        metrics.close();
+        if (exporter != null) {
+            try {
+                if (executor != null) executor.awaitTermination(1, TimeUnit.SECONDS);
+                exporter.close();
+            } catch (IOException | InterruptedException ignored) {}
+            exporter = null;
+        }
+        if (store != null) {
+            try {
+                if (executor != null) executor.awaitTermination(1, TimeUnit.SECONDS);
+                store.close();
+            } catch (IOException | InterruptedException ignored) {}
+            store = null;
+        }
+        super.dispose();
+    }
+
+    private void log(String msg) {
+        logRing.offer(clock.now(), msg, LogRing.TEXT, 0);
+    }
+
+    private void logValue(long t, String device, byte kind, double value) {
+        logRing.offer(t, device, kind, value);
+    }
+
+    /* Runs once per frame on the EDT: only panels whose ring moved since their last paint are repainted. */
+    private void onFrame() {
+        if (tempPanel != null && tempPanel.isStale()) tempPanel.repaint();
+        if (motionPanel != null && motionPanel.isStale()) motionPanel.repaint();
+        if (fleetChart != null && fleetChart.isShowing() && fleetChart.isStale()) fleetChart.repaint();
+        if (heatmap != null && heatmap.isShowing()) showFleet();
+        latest.drain(this::showLatest);
+        flushLogs();
+        showDevices();
+        showIngestStats();
+    }
+
+    /* Newest reading per card, formatted on the EDT once per frame rather than once per sample. */
+    private void showLatest(int slot, long t, double v, long stamp) {
+        if (slot == FleetEngine.TEMP) tempCard.setValue(String.format("%.2f °C", v), stamp);
+        else motionCard.setValue(v == 1 ? "DETECTED" : "NONE", stamp);
+    }
+
+    private void showFleet() {
+        heatmap.refresh();
+        fleetStatus.setText(String.format("%,d devices  ·  %,d alerting  ·  %,d silent  ·  %,d cells redrawn",
+                heatmap.devices(), heatmap.alerting(), heatmap.offline(), heatmap.changed()));
+    }
+
+    /* One list update per frame however many devices changed status in between. */
+    private void showDevices() {
+        deviceModel.refresh();
+        long v = registry.version();
+        if (v == shownRegistry) return;
+        shownRegistry = v;
+        devicesLabel.setText(String.format("Devices: %,d online / %,d", registry.online(), registry.size()));
+    }
+
+    /* The metrics roll once a second; the header and stats panel just show the latest values. */
+    private void showIngestStats() {
+        if (!statsPanel.refresh()) return;
+        showAggregates();
+        registry.sweep(clock.now(), OFFLINE_AFTER_MS);
+        deviceList.repaint();
+        IngestServer srv = server;
+        if (srv == null) return;
+        serverLabel.setText(String.format("Server: RUNNING :%d  ·  %,.0f msg/s  ·  p99 %.2f ms", srv.port(),
+                metrics.value("iot_ingest_frames_per_second"), metrics.value("iot_latency_seconds_ingest_p99_ms")));
+    }
+
+    /* -Diot.rules=<file> replaces the built-in rules; see RuleEngine for the format. */
+    private void loadRules() {
+        String file = System.getProperty("iot.rules");
+        if (file != null) {
+            try {
+                ruleSet = RuleEngine.load(java.nio.file.Paths.get(file));
+                log("Loaded " + ruleSet.size() + " alert rules from " + file + ".");
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                log("Alert rules unavailable, using defaults: " + e.getMessage());
+            }
+        }
+        ruleSet = RuleEngine.parse(RuleEngine.DEFAULTS);
+    }
+
+    /* Called on the ingest thread; alerts are rare, so formatting here is fine. */
+    private void onAlert(RuleEngine.Rule rule, int subject, long t, double value, boolean raised) {
+        String who = rule.kind == RuleEngine.Kind.ZONE ? "zone " + subject : FleetEngine.nameOf(subject);
+        String msg;
+        if (!raised) {
+            msg = String.format("cleared %s: %s", rule.name, who);
+        } else if (rule.kind == RuleEngine.Kind.ZONE) {
+            msg = String.format("ALERT %s: %s %.0f%% active (%s)", rule.name, who, value * 100, rule.text);
+        } else if (rule.kind == RuleEngine.Kind.SILENCE) {
+            msg = String.format("ALERT %s: %s quiet for %.1f s", rule.name, who, value / 1000);
+        } else {
+            msg = String.format("ALERT %s: %s at %.2f (%s)", rule.name, who, value, rule.text);
+        }
+        if (raised) alerts.increment();
+        log(msg);
+        String line = String.format("%tT  %s", t, msg);
+        SwingUtilities.invokeLater(() -> alertPanel.add(line, raised));
+    }
+
+    /* Card footers read the precomputed one-minute sliding window rather than the sample rings. */
+    private void showAggregates() {
+        WindowAggregator agg = aggregates;
+        long now = agg.newest();
+        if (now == Long.MIN_VALUE) return;
+        Aggregate a = agg.read(FleetEngine.TEMP, WindowAggregator.MINUTE, true, now, shownAggregate);
+        if (a.count > 0) {
+            tempCard.setDetail(String.format("1 min  avg %.1f  ·  p95 %.1f  ·  %.1f–%.1f", a.mean(), a.percentile(0.95), a.min, a.max));
+        }
+        a = agg.read(FleetEngine.MOTION, WindowAggregator.MINUTE, true, now, shownAggregate);
+        if (a.count > 0) {
+            motionCard.setDetail(String.format("1 min  %.0f%% active  ·  %,d readings", a.dutyCycle() * 100, a.count));
+        }
+    }
+
+    /* Moves everything queued since the last frame into the log view. */
+    private void flushLogs() {
+        if (logRing.drainTo(logStore, LogView.MAX_PER_FRAME) > 0) logView.refresh();
+
+        long lines = logStore.size(), dropped = logRing.dropped();
+        if (lines != shownLines || dropped != shownDropped) {
+            shownLines = lines;
+            shownDropped = dropped;
+            logStatus.setText(String.format("%,d lines  ·  %,d dropped", lines, dropped));
+        }
+    }
+
+    /* Devices stay listed once registered; they come online with their first sample. */
+    private void addDevice(int device, String name) {
+        registryIds[device] = registry.register(name, FleetEngine.typeOf(device));
     }
 
     private void removeAllDevices() {
-        SwingUtilities.invokeLater(() -> {
-            deviceModel.clear();
-            devicesLabel.setText("Devices: 0");
-        });
+        registry.markAllOffline();
     }
 
+    /*
+     * Both sensors run as streams merged by one ReplayDriver on a SimClock: generated from
+     * the seed by default, or read back from -Diot.replay. Either way the run is repeatable.
+     */
     private void startSensors() {
         if (executor != null && !executor.isShutdown()) return;
 
-        executor = Executors.newScheduledThreadPool(3);
-        serverLabel.setText("Server: RUNNING");
+        List<ReplayDriver.Stream> streams = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        Checkpoint cp = openCheckpoint();
+        generated.clear();
+        if (replayDir != null) {
+            start = loadRecording(streams);
+            if (streams.isEmpty()) {
+                log("Nothing to replay in " + replayDir);
+                return;
+            }
+        } else {
+            boolean[] resumed = new boolean[2];
+            if (cp != null) {
+                long first = Long.MAX_VALUE;
+                for (Checkpoint.In in : cp.all(Checkpoint.STREAM)) {
+                    ReplayDriver.Generated g = ReplayDriver.Generated.load(in);
+                    if (g.device == FleetEngine.TEMP ? !enableTemp : !enableMotion) continue;
+                    generated.add(g);
+                    resumed[g.device] = true;
+                    first = Math.min(first, g.nextTime());
+                }
+                if (first != Long.MAX_VALUE) start = first;        // the clock picks up where the saved run stopped
+            }
+            if (enableTemp && !resumed[FleetEngine.TEMP]) generated.add(ReplayDriver.generated(FleetEngine.TEMP, seed, start, FleetEngine.TEMP_PERIOD_MS));
+            if (enableMotion && !resumed[FleetEngine.MOTION]) generated.add(ReplayDriver.generated(FleetEngine.MOTION, seed, start, FleetEngine.MOTION_PERIOD_MS));
+            streams.addAll(generated);
+        }
+
+        try {
+            SampleSink sink = new SampleSink() {
+                @Override public void accept(int device, long t, double v) { onSample(device, t, v); }
+                @Override public void endBatch() { Exporter e = exporter; if (e != null) e.endBatch(); }
+            };
+            server = new IngestServer(Integer.getInteger("iot.port", 0), sink, ingestLatency).start();
+            client = new IngestClient(server.address());
+        } catch (IOException e) {
+            log("Ingest server failed to start: " + e.getMessage());
+            closeIngest();
+            return;
+        }
+
+        // devices talk to the server over loopback; decoded frames land in onSample
+        aggregates = newAggregates();
+        Checkpoint.In saved = cp != null ? cp.first(Checkpoint.AGGREGATES) : null;
+        if (saved != null && !aggregates.load(saved)) log("Checkpoint aggregates do not fit this dashboard; starting them empty.");
+        rules = new RuleEngine(ruleSet, 2, this::onAlert);
+        clock = new SimClock(start, speed);
+        driver = new ReplayDriver(clock, client, streams.toArray(new ReplayDriver.Stream[0]));
+        executor = Executors.newSingleThreadExecutor();
+        serverLabel.setText("Server: RUNNING :" + server.port());
         serverLabel.setForeground(new Color(72,201,176));
-        log("Server started.");
+        log(replayDir != null ? "Replaying " + replayDir + " at " + speedLabel() + "."
+                : cp != null ? "Server resumed from " + checkpointFile + " (" + speedLabel() + ")."
+                              : "Server started (seed " + seed + ", " + speedLabel() + ").");
 
-        if (enableTemp) {
-            addDevice("TempSensor-1");
-            tempTask = executor.scheduleAtFixedRate(() -> {
-                double val = 20 + Math.random()*10;
-                synchronized (tempBuf) {
-                    if (tempBuf.size() >= MAX) tempBuf.removeFirst();
-                    tempBuf.addLast(new Sample(System.currentTimeMillis(), val));
+        if (enableTemp) addDevice(FleetEngine.TEMP, "TempSensor-1");
+        if (enableMotion) addDevice(FleetEngine.MOTION, "MotionSensor-1");
+        startFleet(start, cp);
+        ReplayDriver d = driver;
+        long wall = System.nanoTime();
+        driverTask = executor.submit(() -> {
+            try {
+                d.run();
+            } catch (UncheckedIOException e) {
+                if (!Thread.currentThread().isInterrupted()) log("Device link lost: " + e.getCause().getMessage());
+                return;
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                log(String.format("Replay finished: %,d samples in %.1f s.", d.samples(), (System.nanoTime() - wall) / 1e9));
+            }
+        });
+    }
+
+    /*
+     * The fleet shares the seed, speed and rules of the two sensors but skips the ingest path:
+     * its shard writes the DeviceTable the heatmap reads, and per-device alerts only count
+     * towards the cells (zone alerts are left out, they span many cells).
+     */
+    private void startFleet(long start, Checkpoint cp) {
+        if (fleetSize == 0) return;
+        byte[] open = new byte[fleetSize];
+        RuleEngine re = new RuleEngine(ruleSet, fleetSize, (rule, subject, t, value, raised) -> {
+            if (rule.kind == RuleEngine.Kind.ZONE) return;
+            open[subject] += raised ? 1 : -1;
+            if (raised) alerts.increment();
+        });
+        SampleSink sink = (device, t, v) -> {
+            re.accept(device, t, v);
+            Focus f = focus;
+            if (f != null && f.device == device) f.ring.add(t, v);
+        };
+        FleetEngine.Frozen saved = null;
+        if (cp != null && cp.first(Checkpoint.FLEET) != null) {
+            try {
+                saved = FleetEngine.Frozen.read(cp);
+                if (saved.n != fleetSize) {
+                    log(String.format("Checkpoint fleet has %,d devices, not %,d; starting it fresh.", saved.n, fleetSize));
+                    saved = null;
                 }
-                tempCard.setValue(String.format("%.2f °C", val));
-                log("TempSensor-1 → " + String.format("%.2f °C", val));
-            }, 0, 2, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                log("Checkpoint fleet unavailable: " + e.getMessage());
+            }
+        }
+        fleet = saved != null ? FleetEngine.restore(saved, 1, speed, sink) : new FleetEngine(fleetSize, 1, 10, seed, speed, start, sink);
+        heatmap = new FleetHeatmap(fleet, open, OFFLINE_AFTER_MS);
+        heatmap.setMode(fleetMode);
+        heatmap.onSelect(this::focusDevice);
+        fleetGrid.removeAll();
+        fleetGrid.add(heatmap, BorderLayout.CENTER);
+        fleetGrid.add(fleetStatus, BorderLayout.SOUTH);
+        fleetGrid.revalidate();
+        fleet.start();
+        log(String.format("Fleet of %,d devices started.", fleetSize));
+    }
+
+    private void closeIngest() {
+        try { if (client != null) client.close(); } catch (IOException ignored) {}
+        try { if (server != null) server.close(); } catch (IOException ignored) {}
+        if (server != null) framesBefore += server.frames();
+        client = null;
+        server = null;
+    }
+
+    private String speedLabel() { return speed == 0 ? "max speed" : speed + "x"; }
+
+    /* Loads both sensors' recordings into memory; returns the earliest timestamp. */
+    private long loadRecording(List<ReplayDriver.Stream> streams) {
+        long first = Long.MAX_VALUE;
+        try (TelemetryStore rec = new TelemetryStore(java.nio.file.Paths.get(replayDir))) {
+            String[] names = { "TempSensor-1", "MotionSensor-1" };
+            boolean[] enabled = { enableTemp, enableMotion };
+            SampleCursor rows = new SampleCursor();
+            for (int type = 0; type < names.length; type++) {
+                if (!enabled[type]) continue;
+                rec.range(rec.register(names[type], type), Long.MIN_VALUE, Long.MAX_VALUE, rows);
+                if (rows.size() == 0) continue;
+                streams.add(ReplayDriver.recorded(type, rows.times(), rows.values(), rows.size()));
+                first = Math.min(first, rows.timeAt(0));
+            }
+        } catch (IOException e) {
+            log("Replay unavailable: " + e.getMessage());
+            streams.clear();
         }
+        return first;
+    }
 
-        if (enableMotion) {
-            addDevice("MotionSensor-1");
-            motionTask = executor.scheduleAtFixedRate(() -> {
-                int v = Math.random() > 0.6 ? 1 : 0;
-                synchronized (motionBuf) {
-                    if (motionBuf.size() >= MAX) motionBuf.removeFirst();
-                    motionBuf.addLast(new Sample(System.currentTimeMillis(), v));
-                }
-                motionCard.setValue(v==1 ? "DETECTED" : "NONE");
-                log("MotionSensor-1 → " + (v==1 ? "DETECTED" : "NONE"));
-            }, 0, 1500, TimeUnit.MILLISECONDS);
+    /* Device 0 is the temperature sensor, 1 the motion sensor. */
+    private void onSample(int device, long t, double val) {
+        IngestServer srv = server;
+        long sent = srv != null ? srv.frameSent() : 0;
+        ingested.increment();
+        aggregates.accept(device, t, val);
+        RuleEngine re = rules;
+        if (re != null) re.accept(device, t, val);
+        int reg = registryIds[device];
+        if (reg >= 0) registry.seen(reg, t, val);
+        Exporter ex = exporter;
+        if (ex != null) ex.accept(device, t, val);
+        if (device == FleetEngine.TEMP) {
+            tempBuf.add(t, val);
+            tempStamp = sent;
+            insertLatency.record(System.nanoTime() - sent);
+            if (store != null) store.accept(tempId, t, val);
+            latest.offer(FleetEngine.TEMP, t, val, sent);
+            logValue(t, "TempSensor-1", LogRing.TEMP, val);
+        } else {
+            motionBuf.add(t, val);
+            motionStamp = sent;
+            insertLatency.record(System.nanoTime() - sent);
+            if (store != null) store.accept(motionId, t, val);
+            latest.offer(FleetEngine.MOTION, t, val, sent);
+            logValue(t, "MotionSensor-1", LogRing.MOTION, val);
         }
     }
 
@@ -373,255 +1112,1147 @@ class Dashboard extends JFrame {
         serverLabel.setText("Server: STOPPED");
 
         try {
-            if (tempTask != null) tempTask.cancel(true);
-            if (motionTask != null) motionTask.cancel(true);
+            if (driverTask != null) driverTask.cancel(true);
             if (executor != null) executor.shutdownNow();
         } catch (Exception ignored) {}
 
-        tempTask = null; 
-        motionTask = null;
+        if (executor != null) {
+            try { executor.awaitTermination(1, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        }
+        closeIngest();
+        rules = null;
+        if (fleet != null) fleet.stop();
+        if (driver != null) saveCheckpoint();
+        fleet = null;
+        if (driver != null) generatedBefore += driver.samples();
+        driverTask = null;
+        driver = null;
+        if (store != null) store.flush();
         removeAllDevices();
     }
 
-    /* ---------------- Temperature Panel ---------------- */
-    class TempPanel extends JPanel {
-        private final Color lineColor = new Color(20,140,90);
-        private final Color fillTop = new Color(72,201,176,200);
-        private final Color fillBottom = new Color(72,201,176,40);
+    /* ---------------- Strip Chart ---------------- */
+    /*
+     * Samples sit on a fixed pixel pitch keyed by their ring sequence number, so a new
+     * sample scrolls the cached series layer and only the columns it touches are cleared
+     * and re-rasterized (clipped, in the same order as a full redraw). The grid and axis
+     * labels live in a separate layer that is rebuilt on resize or rescale.
+     *
+     * When chartView leaves live mode the chart instead draws a decimated time range of
+     * the whole ring history (wheel zooms, drag pans, double-click returns to live).
+     */
+    abstract class StripChart extends JPanel {
+        protected final Series data = new Series(MAX);
+        protected final int left, right, top, bottom;
+        protected int gw, gh, step, visible, from;
+
+        private final SampleRing ring;
+        private final int reach;                    // widest pixel extent of a segment or marker around its point
+        private final ChartLayer base = new ChartLayer(), series = new ChartLayer();
+        private final FrameMeter meter = new FrameMeter(frameTime);
+        private final DecimationCache cache = new DecimationCache();
+        private long drawnEnd = -1, stampedEnd;
+        private int drawnVersion = -1;
+        private boolean drawnLive;
+        private Decimated plotted;
+        private String historyInfo = "";
 
-        TempPanel(int fixedHeight) {
+        StripChart(SampleRing ring, int fixedHeight, int left, int right, int top, int bottom, int reach) {
+            this.ring = ring;
+            this.left = left; this.right = right; this.top = top; this.bottom = bottom;
+            this.reach = reach;
             setPreferredSize(new Dimension(600, fixedHeight));
             setBackground(Color.WHITE);
+
+            MouseAdapter nav = new MouseAdapter() {
+                private int lastX;
+
+                @Override public void mouseWheelMoved(MouseWheelEvent e) {
+                    long end = ring.written();
+                    if (end == 0 || gw <= 0) return;
+                    long newest = ring.timeAt(end - 1);
+                    if (chartView.live) chartView.showSpan(newest - ring.timeAt(Math.max(ring.oldest(), end - MAX)));
+                    double anchor = Math.max(0, Math.min(1, (e.getX() - left) / (double) gw));
+                    chartView.zoom(Math.pow(1.25, e.getPreciseWheelRotation()), anchor, newest);
+                    viewChanged(false);
+                }
+
+                @Override public void mousePressed(MouseEvent e) { lastX = e.getX(); }
+
+                @Override public void mouseDragged(MouseEvent e) {
+                    long end = ring.written();
+                    if (chartView.live || end == 0 || gw <= 0) return;
+                    chartView.pan((long) ((lastX - e.getX()) * (double) chartView.span / gw), ring.timeAt(end - 1));
+                    lastX = e.getX();
+                    viewChanged(false);
+                }
+
+                @Override public void mouseClicked(MouseEvent e) {
+                    if (e.getClickCount() != 2) return;
+                    chartView.showLive();
+                    viewChanged(true);
+                }
+            };
+            addMouseListener(nav);
+            addMouseMotionListener(nav);
+            addMouseWheelListener(nav);
         }
 
-        @Override protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        boolean isStale() {
+            if (chartView.live) return !drawnLive || ring.written() != drawnEnd;
+            return drawnLive || chartView.version != drawnVersion || ring.written() != drawnEnd;
+        }
 
-            List<Sample> data;
-            synchronized (tempBuf) { data = new ArrayList<>(tempBuf); }
+        /** Newest and oldest readable timestamps, or null while the ring is empty. */
+        long[] timeBounds() {
+            long end = ring.written();
+            return end == 0 ? null : new long[] { ring.timeAt(ring.oldest()), ring.timeAt(end - 1) };
+        }
 
+        @Override protected void paintComponent(Graphics g) {
+            long started = System.nanoTime();
             int w = getWidth(), h = getHeight();
-            int left = 60, right = 20, top = 26, bottom = 40;
-            int gw = w - left - right, gh = h - top - bottom;
+            if (w <= 0 || h <= 0) return;
 
-            g2.setColor(new Color(248,248,249));
-            g2.fillRect(0,0,w,h);
-
-            g2.setColor(new Color(224,224,226));
-            for (int i=0;i<=4;i++) {
-                int y = top + i*gh/4;
-                g2.drawLine(left, y, left+gw, y);
+            boolean full = base.ensure(w, h) | series.ensure(w, h);
+            if (full) {
+                gw = w - left - right;
+                gh = h - top - bottom;
+                step = Math.max(1, gw / Math.max(1, MAX - 1));
+                visible = Math.max(2, Math.min(MAX, gw / step + 1));
+                layout(w, h);
             }
-
-            if (data.isEmpty()) {
-                g2.setColor(new Color(130,130,130));
-                g2.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-                g2.drawString("No temperature data yet.", left+8, top + gh/2);
-                g2.dispose();
+            if (!chartView.live) {
+                paintHistory(g, w, h, full, started);
                 return;
             }
+            full |= !drawnLive;
+            drawnLive = true;
 
-            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
-            for (Sample s : data) {
-                min = Math.min(min, s.v);
-                max = Math.max(max, s.v);
-            }
-            if (min == max) { min -= 1; max += 1; }
+            ring.snapshot(data, MAX);
+            int n = data.n;
 
-            g2.setColor(new Color(70,70,70));
-            g2.setFont(new Font("Segoe UI", Font.PLAIN, 12));
-            for (int i=0;i<=4;i++) {
-                double val = max - i*(max-min)/4.0;
-                int yy = top + i*gh/4;
-                g2.drawString(String.format("%.1f°C", val), 8, yy+4);
+            if (n == 0) {
+                drawnEnd = data.end;
+                drawEmpty(g, w, h);
+                meter.record(System.nanoTime() - started, true);
+                return;
             }
 
-            Path2D.Double path = new Path2D.Double();
-            Path2D.Double area = new Path2D.Double();
-            long t0 = data.get(0).t;
-            long t1 = data.get(data.size()-1).t;
-            long dt = Math.max(1, t1 - t0);
-
-            for (int i=0;i<data.size();i++) {
-                Sample s = data.get(i);
-                double nx = left + ((double)(s.t - t0) / dt) * gw;
-                double ny = top + (max - s.v) / (max - min) * gh;
-
-                if (i==0) {
-                    path.moveTo(nx, ny);
-                    area.moveTo(nx, top+gh);
-                    area.lineTo(nx, ny);
-                } else {
-                    path.lineTo(nx, ny);
-                    area.lineTo(nx, ny);
-                }
-                if (i == data.size()-1) {
-                    area.lineTo(nx, top+gh);
-                    area.closePath();
+            from = Math.max(0, n - visible);
+            long first = data.end - n;
+            full |= rescale(n);
+            full |= drawnEnd <= 0 || data.end - drawnEnd >= visible || first > drawnEnd - 1;
+            if (full) {
+                Graphics2D b2 = base.graphics();
+                renderBase(b2, w, h);
+                b2.dispose();
+                redraw(0, w, n);
+            } else if (data.end > drawnEnd) {
+                int dx = (int) (Math.max(0, data.end - visible) - Math.max(0, drawnEnd - visible)) * step;
+                if (dx > 0) {
+                    series.scroll(dx);
+                    redraw(0, left + reach, n);
                 }
+                redraw(x((int) (drawnEnd - 1 - first)) - reach, w, n);
             }
+            drawnEnd = data.end;
 
-            Rectangle bounds = area.getBounds();
-            g2.setPaint(new GradientPaint(0, bounds.y, fillTop, 0, bounds.y + bounds.height, fillBottom));
-            g2.fill(area);
+            g.drawImage(base.image(), 0, 0, null);
+            g.drawImage(series.image(), 0, 0, null);
+            drawLatest(g, data.v[n-1]);
 
-            g2.setColor(lineColor);
-            g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            g2.draw(path);
+            meter.record(System.nanoTime() - started, full);
+            meter.draw(g, w);
+            notePainted();
+        }
+
+        /* Generation-to-screen latency, recorded once for each paint that shows a new sample. */
+        private void notePainted() {
+            long stamp = ring == tempBuf ? tempStamp : ring == motionBuf ? motionStamp : 0;
+            if (drawnEnd > stampedEnd && stamp != 0) paintLatency.record(System.nanoTime() - stamp);
+            stampedEnd = drawnEnd;
+        }
+
+        /* History mode: one decimated pass per zoom level (cached), drawn as whole paths. */
+        private void paintHistory(Graphics g, int w, int h, boolean full, long started) {
+            long end = ring.written();
+            drawnEnd = end;
+            drawnVersion = chartView.version;
+            if (end == 0) {
+                drawEmpty(g, w, h);
+                meter.record(System.nanoTime() - started, true);
+                return;
+            }
+
+            long newest = ring.timeAt(end - 1);
+            long col = Math.max(1, chartView.span / Math.max(1, gw));
+            long to = chartView.follow ? (newest / col + 1) * col : chartView.end;   // snapped so the cache key holds still
+            long from = to - chartView.span;
+            int device = ring == tempBuf ? tempId : ring == motionBuf ? motionId : -1;
+            Decimated d = cache.get(ring, store, device, chartView.mode, from, to, gw);
+
+            full |= drawnLive || d != plotted;
+            if (full) {
+                rescale(d);
+                Graphics2D b2 = base.graphics();
+                renderBase(b2, w, h);
+                drawTimeAxis(b2, from, to);
+                b2.dispose();
 
-            for (Sample s : data) {
-                double nx = left + ((double)(s.t - t0) / dt) * gw;
-                double ny = top + (max - s.v) / (max - min) * gh;
+                series.clear(0, w);
+                Graphics2D s2 = series.graphics();
+                s2.clipRect(left - reach, 0, gw + 2 * reach, h);
+                if (d.n > 0) plotHistory(s2, d, from, to);
+                s2.dispose();
 
-                g2.setColor(Color.WHITE);
-                g2.fill(new Ellipse2D.Double(nx-4, ny-4, 8, 8));
-                g2.setColor(lineColor.darker());
-                g2.draw(new Ellipse2D.Double(nx-4, ny-4, 8, 8));
+                plotted = d;
+                drawnLive = false;
+                historyInfo = String.format("%,d samples → %,d points  ·  %s  ·  %s",
+                        d.samples, d.n, d.level < 0 ? "store" : "level " + d.level,
+                        chartView.mode == Decimator.LTTB ? "LTTB" : "min/max");
             }
 
-            Sample last = data.get(data.size()-1);
-            g2.setColor(new Color(30,30,30));
-            g2.setFont(new Font("Segoe UI", Font.BOLD, 13));
-            g2.drawString("Latest: " + String.format("%.2f °C", last.v), left+6, top+18);
+            g.drawImage(base.image(), 0, 0, null);
+            g.drawImage(series.image(), 0, 0, null);
+            drawLatest(g, ring.valueAt(end - 1));
+            g.setFont(CHART_AXIS_FONT);
+            g.setColor(CHART_MUTED);
+            g.drawString(historyInfo, w - right - g.getFontMetrics().stringWidth(historyInfo), h - 4);
 
-            g2.dispose();
+            meter.record(System.nanoTime() - started, full);
+            meter.draw(g, w);
+            notePainted();
         }
-    }
 
-    /* ---------------- Motion Panel ---------------- */
-    class MotionPanel extends JPanel {
-        MotionPanel(int fixedHeight) {
-            setPreferredSize(new Dimension(600, fixedHeight));
-            setBackground(Color.WHITE);
+        private void drawTimeAxis(Graphics2D b2, long from, long to) {
+            b2.setFont(CHART_AXIS_FONT);
+            b2.setColor(CHART_AXIS);
+            String pattern = to - from > 86_400_000L ? "MM-dd HH:mm" : to - from > 120_000L ? "HH:mm" : "HH:mm:ss";
+            java.time.format.DateTimeFormatter f = java.time.format.DateTimeFormatter.ofPattern(pattern).withZone(java.time.ZoneId.systemDefault());
+            FontMetrics fm = b2.getFontMetrics();
+            for (int i = 0; i <= 4; i++) {
+                String label = f.format(java.time.Instant.ofEpochMilli(from + (to - from) * i / 4));
+                int x = left + gw * i / 4 - fm.stringWidth(label) / 2;
+                b2.drawString(label, Math.max(2, Math.min(getWidth() - fm.stringWidth(label) - 2, x)), top + gh + 16);
+            }
         }
 
-        @Override protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        /** Maps a timestamp in [from, to] onto the plot width. */
+        protected double tx(long t, long from, long to) { return left + (t - from) / (double) Math.max(1, to - from) * gw; }
 
-            List<Sample> data;
-            synchronized (motionBuf) { data = new ArrayList<>(motionBuf); }
+        protected int x(int i) { return left + (i - from) * step; }
 
-            int w = getWidth(), h = getHeight();
-            int left = 52, right = 20, top = 28, bottom = 40;
-            int gw = w - left - right, gh = h - top - bottom;
-            int yHigh = top + (int)(gh * 0.28);
-            int yLow  = top + (int)(gh * 0.72);
-
-            g2.setColor(new Color(248,248,249));
-            g2.fillRect(0,0,w,h);
-
-            if (data.isEmpty()) {
-                g2.setColor(new Color(130,130,130));
-                g2.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-                g2.drawString("No motion data yet.", left+8, top + gh/2);
-                g2.dispose();
-                return;
-            }
+        /* Clears columns [x0, x1) of the series layer and replays every segment and marker that reaches into them. */
+        private void redraw(int x0, int x1, int n) {
+            x0 = Math.max(0, x0);
+            x1 = Math.min(getWidth(), x1);
+            if (x1 <= x0) return;
+            series.clear(x0, x1);
+            Graphics2D s2 = series.graphics();
+            s2.clipRect(x0, 0, x1 - x0, getHeight());
+            int i0 = Math.max(from, from + Math.floorDiv(x0 - reach - left, step));
+            for (int i = Math.max(from + 1, i0); i < n && x(i-1) - reach < x1; i++) segment(s2, i);
+            for (int i = i0; i < n && x(i) - reach < x1; i++) mark(s2, i);
+            s2.dispose();
+        }
 
-            g2.setColor(new Color(230,230,235));
-            g2.drawLine(left, yHigh, left+gw, yHigh);
-            g2.drawLine(left, yLow, left+gw, yLow);
+        protected void layout(int w, int h) {}
 
-            long t0 = data.get(0).t;
-            long t1 = data.get(data.size()-1).t;
-            long dt = Math.max(1, t1 - t0);
+        /** Returns true when the value scale changed and the whole chart has to be re-rasterized. */
+        protected boolean rescale(int n) { return false; }
 
-            for (int r = 8; r >= 4; r -= 2) {
-                g2.setStroke(new BasicStroke(r, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-                g2.setColor(new Color(245,158,11, 30 + (r*6)));
-                drawStep(g2, data, left, gw, t0, dt, yHigh, yLow);
-            }
+        protected void rescale(Decimated d) {}
+
+        protected abstract void plotHistory(Graphics2D g2, Decimated d, long from, long to);
 
-            g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            Paint old = g2.getPaint();
-            g2.setPaint(new GradientPaint(0, top, new Color(255,190,80), 0, top + gh, new Color(245,120,20)));
-            drawStep(g2, data, left, gw, t0, dt, yHigh, yLow);
-            g2.setPaint(old);
+        protected abstract void renderBase(Graphics2D b2, int w, int h);
+        protected abstract void drawEmpty(Graphics g, int w, int h);
+        protected abstract void segment(Graphics2D g2, int i);
+        protected abstract void mark(Graphics2D g2, int i);
+        protected abstract void drawLatest(Graphics g, double v);
+    }
+
+    /* ---------------- Temperature Panel ---------------- */
+    class TempPanel extends StripChart {
+        private final Color lineColor = new Color(20,140,90);
+        private final Color fillTop = new Color(72,201,176,200);
+        private final Color fillBottom = new Color(72,201,176,40);
+        private final BufferedImage marker = ChartLayer.marker(8, Color.WHITE, lineColor.darker(), 0, null);
+        private GradientPaint fill;
+        private double lo = Double.NaN, hi = Double.NaN;
+        private double latestV = Double.NaN;
+        private String latest = "";
 
-            for (Sample s : data) {
-                int cx = left + (int)(((s.t - t0) / (double)dt) * gw);
-                int cy = s.v >= 0.5 ? yHigh : yLow;
+        TempPanel(int fixedHeight) { this(tempBuf, fixedHeight); }
+
+        TempPanel(SampleRing ring, int fixedHeight) {
+            super(ring, fixedHeight, 60, 20, 26, 40, 6);
+        }
 
-                g2.setColor(new Color(245,158,11, 100));
-                g2.fill(new Ellipse2D.Double(cx-8, cy-8, 16, 16));
+        @Override protected void layout(int w, int h) {
+            fill = new GradientPaint(0, top, fillTop, 0, top + gh, fillBottom);
+            lo = hi = Double.NaN;
+        }
 
-                g2.setColor(new Color(30,30,30));
-                g2.fill(new Ellipse2D.Double(cx-4, cy-4, 8, 8));
+        @Override protected boolean rescale(int n) {
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int i=from;i<n;i++) {
+                min = Math.min(min, data.v[i]);
+                max = Math.max(max, data.v[i]);
             }
+            return range(min, max);
+        }
 
-            Sample last = data.get(data.size()-1);
-            g2.setColor(new Color(30,30,30));
-            g2.setFont(new Font("Segoe UI", Font.BOLD, 13));
-            g2.drawString("Latest: " + (last.v >= 0.5 ? "Motion DETECTED" : "No Motion"), left+8, top+16);
+        @Override protected void rescale(Decimated d) {
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int i=0;i<d.n;i++) {
+                min = Math.min(min, d.lo[i]);
+                max = Math.max(max, d.hi[i]);
+            }
+            if (d.n == 0) { min = 20; max = 30; }
+            range(min, max);
+        }
 
-            g2.dispose();
+        private boolean range(double min, double max) {
+            double nlo = Math.floor(min*2)/2, nhi = Math.ceil(max*2)/2;
+            if (nlo == nhi) { nlo -= 1; nhi += 1; }
+            if (nlo == lo && nhi == hi) return false;
+            lo = nlo;
+            hi = nhi;
+            return true;
         }
 
-        private void drawStep(Graphics2D g2, List<Sample> data, int left, int gw, long t0, long dt, int yHigh, int yLow) {
-            int prevX = left;
-            int prevY = data.get(0).v >= 0.5 ? yHigh : yLow;
+        private double y(int i) { return yOf(data.v[i]); }
 
-            for (Sample s : data) {
-                int cx = left + (int)(((s.t - t0) / (double)dt) * gw);
-                int cy = s.v >= 0.5 ? yHigh : yLow;
+        private double yOf(double v) { return top + (hi - v) / (hi - lo) * gh; }
+
+        /* Envelope line through each point's low and high, area filled under the highs. */
+        @Override protected void plotHistory(Graphics2D g2, Decimated d, long from, long to) {
+            Path2D.Double line = new Path2D.Double(), area = new Path2D.Double();
+            double x = left;
+            for (int i=0;i<d.n;i++) {
+                x = tx(d.t[i], from, to);
+                double yl = yOf(d.lo[i]), yh = yOf(d.hi[i]);
+                if (i == 0) {
+                    line.moveTo(x, yl);
+                    area.moveTo(x, top+gh);
+                } else {
+                    line.lineTo(x, yl);
+                }
+                area.lineTo(x, yh);
+                if (yh != yl) line.lineTo(x, yh);
+            }
+            area.lineTo(x, top+gh);
+            area.closePath();
+            g2.setPaint(fill);
+            g2.fill(area);
 
-                g2.drawLine(prevX, prevY, cx, prevY);
-                g2.drawLine(cx, prevY, cx, cy);
+            g2.setColor(lineColor);
+            g2.setStroke(d.n > gw / 4 ? CHART_THIN : CHART_LINE);
+            g2.draw(line);
 
-                prevX = cx;
-                prevY = cy;
+            if (d.n > gw / 12) return;
+            for (int i=0;i<d.n;i++) {
+                g2.drawImage(marker, (int) tx(d.t[i], from, to) - marker.getWidth()/2,
+                        (int) Math.round(yOf(d.hi[i])) - marker.getHeight()/2, null);
             }
         }
-    }
-}
 
-/* --------------------- Shared Helpers --------------------- */
-class Sample {
-    long t;
-    double v;
-    Sample(long t, double v) { this.t = t; this.v = v; }
-}
+        @Override protected void segment(Graphics2D g2, int i) {
+            int x0 = x(i-1), x1 = x(i);
+            double y0 = y(i-1), y1 = y(i);
+            Path2D.Double area = new Path2D.Double();
+            area.moveTo(x0, top+gh);
+            area.lineTo(x0, y0);
+            area.lineTo(x1, y1);
+            area.lineTo(x1, top+gh);
+            area.closePath();
+            g2.setPaint(fill);
+            g2.fill(area);
 
-class GradientPanel extends JPanel {
-    private final Color a,b;
-    GradientPanel(Color a, Color b) { this.a=a; this.b=b; setOpaque(true); }
+            g2.setColor(lineColor);
+            g2.setStroke(CHART_LINE);
+            g2.draw(new Line2D.Double(x0, y0, x1, y1));
+        }
 
-    @Override protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2=(Graphics2D)g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
-        g2.setPaint(new GradientPaint(0,0,a,0,getHeight(),b));
-        g2.fillRect(0,0,getWidth(),getHeight());
-    }
-}
+        @Override protected void mark(Graphics2D g2, int i) {
+            g2.drawImage(marker, x(i) - marker.getWidth()/2, (int) Math.round(y(i)) - marker.getHeight()/2, null);
+        }
 
-class ValueCard extends JPanel {
-    private final JLabel value = new JLabel();
-    ValueCard(String name, String initial, Color accent) {
-        setLayout(new BorderLayout());
-        setPreferredSize(new Dimension(220,72));
-        setBackground(Color.WHITE);
-        setBorder(new CompoundBorder(new EmptyBorder(10,12,10,12),
-                new LineBorder(new Color(230,230,230),1,true)));
+        @Override protected void renderBase(Graphics2D b2, int w, int h) {
+            b2.setColor(CHART_BG);
+            b2.fillRect(0,0,w,h);
 
-        JLabel t = new JLabel(name);
-        t.setFont(new Font("Segoe UI", Font.BOLD, 14));
-        value.setText(initial);
-        value.setFont(new Font("Segoe UI", Font.BOLD, 18));
-        value.setForeground(accent.darker());
+            b2.setColor(CHART_GRID);
+            for (int i=0;i<=4;i++) {
+                int y = top + i*gh/4;
+                b2.drawLine(left, y, left+gw, y);
+            }
 
-        add(t, BorderLayout.NORTH);
-        add(value, BorderLayout.CENTER);
-    }
+            if (Double.isNaN(lo)) return;
+            b2.setColor(CHART_AXIS);
+            b2.setFont(CHART_AXIS_FONT);
+            for (int i=0;i<=4;i++) {
+                double val = hi - i*(hi-lo)/4.0;
+                int yy = top + i*gh/4;
+                b2.drawString(String.format("%.1f°C", val), 8, yy+4);
+            }
+        }
 
-    void setValue(String v) {
-        SwingUtilities.invokeLater(() -> value.setText(v));
-    }
-}
+        @Override protected void drawEmpty(Graphics g, int w, int h) {
+            g.setColor(CHART_BG);
+            g.fillRect(0,0,w,h);
+            g.setColor(CHART_GRID);
+            for (int i=0;i<=4;i++) {
+                int y = top + i*gh/4;
+                g.drawLine(left, y, left+gw, y);
+            }
+            g.setColor(CHART_MUTED);
+            g.setFont(CHART_EMPTY_FONT);
+            g.drawString("No temperature data yet.", left+8, top + gh/2);
+        }
+
+        @Override protected void drawLatest(Graphics g, double v) {
+            if (v != latestV) {
+                latestV = v;
+                latest = "Latest: " + String.format("%.2f °C", v);
+            }
+            g.setColor(CHART_TEXT);
+            g.setFont(CHART_TITLE_FONT);
+            g.drawString(latest, left+6, top+18);
+        }
+    }
+
+    /* ---------------- Motion Panel ---------------- */
+    class MotionPanel extends StripChart {
+        private final Color[] glow = { new Color(245,158,11, 78), new Color(245,158,11, 66), new Color(245,158,11, 54) };
+        private final BufferedImage marker = ChartLayer.marker(8, new Color(30,30,30), null, 16, new Color(245,158,11, 100));
+        private GradientPaint linePaint;
+        private int yHigh, yLow;
+
+        MotionPanel(int fixedHeight) { this(motionBuf, fixedHeight); }
+
+        MotionPanel(SampleRing ring, int fixedHeight) {
+            super(ring, fixedHeight, 52, 20, 28, 40, 10);
+        }
+
+        @Override protected void layout(int w, int h) {
+            yHigh = top + (int)(gh * 0.28);
+            yLow  = top + (int)(gh * 0.72);
+            linePaint = new GradientPaint(0, top, new Color(255,190,80), 0, top + gh, new Color(245,120,20));
+        }
+
+        private int y(int i) { return data.v[i] >= 0.5 ? yHigh : yLow; }
+
+        /* Step trace through the history; a column that saw both states becomes a full-height bar. */
+        @Override protected void plotHistory(Graphics2D g2, Decimated d, long from, long to) {
+            Path2D.Double path = new Path2D.Double();
+            int prevY = d.hi[0] >= 0.5 ? yHigh : yLow;
+            path.moveTo(tx(d.t[0], from, to), prevY);
+            for (int i=0;i<d.n;i++) {
+                double x = tx(d.t[i], from, to);
+                path.lineTo(x, prevY);
+                boolean high = d.hi[i] >= 0.5, low = d.lo[i] < 0.5;
+                if (high && low) {
+                    path.lineTo(x, prevY == yHigh ? yLow : yHigh);
+                    path.lineTo(x, prevY);
+                } else {
+                    prevY = high ? yHigh : yLow;
+                    path.lineTo(x, prevY);
+                }
+            }
+
+            boolean dense = d.n > gw / 4;
+            if (!dense) {
+                for (int r = 0; r < CHART_GLOW.length; r++) {
+                    g2.setStroke(CHART_GLOW[r]);
+                    g2.setColor(glow[r]);
+                    g2.draw(path);
+                }
+            }
+            g2.setStroke(dense ? CHART_THIN : CHART_LINE);
+            g2.setPaint(linePaint);
+            g2.draw(path);
+
+            if (d.n > gw / 12) return;
+            for (int i=0;i<d.n;i++) {
+                g2.drawImage(marker, (int) tx(d.t[i], from, to) - marker.getWidth()/2,
+                        (d.hi[i] >= 0.5 ? yHigh : yLow) - marker.getHeight()/2, null);
+            }
+        }
+
+        /* One step of the trace: glow passes first, then the gradient line on top. */
+        @Override protected void segment(Graphics2D g2, int i) {
+            int x0 = x(i-1), x1 = x(i), y0 = y(i-1), y1 = y(i);
+            for (int r = 0; r < CHART_GLOW.length; r++) {
+                g2.setStroke(CHART_GLOW[r]);
+                g2.setColor(glow[r]);
+                g2.drawLine(x0, y0, x1, y0);
+                g2.drawLine(x1, y0, x1, y1);
+            }
+            g2.setStroke(CHART_LINE);
+            g2.setPaint(linePaint);
+            g2.drawLine(x0, y0, x1, y0);
+            g2.drawLine(x1, y0, x1, y1);
+        }
+
+        @Override protected void mark(Graphics2D g2, int i) {
+            g2.drawImage(marker, x(i) - marker.getWidth()/2, y(i) - marker.getHeight()/2, null);
+        }
+
+        @Override protected void renderBase(Graphics2D b2, int w, int h) {
+            b2.setColor(CHART_BG);
+            b2.fillRect(0,0,w,h);
+            b2.setColor(new Color(230,230,235));
+            b2.drawLine(left, yHigh, left+gw, yHigh);
+            b2.drawLine(left, yLow, left+gw, yLow);
+        }
+
+        @Override protected void drawEmpty(Graphics g, int w, int h) {
+            g.setColor(CHART_BG);
+            g.fillRect(0,0,w,h);
+            g.setColor(CHART_MUTED);
+            g.setFont(CHART_EMPTY_FONT);
+            g.drawString("No motion data yet.", left+8, top + gh/2);
+        }
+
+        @Override protected void drawLatest(Graphics g, double v) {
+            g.setColor(CHART_TEXT);
+            g.setFont(CHART_TITLE_FONT);
+            g.drawString(v >= 0.5 ? "Latest: Motion DETECTED" : "Latest: No Motion", left+8, top+16);
+        }
+    }
+}
+
+/* --------------------- Shared Helpers --------------------- */
+/** Reusable primitive copy of a ring's tail: {@code n} samples ending at sequence {@code end}. */
+class Series {
+    final long[] t;
+    final double[] v;
+    int n;
+    long end;
+
+    Series(int capacity) {
+        t = new long[capacity];
+        v = new double[capacity];
+    }
+}
+
+/**
+ * Min/max summaries over power-of-eight blocks of a {@link SampleRing}: level j covers
+ * 8^j samples per bucket. Updated by the ring's writer in O(levels) per sample, so any
+ * zoom level can be drawn by reading about one bucket per pixel column.
+ */
+class MinMaxPyramid {
+    static final int SHIFT = 3;
+
+    final int levels;
+    private final long[][] first;       // timestamp of the first sample in each bucket
+    private final double[][] min, max;
+    private final int[] masks;
+
+    MinMaxPyramid(int ringCapacity) {
+        int l = 0;
+        while ((ringCapacity >> (SHIFT * (l + 1))) >= 2) l++;
+        levels = l;
+        first = new long[l + 1][];
+        min = new double[l + 1][];
+        max = new double[l + 1][];
+        masks = new int[l + 1];
+        for (int j = 1; j <= l; j++) {
+            int slots = ringCapacity >> (SHIFT * j);
+            first[j] = new long[slots];
+            min[j] = new double[slots];
+            max[j] = new double[slots];
+            masks[j] = slots - 1;
+        }
+    }
+
+    void add(long seq, long t, double v) {
+        for (int j = 1; j <= levels; j++) {
+            int shift = SHIFT * j;
+            int b = (int) ((seq >>> shift) & masks[j]);
+            if ((seq & ((1L << shift) - 1)) == 0) {
+                first[j][b] = t;
+                min[j][b] = v;
+                max[j][b] = v;
+            } else {
+                if (v < min[j][b]) min[j][b] = v;
+                if (v > max[j][b]) max[j][b] = v;
+            }
+        }
+    }
+
+    long first(int level, long bucket) { return first[level][(int) (bucket & masks[level])]; }
+    double min(int level, long bucket) { return min[level][(int) (bucket & masks[level])]; }
+    double max(int level, long bucket) { return max[level][(int) (bucket & masks[level])]; }
+}
+
+/**
+ * Output of a decimation pass: {@code n} points, each a time with a low and a high value.
+ * {@code level} is the pyramid level read, or -1 when the points came from the telemetry store.
+ */
+class Decimated {
+    long[] t = new long[0];
+    double[] lo = new double[0], hi = new double[0];
+    int n, level;
+    long samples, end, newest;
+    long from, to;
+
+    void ensure(int capacity) {
+        if (t.length >= capacity) return;
+        t = new long[capacity];
+        lo = new double[capacity];
+        hi = new double[capacity];
+    }
+}
+
+/**
+ * Reduces a time range of a ring to a bounded number of points for drawing. Min/max keeps
+ * the envelope of every pixel column; LTTB (Largest-Triangle-Three-Buckets) keeps the
+ * visually significant samples. Both read the coarsest pyramid level that still gives
+ * each column at least one bucket, so the cost does not grow with the history length.
+ * A range that starts before the oldest sample the ring still holds is read from the
+ * telemetry store's bucket summaries instead, when the device is being recorded.
+ */
+final class Decimator {
+    static final int MINMAX = 0, LTTB = 1;
+    private static final int LTTB_INPUT = 1 << 16;
+
+    private Decimator() {}
+
+    static Decimated decimate(SampleRing ring, int mode, long from, long to, int columns) {
+        return decimate(ring, null, -1, mode, from, to, columns);
+    }
+
+    /** As above, but reads {@code device} from {@code store} when the range reaches back past the ring. */
+    static Decimated decimate(SampleRing ring, TelemetryStore store, int device, int mode, long from, long to, int columns) {
+        columns = Math.max(2, columns);
+        Decimated out = new Decimated();
+        out.from = from;
+        out.to = to;
+        out.end = ring.written();
+        out.newest = out.end > 0 ? ring.timeAt(out.end - 1) : Long.MIN_VALUE;
+        boolean archived = store != null && device >= 0 && out.end > 0 && from < ring.timeAt(ring.oldest());
+        if (mode == LTTB) {
+            Decimated env = new Decimated();
+            if (archived) minMax(store, device, from, to, LTTB_INPUT / 2, env);
+            else minMax(ring, from, to, LTTB_INPUT / 2, env);
+            out.samples = env.samples;
+            out.level = env.level;
+            int pts = flatten(env);
+            out.ensure(columns);
+            out.n = lttb(env.t, env.lo, pts, columns, out.t, out.lo);
+            System.arraycopy(out.lo, 0, out.hi, 0, out.n);
+        } else if (archived) {
+            minMax(store, device, from, to, columns, out);
+        } else {
+            minMax(ring, from, to, columns, out);
+        }
+        return out;
+    }
+
+    /** Per-column min/max of a recorded device over [from, to], from the store's bucket summaries. */
+    static void minMax(TelemetryStore store, int device, long from, long to, int columns, Decimated out) {
+        long width = Math.max(1, (to - from + columns - 1) / columns);
+        BucketCursor b = store.downsample(device, from, to, width, new BucketCursor());
+        out.level = -1;
+        out.samples = 0;
+        out.ensure(b.size());
+        int n = 0;
+        while (b.next()) {
+            out.t[n] = b.start() + width / 2;
+            out.lo[n] = b.min();
+            out.hi[n] = b.max();
+            out.samples += b.count();
+            n++;
+        }
+        out.n = n;
+    }
+
+    /** Per-column min/max of samples with timestamps in [from, to]. */
+    static void minMax(SampleRing ring, long from, long to, int columns, Decimated out) {
+        long s0 = ring.lowerBound(from), s1 = ring.lowerBound(to + 1);
+        long count = Math.max(0, s1 - s0);
+        out.samples = count;
+        out.level = 0;
+
+        if (count <= 2L * columns) {
+            out.ensure((int) count);
+            int lost = ring.copyRange(s0, (int) count, out.t, out.lo);
+            out.n = (int) count - lost;
+            System.arraycopy(out.t, lost, out.t, 0, out.n);
+            System.arraycopy(out.lo, lost, out.lo, 0, out.n);
+            System.arraycopy(out.lo, 0, out.hi, 0, out.n);
+            return;
+        }
+
+        MinMaxPyramid p = ring.pyramid();
+        int level = 0;
+        if (p != null) {
+            while (level < p.levels && (1L << (MinMaxPyramid.SHIFT * (level + 1))) <= count / columns) level++;
+        }
+        out.level = level;
+
+        double[] lo = new double[columns], hi = new double[columns];
+        Arrays.fill(lo, Double.NaN);
+        double span = Math.max(1, to - from);
+        long oldest = ring.oldest();
+        if (level == 0) {
+            for (long s = Math.max(s0, oldest); s < s1; s++) {
+                int c = column(ring.timeAt(s), from, span, columns);
+                accumulate(lo, hi, c, ring.valueAt(s), ring.valueAt(s));
+            }
+        } else {
+            int shift = MinMaxPyramid.SHIFT * level;
+            long b0 = Math.max(s0 >>> shift, (oldest + (1L << shift) - 1) >>> shift);   // skip buckets the ring has lapped
+            for (long b = b0, last = (s1 - 1) >>> shift; b <= last; b++) {
+                int c = column(p.first(level, b), from, span, columns);
+                accumulate(lo, hi, c, p.min(level, b), p.max(level, b));
+            }
+        }
+
+        out.ensure(columns);
+        int n = 0;
+        for (int c = 0; c < columns; c++) {
+            if (Double.isNaN(lo[c])) continue;
+            out.t[n] = from + (long) ((c + 0.5) * span / columns);
+            out.lo[n] = lo[c];
+            out.hi[n] = hi[c];
+            n++;
+        }
+        out.n = n;
+    }
+
+    private static int column(long t, long from, double span, int columns) {
+        return (int) Math.max(0, Math.min(columns - 1, (t - from) / span * columns));
+    }
+
+    private static void accumulate(double[] lo, double[] hi, int c, double min, double max) {
+        if (Double.isNaN(lo[c])) { lo[c] = min; hi[c] = max; return; }
+        if (min < lo[c]) lo[c] = min;
+        if (max > hi[c]) hi[c] = max;
+    }
+
+    /* Turns a min/max envelope into a plain point sequence (lo then hi per column) in d.t / d.lo. */
+    private static int flatten(Decimated d) {
+        int n = d.n;
+        long[] t = new long[n * 2];
+        double[] v = new double[n * 2];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            t[k] = d.t[i]; v[k++] = d.lo[i];
+            if (d.hi[i] != d.lo[i]) { t[k] = d.t[i]; v[k++] = d.hi[i]; }
+        }
+        d.t = t;
+        d.lo = v;
+        d.hi = v;
+        return k;
+    }
+
+    /** Classic LTTB: keeps the first and last point and the largest-triangle point of each bucket. */
+    static int lttb(long[] t, double[] v, int n, int threshold, long[] outT, double[] outV) {
+        if (threshold >= n || threshold < 3) {
+            System.arraycopy(t, 0, outT, 0, n);
+            System.arraycopy(v, 0, outV, 0, n);
+            return n;
+        }
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0, k = 0;
+        outT[k] = t[0]; outV[k++] = v[0];
+        for (int i = 0; i < threshold - 2; i++) {
+            int avgStart = (int) ((i + 1) * every) + 1;
+            int avgEnd = Math.min(n, (int) ((i + 2) * every) + 1);
+            double avgT = 0, avgV = 0;
+            for (int j = avgStart; j < avgEnd; j++) { avgT += t[j]; avgV += v[j]; }
+            int len = Math.max(1, avgEnd - avgStart);
+            avgT /= len;
+            avgV /= len;
+
+            int rangeStart = (int) (i * every) + 1, rangeEnd = (int) ((i + 1) * every) + 1;
+            double at = t[a], av = v[a], best = -1;
+            int pick = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((at - avgT) * (v[j] - av) - (at - t[j]) * (avgV - av));
+                if (area > best) { best = area; pick = j; }
+            }
+            outT[k] = t[pick]; outV[k++] = v[pick];
+            a = pick;
+        }
+        outT[k] = t[n - 1]; outV[k++] = v[n - 1];
+        return k;
+    }
+}
+
+/**
+ * Time window shared by the sensor charts: either the live tail ({@code MAX} newest samples)
+ * or a span of history that can follow the newest sample or stay pinned at {@code end}.
+ */
+class ChartView {
+    boolean live = true, follow;
+    long span, end;
+    int mode = Decimator.MINMAX;
+    int version;
+
+    void showLive() { live = true; version++; }
+
+    void showSpan(long millis) {
+        live = false;
+        follow = true;
+        span = Math.max(1000, millis);
+        version++;
+    }
+
+    void setMode(int m) { mode = m; version++; }
+
+    /** Zooms by {@code factor} keeping the time under {@code anchor} (0..1 across the plot) in place. */
+    void zoom(double factor, double anchor, long newest) {
+        long to = follow ? newest : end;
+        long at = to - (long) ((1 - anchor) * span);
+        span = Math.max(1000, (long) (span * factor));
+        end = at + (long) ((1 - anchor) * span);
+        follow = end >= newest;
+        version++;
+    }
+
+    void pan(long millis, long newest) {
+        end = (follow ? newest : end) + millis;
+        follow = end >= newest;
+        if (follow) end = newest;
+        version++;
+    }
+
+    long to(long newest) { return follow ? newest : end; }
+}
+
+/** Small LRU of decimation results, one entry per zoom level (mode, range, width). */
+class DecimationCache {
+    private final LinkedHashMap<String, Decimated> entries = new LinkedHashMap<String, Decimated>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Decimated> e) { return size() > 8; }
+    };
+
+    Decimated get(SampleRing ring, TelemetryStore store, int device, int mode, long from, long to, int columns) {
+        String key = mode + ":" + from + ":" + to + ":" + columns;
+        Decimated d = entries.get(key);
+        // still valid if nothing was written since, or if the range ends before anything written since
+        if (d != null && (d.end == ring.written() || d.to < d.newest)) return d;
+        d = Decimator.decimate(ring, store, device, mode, from, to, columns);
+        entries.put(key, d);
+        return d;
+    }
+}
+
+/** Offscreen ARGB layer kept across paints; recreated only when the panel size changes. */
+class ChartLayer {
+    private static final AlphaComposite CLEAR = AlphaComposite.getInstance(AlphaComposite.CLEAR);
+    private BufferedImage img;
+
+    /** Returns true when the layer had to be (re)allocated, i.e. its contents are gone. */
+    boolean ensure(int w, int h) {
+        if (img != null && img.getWidth() == w && img.getHeight() == h) return false;
+        img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        return true;
+    }
+
+    BufferedImage image() { return img; }
+
+    Graphics2D graphics() {
+        Graphics2D g2 = img.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g2;
+    }
+
+    /** Makes columns [x0, x1) transparent. */
+    void clear(int x0, int x1) {
+        if (x1 <= x0) return;
+        Graphics2D g2 = img.createGraphics();
+        g2.setComposite(CLEAR);
+        g2.fillRect(x0, 0, x1 - x0, img.getHeight());
+        g2.dispose();
+    }
+
+    /** Shifts the whole layer {@code dx} pixels to the left. */
+    void scroll(int dx) {
+        int w = img.getWidth();
+        if (dx >= w) { clear(0, w); return; }
+        Graphics2D g2 = img.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.copyArea(dx, 0, w - dx, img.getHeight(), -dx, 0);
+        g2.dispose();
+        clear(w - dx, w);
+    }
+
+    /** Pre-rendered point marker: a {@code d}-px dot, optional outline, optional {@code halo}-px glow. */
+    static BufferedImage marker(int d, Color fill, Color edge, int halo, Color haloColor) {
+        int size = Math.max(d, halo) + 2;
+        BufferedImage m = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = m.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        double c = size / 2.0;
+        if (halo > 0) {
+            g2.setColor(haloColor);
+            g2.fill(new Ellipse2D.Double(c - halo/2.0, c - halo/2.0, halo, halo));
+        }
+        g2.setColor(fill);
+        g2.fill(new Ellipse2D.Double(c - d/2.0, c - d/2.0, d, d));
+        if (edge != null) {
+            g2.setColor(edge);
+            g2.draw(new Ellipse2D.Double(c - d/2.0, c - d/2.0, d, d));
+        }
+        g2.dispose();
+        return m;
+    }
+}
+
+/** Per-panel paint timing shown in the corner of the chart (-Diot.frameOverlay=false hides it). */
+class FrameMeter {
+    private static final boolean SHOW = !"false".equals(System.getProperty("iot.frameOverlay"));
+    private static final Font FONT = new Font("Consolas", Font.PLAIN, 11);
+
+    private final LatencyHistogram histogram;
+    private long windowStart = System.nanoTime(), sum, worst;
+    private int frames, full;
+    private String text = "";
+
+    FrameMeter(LatencyHistogram histogram) { this.histogram = histogram; }
+
+    void record(long nanos, boolean fullRedraw) {
+        histogram.record(nanos);
+        sum += nanos;
+        worst = Math.max(worst, nanos);
+        frames++;
+        if (fullRedraw) full++;
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            text = String.format("%.2f ms avg  %.2f max  %d paints  %d full", sum / 1e6 / frames, worst / 1e6, frames, full);
+            windowStart = now;
+            sum = worst = 0;
+            frames = full = 0;
+        }
+    }
+
+    void draw(Graphics g, int w) {
+        if (!SHOW || text.isEmpty()) return;
+        g.setFont(FONT);
+        g.setColor(Dashboard.CHART_MUTED);
+        g.drawString(text, w - g.getFontMetrics().stringWidth(text) - 8, 14);
+    }
+}
+/**
+ * Single-writer / multi-reader ring of (timestamp, value) pairs held in parallel
+ * primitive arrays. The writer never blocks; readers copy a consistent tail of
+ * the ring and drop any entries the writer lapped while they were copying.
+ */
+class SampleRing {
+    private static final VarHandle SEQ;
+    static {
+        try { SEQ = MethodHandles.lookup().findVarHandle(SampleRing.class, "seq", long.class); }
+        catch (ReflectiveOperationException e) { throw new ExceptionInInitializerError(e); }
+    }
+
+    private final long[] ts;
+    private final double[] vs;
+    private final int mask;
+    private final MinMaxPyramid pyramid;
+    private volatile long seq;   // number of samples published so far
+
+    SampleRing(int capacity) { this(capacity, false); }
+
+    /** With {@code decimated} set the ring also maintains a {@link MinMaxPyramid} for zoomed-out reads. */
+    SampleRing(int capacity, boolean decimated) {
+        // one spare slot: the slot the writer is filling is never handed to readers
+        int cap = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        if (cap <= capacity) cap <<= 1;
+        ts = new long[cap];
+        vs = new double[cap];
+        mask = cap - 1;
+        pyramid = decimated ? new MinMaxPyramid(cap) : null;
+    }
+
+    /** Writer thread only. */
+    void add(long t, double v) {
+        long s = seq;
+        int i = (int) (s & mask);
+        VarHandle.storeStoreFence();    // keep the previous publish ahead of the slot overwrite
+        ts[i] = t;
+        vs[i] = v;
+        if (pyramid != null) pyramid.add(s, t, v);
+        SEQ.setRelease(this, s + 1);
+    }
+
+    long written() { return (long) SEQ.getAcquire(this); }
+
+    int capacity() { return mask; }
+
+    MinMaxPyramid pyramid() { return pyramid; }
+
+    /** Oldest sequence number that is still safe to read. */
+    long oldest() { return Math.max(0, written() - mask); }
+
+    long timeAt(long s) { return ts[(int) (s & mask)]; }
+
+    double valueAt(long s) { return vs[(int) (s & mask)]; }
+
+    /** First readable sequence number whose timestamp is {@code >= t} (timestamps are non-decreasing). */
+    long lowerBound(long t) {
+        long end = written();
+        long lo = Math.max(0, end - mask), hi = end;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (ts[(int) (mid & mask)] < t) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Copies samples [s0, s0+n) into the caller's arrays. Returns how many leading samples
+     * were overwritten by the writer during the copy (those entries must be ignored).
+     */
+    int copyRange(long s0, int n, long[] outT, double[] outV) {
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((s0 + k) & mask);
+            outT[k] = ts[i];
+            outV[k] = vs[i];
+        }
+        VarHandle.loadLoadFence();
+        long oldestValid = written() - mask;
+        return (int) Math.max(0, Math.min(n, oldestValid - s0));
+    }
+
+    /**
+     * Copies up to {@code max} of the newest samples, oldest first, into {@code out}.
+     * {@code out.end} is the sequence number just past the newest copied sample.
+     */
+    void snapshot(Series out, int max) {
+        long[] outT = out.t;
+        double[] outV = out.v;
+        max = Math.min(max, outT.length);
+        long end = (long) SEQ.getAcquire(this);
+        long start = Math.max(0, end - Math.min(max, mask));
+        int n = (int) (end - start);
+        int from = (int) (start & mask);
+        int first = Math.min(n, ts.length - from);
+        System.arraycopy(ts, from, outT, 0, first);
+        System.arraycopy(vs, from, outV, 0, first);
+        System.arraycopy(ts, 0, outT, first, n - first);
+        System.arraycopy(vs, 0, outV, first, n - first);
+
+        VarHandle.loadLoadFence();
+        long oldestValid = (long) SEQ.getAcquire(this) - mask;
+        if (start < oldestValid) {      // lapped while copying: drop the overwritten head
+            int lost = (int) Math.min(n, oldestValid - start);
+            n -= lost;
+            System.arraycopy(outT, lost, outT, 0, n);
+            System.arraycopy(outV, lost, outV, 0, n);
+        }
+        out.n = n;
+        out.end = end;
+    }
+}
+
+class GradientPanel extends JPanel {
+    private final Color a,b;
+    GradientPanel(Color a, Color b) { this.a=a; this.b=b; setOpaque(true); }
+
+    @Override protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2=(Graphics2D)g;
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setPaint(new GradientPaint(0,0,a,0,getHeight(),b));
+        g2.fillRect(0,0,getWidth(),getHeight());
+    }
+}
+
+class ValueCard extends JPanel {
+    private final JLabel value = new JLabel();
+    private final JLabel detail = new JLabel(" ");
+    ValueCard(String name, String initial, Color accent) {
+        setLayout(new BorderLayout());
+        setPreferredSize(new Dimension(260,92));
+        setBackground(Color.WHITE);
+        setBorder(new CompoundBorder(new EmptyBorder(10,12,10,12),
+                new LineBorder(new Color(230,230,230),1,true)));
+
+        JLabel t = new JLabel(name);
+        t.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        value.setText(initial);
+        value.setFont(new Font("Segoe UI", Font.BOLD, 18));
+        value.setForeground(accent.darker());
+
+        detail.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        detail.setForeground(new Color(120,120,120));
+
+        add(t, BorderLayout.NORTH);
+        add(value, BorderLayout.CENTER);
+        add(detail, BorderLayout.SOUTH);
+    }
+
+    /** Secondary line under the value, e.g. window aggregates; EDT only. */
+    void setDetail(String text) { detail.setText(text); }
+
+    private LatencyHistogram shown;
+
+    /** Records, for every value that reaches the screen, nanoTime elapsed since its stamp. */
+    void track(LatencyHistogram shown) { this.shown = shown; }
+
+    /** EDT only; producers go through {@link LatestValues}. */
+    void setValue(String v) { setValue(v, 0); }
+
+    void setValue(String v, long stamp) {
+        value.setText(v);
+        if (shown != null && stamp != 0) shown.record(System.nanoTime() - stamp);
+    }
+}
+
+/** Compact grid of metric values for the dashboard; {@link #refresh()} is cheap to call every frame. */
+class MetricsPanel extends JPanel {
+    private static final String[][] ROWS = {
+        { "samples/s",  "iot_samples_per_second",              "%,.0f" },
+        { "ingest p99", "iot_latency_seconds_ingest_p99_ms",  "%.2f ms" },
+        { "insert p99", "iot_latency_seconds_insert_p99_ms",  "%.2f ms" },
+        { "card p99",   "iot_latency_seconds_post_p99_ms",    "%.2f ms" },
+        { "paint p99",  "iot_latency_seconds_paint_p99_ms",   "%.2f ms" },
+        { "EDT lag p99","iot_edt_lag_seconds_p99_ms",         "%.2f ms" },
+        { "frame p99",  "iot_frame_seconds_p99_ms",           "%.2f ms" },
+        { "GC max",     "iot_gc_pause_seconds_max_ms",        "%.0f ms" },
+        { "coalesced/s","iot_ui_coalesced_per_second",        "%,.0f" },
+    };
+
+    private final Metrics metrics;
+    private final JLabel[] values = new JLabel[ROWS.length];
+    private long shownAt;
+
+    MetricsPanel(Metrics metrics) {
+        super(new GridLayout(2, (ROWS.length + 1) / 2, 10, 2));
+        this.metrics = metrics;
+        setBackground(Color.WHITE);
+        setBorder(new CompoundBorder(new EmptyBorder(10,12,10,12), new LineBorder(new Color(230,230,230),1,true)));
+        Font nameFont = new Font("Segoe UI", Font.PLAIN, 11), valueFont = new Font("Segoe UI", Font.BOLD, 13);
+        for (int i = 0; i < ROWS.length; i++) {
+            JPanel cell = new JPanel(new BorderLayout());
+            cell.setOpaque(false);
+            JLabel name = new JLabel(ROWS[i][0]);
+            name.setFont(nameFont);
+            name.setForeground(new Color(120,120,120));
+            values[i] = new JLabel("—");
+            values[i].setFont(valueFont);
+            cell.add(name, BorderLayout.NORTH);
+            cell.add(values[i], BorderLayout.CENTER);
+            add(cell);
+        }
+        setPreferredSize(new Dimension(680, 92));
+    }
+
+    /** Updates the labels at most once a second; returns whether it did. */
+    boolean refresh() {
+        long now = System.nanoTime();
+        if (now - shownAt < 1_000_000_000L) return false;
+        shownAt = now;
+        for (int i = 0; i < ROWS.length; i++) values[i].setText(String.format(ROWS[i][2], metrics.value(ROWS[i][1])));
+        return true;
+    }
+}
 
 class NeonButton extends JButton {
     private final Color base, glow;
@@ -664,3 +2295,6140 @@ class NeonButton extends JButton {
         g2.dispose();
     }
 }
+
+/* --------------------- Fleet Engine (headless) --------------------- */
+interface SampleSink {
+    void accept(int device, long t, double v);
+
+    /** End of a producer's tick or burst: anything batched should be pushed out now, or when due. */
+    default void endBatch() {}
+
+    /** Hands every sample to {@code a}, then {@code b}. */
+    static SampleSink tee(SampleSink a, SampleSink b) {
+        return new SampleSink() {
+            @Override public void accept(int device, long t, double v) { a.accept(device, t, v); b.accept(device, t, v); }
+            @Override public void endBatch() { a.endBatch(); b.endBatch(); }
+        };
+    }
+}
+
+/**
+ * Drives N simulated devices from hashed timing wheels, one wheel per shard.
+ * Device state lives in primitive arrays and each wheel slot is an intrusive
+ * int-linked list, so scheduling a sample allocates nothing.
+ * <p>
+ * Each device has its own rate ({@value #MIN_HZ} Hz to {@value #MAX_HZ} Hz, changeable while
+ * running). Due times are kept in virtual nanoseconds and advance by the exact period, so
+ * there is no cumulative drift; a device faster than the tick emits all samples due within
+ * the tick as one batch. Samples leave the engine with millisecond timestamps, as the store,
+ * exporter, rules and uplink keep them, so the rate stops at 1 kHz: the fastest rate at which
+ * every sample of a device still has a time of its own.
+ */
+class FleetEngine {
+    static final int TEMP = 0, MOTION = 1;
+    static final long TEMP_PERIOD_MS = 2000, MOTION_PERIOD_MS = 1500;
+    static final double MIN_HZ = 0.1, MAX_HZ = 1_000;
+
+    private final Shard[] shards;
+    private final int[] ids;                         // ascending; device at position p runs on shard p % shards
+    private final DeviceTable table;                 // indexed by position
+    private final long startNanos = System.nanoTime();
+    private final long epoch, tickMillis, seed;
+    private final boolean realistic;
+
+    FleetEngine(int devices, int shardCount, long tickMillis, SampleSink sink) {
+        this(devices, shardCount, tickMillis, new SplittableRandom().nextLong(), 1, System.currentTimeMillis(), sink);
+    }
+
+    /**
+     * Sample timestamps are virtual: {@code epoch + tick * tickMillis}, and every device draws from
+     * its own stream seeded from {@code seed}, so a run is identical at any {@code speed}
+     * (1 = real time, 10/1000 = accelerated, 0 = as fast as possible) and any shard count.
+     */
+    FleetEngine(int devices, int shardCount, long tickMillis, long seed, double speed, long epoch, SampleSink sink) {
+        this(devices, shardCount, tickMillis, seed, speed, epoch, sink, true);
+    }
+
+    /** @param realistic signal models from {@link SignalBank#realistic()}, else the original uniform generator */
+    FleetEngine(int devices, int shardCount, long tickMillis, long seed, double speed, long epoch, SampleSink sink, boolean realistic) {
+        this(allDevices(devices), shardCount, tickMillis, seed, speed, epoch, sink, realistic);
+    }
+
+    /**
+     * Runs only the devices in {@code ids} (ascending), as one worker of a partitioned fleet.
+     * Each device produces exactly the samples it would in a whole-fleet run with the same seed.
+     */
+    FleetEngine(int[] ids, int shardCount, long tickMillis, long seed, double speed, long epoch, SampleSink sink, boolean realistic) {
+        this.ids = ids;
+        this.epoch = epoch;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.seed = seed;
+        this.realistic = realistic;
+        shardCount = Math.max(1, Math.min(shardCount, ids.length));
+        table = new DeviceTable(ids.length, shardCount);
+        shards = new Shard[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            int[] own = new int[ids.length / shardCount + (s < ids.length % shardCount ? 1 : 0)];
+            for (int i = 0; i < own.length; i++) own[i] = ids[s + i * shardCount];
+            shards[s] = new Shard(s, shardCount, own, this.tickMillis, seed, speed, epoch, sink, realistic, table);
+        }
+    }
+
+    private static int[] allDevices(int devices) {
+        int[] ids = new int[devices];
+        for (int d = 0; d < devices; d++) ids[d] = d;
+        return ids;
+    }
+
+    /** Temperature readings are 20..30 °C, motion fires on 40% of samples. */
+    static double sample(SplittableRandom rnd, int type) {
+        return type == TEMP ? 20 + rnd.nextDouble() * 10 : (rnd.nextDouble() > 0.6 ? 1 : 0);
+    }
+
+    /** Independent, reproducible stream for one device of a seeded run. */
+    static SplittableRandom deviceRandom(long seed, int device) {
+        return new SplittableRandom(seed ^ (0x9E3779B97F4A7C15L * (device + 1L)));
+    }
+
+    /** Even device ids are temperature sensors, odd ids are motion sensors. */
+    static int typeOf(int device) { return (device & 1) == 0 ? TEMP : MOTION; }
+
+    static String nameOf(int device) {
+        return (typeOf(device) == TEMP ? "TempSensor-" : "MotionSensor-") + (device + 1);
+    }
+
+    void start() { for (Shard s : shards) s.thread.start(); }
+
+    /** Routes every sample through {@code uplink} before the sink. Call before {@link #start()}. */
+    void uplink(Uplink uplink) {
+        for (Shard s : shards) s.link = uplink.link(s.ids, epoch, tickMillis, seed, s.sink);
+    }
+
+    void stop() {
+        for (Shard s : shards) s.running = false;
+        for (Shard s : shards) {
+            try { s.thread.join(1000); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+    }
+
+    int shardCount() { return shards.length; }
+
+    static double defaultRate(int device) {
+        return 1000.0 / (typeOf(device) == TEMP ? TEMP_PERIOD_MS : MOTION_PERIOD_MS);
+    }
+
+    /**
+     * Changes the sample rate of {@code device}, from any thread. It applies from the
+     * shard's next tick, keeping the device's phase: the next sample is due one new period
+     * after the last one, or immediately if that has already passed.
+     */
+    void setRate(int device, double hz) {
+        if (!(hz >= MIN_HZ && hz <= MAX_HZ)) throw new IllegalArgumentException("rate must be " + MIN_HZ + ".." + MAX_HZ + " Hz: " + hz);
+        int p = Arrays.binarySearch(ids, device);
+        if (p < 0) throw new IllegalArgumentException("device " + device + " is not run by this engine");
+        shards[p % shards.length].changes.add(new long[] { p / shards.length, periodNanos(hz) });
+    }
+
+    boolean runs(int device) { return Arrays.binarySearch(ids, device) >= 0; }
+
+    /** Device ids run by this engine, ascending; index i is engine position i. */
+    int[] devices() { return ids.clone(); }
+
+    /** Row of {@code device} in {@link #table()}, or -1 when this engine does not run it. */
+    int row(int device) {
+        int p = Arrays.binarySearch(ids, device);
+        return p < 0 ? -1 : table.row(p);
+    }
+
+    /** Latest value, time, status and count of every device, updated in place by the shards. */
+    DeviceTable table() { return table; }
+
+    /** Heap held per device by the scheduler, signal and state columns, in bytes. */
+    long stateBytes() {
+        long n = table.bytes();
+        for (Shard s : shards) n += s.bytes();
+        return n;
+    }
+
+    private static long periodNanos(double hz) { return Math.max(1, Math.round(1e9 / hz)); }
+
+    /**
+     * Advances every shard by {@code ticks} on the calling thread with no pacing and
+     * returns the number of samples fired. Only for engines that were never started.
+     */
+    long step(int ticks) {
+        long fired = 0;
+        for (Shard s : shards) {
+            for (int i = 0; i < ticks; i++) fired += s.step();
+        }
+        return fired;
+    }
+
+    long samples() {
+        long n = 0;
+        for (Shard s : shards) n += s.samples;
+        return n;
+    }
+
+    /**
+     * Returns {ticks, sum of tick lateness ns, max tick lateness ns, sum of squared lateness us,
+     * current lateness ns of the furthest-behind shard} since the last call. Jitter is the spread
+     * of the per-tick lateness; the last entry is drift, how far the schedule trails the wall clock.
+     */
+    long[] drainJitter() {
+        long ticks = 0, sum = 0, max = 0, squares = 0, behind = 0;
+        for (Shard s : shards) {
+            long[] j = s.drainJitter();
+            ticks += j[0]; sum += j[1]; max = Math.max(max, j[2]); squares += j[3]; behind = Math.max(behind, j[4]);
+        }
+        return new long[] { ticks, sum, max, squares, behind };
+    }
+
+    long uptimeNanos() { return System.nanoTime() - startNanos; }
+
+    /* ------------ checkpoints ------------ */
+
+    /**
+     * Every device's scheduler, signal and table state in engine position order, as copied
+     * by {@link #capture}. Reused across checkpoints, so a periodic checkpoint allocates once.
+     */
+    static final class Frozen {
+        final int n;
+        final int[] ids;
+        final long seed, epoch, tickMillis;
+        final boolean realistic;
+        final long[] due, period, rows;
+        final double[] cells, bias, held;
+        final int[] burst, faultIn;
+        final byte[] fault;
+        final long[] shardTicks;
+        long tick;                                   // restore point: the earliest tick any shard was copied at
+        long copyNanos;                              // time the shards spent copying, summed
+        private CountDownLatch done;
+
+        Frozen(int[] ids, long seed, long epoch, long tickMillis, boolean realistic, int shards) {
+            int n = this.n = ids.length;
+            this.ids = ids;
+            this.seed = seed;
+            this.epoch = epoch;
+            this.tickMillis = tickMillis;
+            this.realistic = realistic;
+            due = new long[n];
+            period = new long[n];
+            rows = new long[n * DeviceTable.ROW];
+            cells = new double[n * SignalBank.CELL];
+            bias = new double[n];
+            held = new double[n];
+            burst = new int[n];
+            faultIn = new int[n];
+            fault = new byte[n];
+            shardTicks = new long[shards];
+        }
+
+        /** Virtual time of the restore point. */
+        long virtualTime() { return epoch + tick * tickMillis; }
+
+        private static final int CHUNK = 1 << 20;       // devices per DEVICES section, ~110 MB
+        private static final int PER_DEVICE = Integer.BYTES * 3 + Long.BYTES * (2 + DeviceTable.ROW)
+                + Double.BYTES * (SignalBank.CELL + 2) + 1;
+
+        /** A FLEET header section, then one DEVICES section per chunk of positions. */
+        List<Checkpoint.Section> sections() {
+            List<Checkpoint.Section> out = new ArrayList<>();
+            out.add(new Checkpoint.Section(Checkpoint.FLEET, 44, o -> o.putInt(n).putLong(seed).putLong(epoch)
+                    .putLong(tickMillis).putInt(realistic ? 1 : 0).putLong(tick).putInt(CHUNK)));
+            for (int from = 0; from < n; from += CHUNK) {
+                int at = from, len = Math.min(CHUNK, n - from);
+                out.add(new Checkpoint.Section(Checkpoint.DEVICES, 8 + (long) len * PER_DEVICE, o -> {
+                    o.putInt(at).putInt(len).putInts(ids, at, len).putLongs(due, at, len).putLongs(period, at, len)
+                     .putLongs(rows, at * DeviceTable.ROW, len * DeviceTable.ROW)
+                     .putDoubles(cells, at * SignalBank.CELL, len * SignalBank.CELL)
+                     .putDoubles(bias, at, len).putDoubles(held, at, len)
+                     .putInts(burst, at, len).putInts(faultIn, at, len).putBytes(fault, at, len);
+                }));
+            }
+            return out;
+        }
+
+        static Frozen read(Checkpoint cp) throws IOException {
+            Checkpoint.In h = cp.first(Checkpoint.FLEET);
+            if (h == null) throw new IOException("checkpoint holds no fleet");
+            int n = h.getInt();
+            long seed = h.getLong(), epoch = h.getLong(), tickMillis = h.getLong();
+            boolean realistic = h.getInt() != 0;
+            long tick = h.getLong();
+            Frozen f = new Frozen(new int[n], seed, epoch, tickMillis, realistic, 0);
+            f.tick = tick;
+            int covered = 0;
+            for (Checkpoint.In o : cp.all(Checkpoint.DEVICES)) {
+                int at = o.getInt(), len = o.getInt();
+                if (at < 0 || len < 0 || at + len > n) throw new IOException("checkpoint device chunk " + at + "+" + len + " outside 0.." + n);
+                o.getInts(f.ids, at, len);
+                o.getLongs(f.due, at, len);
+                o.getLongs(f.period, at, len);
+                o.getLongs(f.rows, at * DeviceTable.ROW, len * DeviceTable.ROW);
+                o.getDoubles(f.cells, at * SignalBank.CELL, len * SignalBank.CELL);
+                o.getDoubles(f.bias, at, len);
+                o.getDoubles(f.held, at, len);
+                o.getInts(f.burst, at, len);
+                o.getInts(f.faultIn, at, len);
+                o.getBytes(f.fault, at, len);
+                covered += len;
+            }
+            if (covered != n) throw new IOException("checkpoint holds " + covered + " of " + n + " devices");
+            return f;
+        }
+    }
+
+    /**
+     * Copies every device's state into {@code into} (a new Frozen when null or sized for
+     * another engine) while the shards keep running. A running shard copies its devices a
+     * chunk per tick boundary on its own thread, so producers never wait on the caller or
+     * on I/O and each device is copied between two of its own samples; a shard that is not
+     * running is copied on the calling thread. Devices are independent, so resuming every
+     * device from its own copy, at the earliest tick any shard was copied at, continues each
+     * stream exactly. Samples held in uplink buffers are not part of the copy.
+     */
+    Frozen capture(Frozen into) throws InterruptedException {
+        Frozen f = into != null && into.n == ids.length && into.shardTicks.length == shards.length ? into
+                : new Frozen(ids, seed, epoch, tickMillis, realistic, shards.length);
+        f.copyNanos = 0;
+        f.done = new CountDownLatch(shards.length);
+        for (Shard s : shards) s.capture = f;
+        do {
+            for (Shard s : shards) {
+                if (s.thread.isAlive()) continue;           // not started or already stopped: nothing else touches it
+                while (s.capture == f) s.copyChunk(f);
+            }
+        } while (!f.done.await(20, TimeUnit.MILLISECONDS));
+        long tick = Long.MAX_VALUE;
+        for (long t : f.shardTicks) tick = Math.min(tick, t);
+        f.tick = tick;
+        return f;
+    }
+
+    /** Empty capture buffers; allocating them before {@link #start()} keeps the first checkpoint from doing so. */
+    Frozen frozen() { return new Frozen(ids, seed, epoch, tickMillis, realistic, shards.length); }
+
+    /**
+     * Checkpoints of one engine written to a file from a thread of their own:
+     * {@code path[,every=30s]}. {@link #request} starts a checkpoint unless the last one is
+     * still being written; {@link #close} waits for it and writes a final one.
+     */
+    static final class Checkpointer implements Closeable {
+        final java.nio.file.Path file;
+        final long everyMillis;
+        private final FleetEngine engine;
+        private final Frozen frozen;
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        private Future<?> pending;
+        volatile int written;
+        volatile long bytes, lastMillis, maxCopyNanos;
+
+        Checkpointer(String spec, FleetEngine engine) {
+            String[] parts = spec.split(",");
+            long every = 0;
+            for (int i = 1; i < parts.length; i++) {
+                String[] kv = parts[i].split("=", 2);
+                if (!kv[0].trim().equals("every") || kv.length < 2) throw new IllegalArgumentException("unknown checkpoint option " + parts[i]);
+                every = Uplink.millis(kv[1].trim());
+            }
+            this.file = java.nio.file.Paths.get(parts[0].trim());
+            this.everyMillis = every;
+            this.engine = engine;
+            this.frozen = engine.frozen();
+        }
+
+        void request() {
+            if (pending != null && !pending.isDone()) return;
+            pending = writer.submit(this::write);
+        }
+
+        private void write() {
+            long started = System.nanoTime();
+            try {
+                Frozen f = engine.capture(frozen);
+                long size = Checkpoint.write(file, f.sections());
+                lastMillis = (System.nanoTime() - started) / 1_000_000;
+                bytes = size;
+                maxCopyNanos = Math.max(maxCopyNanos, f.copyNanos);
+                written++;
+                System.out.printf("[checkpoint] %,d devices at t+%.1f s, %.1f MB to %s in %d ms; shards spent %.1f ms copying%n",
+                        f.n, (f.virtualTime() - f.epoch) / 1000.0, size / 1e6, file, lastMillis, f.copyNanos / 1e6);
+            } catch (IOException e) {
+                System.err.println("[checkpoint] cannot write " + file + ": " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override public void close() {
+            try {
+                if (pending != null) pending.get();
+                writer.submit(this::write).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("[checkpoint] " + e.getCause());
+            }
+            writer.shutdown();
+        }
+    }
+
+    /** An engine that resumes every device of {@code f}, on any number of shards. Not yet started. */
+    static FleetEngine restore(Frozen f, int shardCount, double speed, SampleSink sink) {
+        FleetEngine e = new FleetEngine(f.ids, shardCount, f.tickMillis, f.seed, speed, f.epoch, sink, f.realistic);
+        for (Shard s : e.shards) s.restore(f);
+        return e;
+    }
+
+    /** Virtual time reached by the slowest shard. */
+    long virtualTime() {
+        long t = Long.MAX_VALUE;
+        for (Shard s : shards) t = Math.min(t, s.tick);
+        return epoch + t * tickMillis;
+    }
+
+    /** Runs {@code --fleet} and returns the exit status: 0, 1 when the run could not start, 2 for conflicting options. */
+    static int runHeadless(String[] args) {
+        int devices = 100_000, shards = 0, seconds = 30;
+        long tick = 1, seed = new SplittableRandom().nextLong();
+        double speed = 1;
+        boolean ingest = false, realistic = true;
+        String storeDir = null, replayDir = null;
+        List<String> rates = new ArrayList<>(), outages = new ArrayList<>();
+        Uplink uplink = null;
+        int workers = 0, workerIndex = -1, types = -1;
+        String statsFile = null, summary = null, exportSpec = null, checkpointSpec = null, restoreFile = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--checkpoint": checkpointSpec = args[++i]; break;
+                case "--restore": restoreFile = args[++i]; break;
+                case "--summary": summary = args[++i]; break;
+                case "--export":  exportSpec = args[++i]; break;
+                case "--types":   types = parseTypes(args[++i]); break;
+                case "--workers": workers = Integer.parseInt(args[++i]); break;
+                case "--worker":  statsFile = args[++i]; workerIndex = Integer.parseInt(args[++i]); break;
+                case "--rate":    rates.add(args[++i]); break;
+                case "--uplink":  uplink = Uplink.parse(args[++i]); break;
+                case "--outage":  outages.add(args[++i]); break;
+                case "--signals": realistic = !args[++i].equals("uniform"); break;
+                case "--shards":  shards = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--tick":    tick = Long.parseLong(args[++i]); break;
+                case "--store":   storeDir = args[++i]; break;
+                case "--seed":    seed = Long.parseLong(args[++i]); break;
+                case "--speed":   speed = SimClock.parseSpeed(args[++i]); break;
+                case "--replay":  replayDir = args[++i]; break;
+                case "--ingest":  ingest = true; break;
+                default:          devices = Integer.parseInt(args[i]);
+            }
+        }
+        if (shards <= 0) shards = workers > 0 ? 1 : Runtime.getRuntime().availableProcessors();   // workers: one thread each
+        if (replayDir != null) {
+            replayHeadless(replayDir, speed);
+            return 0;
+        }
+        if (statsFile != null) {
+            FleetCoordinator.work(java.nio.file.Paths.get(statsFile), workerIndex, tick, speed, realistic, rates);
+            return 0;
+        }
+        if (workers > 0) {
+            if (storeDir != null || ingest || uplink != null || !outages.isEmpty() || types >= 0 || exportSpec != null
+                    || checkpointSpec != null || restoreFile != null) {
+                System.err.println("[coord] --store, --ingest, --uplink, --outage, --types, --export, --checkpoint and --restore run in a single process only");
+                return 2;
+            }
+            List<String> forward = new ArrayList<>(List.of("--tick", Long.toString(tick), "--speed", speed == 0 ? "max" : Double.toString(speed)));
+            if (!realistic) forward.addAll(List.of("--signals", "uniform"));
+            for (String r : rates) forward.addAll(List.of("--rate", r));
+            return FleetCoordinator.run(devices, workers, shards, seconds, seed, forward, summary);
+        }
+
+        /* a restored fleet brings its own devices, seed, tick, signals and virtual clock */
+        Frozen resume = null;
+        long epoch = System.currentTimeMillis();
+        if (restoreFile != null) {
+            long began = System.nanoTime();
+            try {
+                Checkpoint cp = new Checkpoint(java.nio.file.Paths.get(restoreFile));
+                resume = Frozen.read(cp);
+                System.out.printf("[checkpoint] read %,d devices at t+%.1f s from %s (%.1f MB) in %d ms%n", resume.n,
+                        (resume.virtualTime() - resume.epoch) / 1000.0, restoreFile, cp.bytes / 1e6, (System.nanoTime() - began) / 1_000_000);
+            } catch (IOException e) {
+                return abort("[checkpoint] cannot restore " + restoreFile + ": " + e.getMessage());
+            }
+            devices = resume.n;
+            seed = resume.seed;
+            tick = resume.tickMillis;
+            realistic = resume.realistic;
+            epoch = resume.epoch;
+        }
+
+        /* ids alternate temp/motion, so a single-type fleet runs every other id */
+        int[] ids = resume != null ? resume.ids : types < 0 ? allDevices(devices) : new int[devices];
+        if (resume == null && types >= 0) for (int i = 0; i < devices; i++) ids[i] = 2 * i + types;
+        int idLimit = devices == 0 ? 0 : ids[devices - 1] + 1;
+
+        TelemetryStore store = null;
+        if (storeDir != null) {
+            try {
+                store = new TelemetryStore(java.nio.file.Paths.get(storeDir));
+                for (int d = 0; d < idLimit; d++) store.register(nameOf(d), typeOf(d));     // the store indexes by id
+            } catch (IOException e) {
+                return abort("[fleet] cannot open store " + storeDir + ": " + e, store);
+            }
+        }
+
+        SampleSink sink = store != null ? store : (d, t, v) -> {};
+        Exporter exporter = null;
+        if (exportSpec != null) {
+            try {
+                exporter = Exporter.parse(exportSpec);
+            } catch (IOException | IllegalArgumentException e) {
+                return abort("[fleet] cannot open export " + exportSpec + ": " + e, store);
+            }
+            sink = store != null ? SampleSink.tee(store, exporter) : exporter;
+            System.out.printf("[export] %s to %s%s, %,d-batch queue, %s when full%n", exporter.format.name().toLowerCase(Locale.ROOT),
+                    exporter.target, exporter.level > 0 ? " (gzip " + exporter.level + ")" : "", exporter.queueBatches,
+                    exporter.policy.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        }
+        IngestServer server = null;
+        List<IngestClient> clients = new CopyOnWriteArrayList<>();
+        if (ingest) {
+            try {
+                server = new IngestServer(0, sink).start();
+            } catch (IOException e) {
+                return abort("[fleet] cannot start ingest server: " + e, exporter, store);
+            }
+            sink = clientPerThread(server.address(), clients);
+        }
+
+        long restoreStarted = System.nanoTime();
+        FleetEngine engine = resume != null ? restore(resume, shards, speed, sink) : new FleetEngine(ids, shards, tick, seed, speed, epoch, sink, realistic);
+        if (resume != null) {
+            System.out.printf("[checkpoint] restored in %d ms%n", (System.nanoTime() - restoreStarted) / 1_000_000);
+            resume = null;                  // the engine has its own copy now
+        }
+        try {
+            for (String r : rates) System.out.println("[fleet] " + engine.applyRate(r, idLimit));
+        } catch (IllegalArgumentException e) {
+            return abort("[fleet] " + e.getMessage(), server, exporter, store);
+        }
+        Checkpointer checkpoints = null;
+        if (checkpointSpec != null) {
+            try {
+                checkpoints = new Checkpointer(checkpointSpec, engine);
+            } catch (IllegalArgumentException e) {
+                return abort("[checkpoint] " + e.getMessage(), server, exporter, store);
+            }
+        }
+        if (uplink == null && !outages.isEmpty()) uplink = Uplink.parse("");
+        if (uplink != null) {
+            for (String o : outages) System.out.println("[uplink] " + uplink.outage(o, idLimit));
+            engine.uplink(uplink);
+            System.out.printf("[uplink] latency %d+%d ms, loss %s, %d-sample buffers, flush %s samples/s%n",
+                    uplink.latencyMs, uplink.jitterMs, uplink.loss, uplink.buffer, uplink.flushPerSecond);
+        }
+        System.out.printf("[fleet] %,d %sdevices on %d shard(s), %d ms tick, seed %d, speed %s%n", devices,
+                types < 0 ? "" : types == TEMP ? "temp " : "motion ", engine.shardCount(), tick, seed, speed == 0 ? "max" : speed + "x");
+        long startedAt = System.currentTimeMillis();
+        engine.start();
+        engine.readRateCommands(idLimit);
+
+        long prev = 0, total = 0, prevFrames = 0, prevDelivered = 0, peak = 0, prevExported = 0;
+        int peakAt = 0;
+        long[] run = new long[5];                                                 // drainJitter totals over the run
+        List<LatencyHistogram.Snapshot> latencies = new ArrayList<>();
+        for (int s = 1; s <= seconds; s++) {
+            try { Thread.sleep(1000); } catch (InterruptedException e) { break; }
+            long now = engine.samples();
+            long[] j = engine.drainJitter();
+            Scenario.addJitter(run, j);
+            total = now;
+            double mean = j[0] == 0 ? 0 : j[1] / (double) j[0] / 1e3;     // us
+            double sd = j[0] == 0 ? 0 : Math.sqrt(Math.max(0, j[3] / (double) j[0] - mean * mean));
+            System.out.printf("[fleet] t=%3ds  %,10d samples/s  jitter avg %.3f ms  sd %.3f ms  max %.3f ms  drift %.3f ms%n",
+                    s, now - prev, mean / 1e3, sd / 1e3, j[2] / 1e6, j[4] / 1e6);
+            if (server != null) {
+                long frames = server.frames();
+                LatencyHistogram.Snapshot lat = server.latency().drain();
+                latencies.add(lat);
+                System.out.printf("[ingest]        %,10d msg/s  latency p50 %.3f ms  p99 %.3f ms  max %.3f ms%n",
+                        frames - prevFrames, lat.percentile(0.5) / 1e6, lat.percentile(0.99) / 1e6, lat.max() / 1e6);
+                prevFrames = frames;
+            }
+            if (uplink != null) {
+                long delivered = uplink.delivered.sum(), rate = delivered - prevDelivered;
+                if (rate > peak) { peak = rate; peakAt = s; }
+                System.out.printf("[uplink]        %,10d delivered/s  %,d buffered  %,d offline  %,d lost  %,d overflowed%n",
+                        rate, uplink.buffered.sum(), uplink.offline.get(), uplink.lost.sum(), uplink.overflowed.sum());
+                prevDelivered = delivered;
+            }
+            if (exporter != null) {
+                long exported = exporter.exported.sum();
+                System.out.printf("[export]        %,10d samples/s  %,d dropped  queue %d/%d  %.1f MB written%n",
+                        exported - prevExported, exporter.dropped.sum(), exporter.queued(), exporter.queueBatches, exporter.bytesWritten() / 1e6);
+                prevExported = exported;
+            }
+            if (checkpoints != null && checkpoints.everyMillis > 0 && s < seconds && s * 1000L % checkpoints.everyMillis < 1000) checkpoints.request();
+            prev = now;
+        }
+        engine.stop();
+        if (checkpoints != null) checkpoints.close();
+        if (server != null) {
+            for (IngestClient c : clients) {
+                try { c.close(); } catch (IOException ignored) {}
+            }
+            try { Thread.sleep(100); server.close(); } catch (IOException | InterruptedException ignored) {}
+            System.out.printf("[ingest] done: %,d frames, %,d samples, %.1f MB over loopback, %d rejected%n",
+                    server.frames(), server.samples(), server.bytes() / 1e6, server.rejected());
+        }
+        double wall = engine.uptimeNanos() / 1e9, virtual = (engine.virtualTime() - epoch) / 1000.0;
+        System.out.printf("[fleet] done: %,d samples, %,.0f samples/s sustained, %.1f s of virtual time%n", total, total / wall, virtual);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", "fleet");
+        report.put("devices", devices);
+        report.put("types", types < 0 ? "all" : types == TEMP ? "temp" : "motion");
+        report.put("shards", engine.shardCount());
+        report.put("tick_ms", tick);
+        report.put("seed", seed);
+        report.put("speed", speed == 0 ? "max" : speed);
+        report.put("startup_ms", Scenario.startupMillis(startedAt));
+        report.put("wall_seconds", wall);
+        report.put("virtual_seconds", virtual);
+        report.put("samples", total);
+        report.put("samples_per_second", total / wall);
+        report.put("jitter_ms", Scenario.jitter(run));
+        DeviceTable table = engine.table();
+        int[] statuses = table.statusCounts();
+        long[] gc = Scenario.gc();
+        System.out.printf("[fleet] state: %.0f B/device (%.1f MB), %,d ok, %,d drifting, %,d stuck, %,d never sampled; "
+                        + "%,d GC pauses, %,d ms collecting%n",
+                engine.stateBytes() / (double) devices, engine.stateBytes() / 1e6,
+                statuses[1], statuses[2], statuses[3], statuses[0], gc[0], gc[1]);
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("bytes_per_device", engine.stateBytes() / (double) devices);
+        state.put("ok", statuses[1]);
+        state.put("drifting", statuses[2]);
+        state.put("stuck", statuses[3]);
+        state.put("never_sampled", statuses[0]);
+        report.put("state", state);
+        Map<String, Object> gcs = new LinkedHashMap<>();
+        gcs.put("collections", gc[0]);
+        gcs.put("ms", gc[1]);
+        report.put("gc", gcs);
+        if (restoreFile != null) report.put("restored_from", restoreFile);
+        if (checkpoints != null) {
+            Map<String, Object> ck = new LinkedHashMap<>();
+            ck.put("file", checkpoints.file.toString());
+            ck.put("written", checkpoints.written);
+            ck.put("bytes", checkpoints.bytes);
+            ck.put("last_ms", checkpoints.lastMillis);
+            ck.put("max_copy_ms", checkpoints.maxCopyNanos / 1e6);
+            report.put("checkpoint", ck);
+        }
+        if (server != null) {
+            Map<String, Object> in = new LinkedHashMap<>();
+            in.put("frames", server.frames());
+            in.put("samples", server.samples());
+            in.put("bytes", server.bytes());
+            in.put("rejected", server.rejected());
+            in.put("latency_ms", Scenario.percentiles(LatencyHistogram.Snapshot.merge(latencies.toArray(new LatencyHistogram.Snapshot[0])), 1e6));
+            report.put("ingest", in);
+        }
+        if (uplink != null) {
+            LatencyHistogram.Snapshot b = uplink.bursts.drain(), c = uplink.catchUp.drain();
+            System.out.printf("[uplink] done: %,d reconnects, burst p50 %,d p99 %,d max %,d samples, catch-up p50 %.2f s p99 %.2f s max %.2f s, "
+                            + "peak ingest %,d samples/s at t=%ds%n",
+                    b.count, b.percentile(0.5), b.percentile(0.99), b.max(),
+                    c.percentile(0.5) / 1e3, c.percentile(0.99) / 1e3, c.max() / 1e3, peak, peakAt);
+            Map<String, Object> up = new LinkedHashMap<>();
+            up.put("delivered", uplink.delivered.sum());
+            up.put("lost", uplink.lost.sum());
+            up.put("overflowed", uplink.overflowed.sum());
+            up.put("reconnects", b.count);
+            up.put("burst_samples", Scenario.percentiles(b, 1));
+            up.put("catch_up_ms", Scenario.percentiles(c, 1));
+            up.put("peak_delivered_per_second", peak);
+            report.put("uplink", up);
+        }
+        if (exporter != null) {
+            try { exporter.close(); } catch (IOException e) { System.err.println("[export] close failed: " + e); }
+            System.out.println("[export] done: " + exporter.stats());
+            Map<String, Object> ex = new LinkedHashMap<>();
+            ex.put("format", exporter.format.name().toLowerCase(Locale.ROOT));
+            ex.put("samples", exporter.exported.sum());
+            ex.put("dropped", exporter.dropped.sum());
+            ex.put("files", exporter.files());
+            ex.put("bytes", exporter.bytesWritten());
+            ex.put("bytes_uncompressed", exporter.bytesRaw());
+            report.put("export", ex);
+        }
+        if (store != null) {
+            try { store.close(); } catch (IOException e) { System.err.println("[fleet] store close failed: " + e); }
+            System.out.println("[store] " + store.stats());
+            Map<String, Object> st = new LinkedHashMap<>();
+            st.put("samples", store.samples());
+            st.put("records", store.records());
+            st.put("bytes", store.bytesWritten());
+            report.put("store", st);
+        }
+        if (summary != null) Scenario.writeSummary(summary, report);
+        return 0;
+    }
+
+    /* Reports why a run could not start, closes what it had opened, newest first, and returns status 1. */
+    private static int abort(String message, Closeable... opened) {
+        System.err.println(message);
+        for (Closeable c : opened) {
+            try { if (c != null) c.close(); } catch (IOException ignored) {}
+        }
+        return 1;
+    }
+
+    /* --types temp|motion|all: the device type to run, -1 for both. */
+    private static int parseTypes(String s) {
+        switch (s) {
+            case "all": return -1;
+            case "temp": return TEMP;
+            case "motion": return MOTION;
+            default: throw new IllegalArgumentException("types must be temp, motion or all: " + s);
+        }
+    }
+
+    /**
+     * Applies {@code selector=hz}, where the selector is a device id, a range {@code a-b},
+     * {@code temp}, {@code motion} or {@code all}. Returns a line describing the change.
+     */
+    String applyRate(String spec, int devices) {
+        int eq = spec.indexOf('=');
+        if (eq < 0) throw new IllegalArgumentException("expected selector=hz: " + spec);
+        String sel = spec.substring(0, eq).trim();
+        double hz = Double.parseDouble(spec.substring(eq + 1).trim());
+        int from = 0, to = devices - 1, type = -1;
+        switch (sel) {
+            case "all": break;
+            case "temp": type = TEMP; break;
+            case "motion": type = MOTION; break;
+            default:
+                int dash = sel.indexOf('-');
+                from = Integer.parseInt(dash < 0 ? sel : sel.substring(0, dash));
+                to = Math.min(devices - 1, dash < 0 ? from : Integer.parseInt(sel.substring(dash + 1)));
+        }
+        int n = 0;
+        for (int d = from; d <= to; d++) {
+            if (type >= 0 && typeOf(d) != type || !runs(d)) continue;
+            setRate(d, hz);
+            n++;
+        }
+        return String.format("rate %s Hz for %,d device(s) (%s)", hz, n, sel);
+    }
+
+    /* "rate <selector>=<hz>" lines on stdin change rates while the fleet runs. */
+    private void readRateCommands(int devices) {
+        Thread t = new Thread(() -> {
+            try (java.io.BufferedReader in = new java.io.BufferedReader(new java.io.InputStreamReader(System.in))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    line = line.trim();
+                    if (line.startsWith("rate ")) line = line.substring(5);
+                    if (line.isEmpty()) continue;
+                    try {
+                        System.out.println("[fleet] " + applyRate(line, devices));
+                    } catch (RuntimeException e) {
+                        System.out.println("[fleet] cannot apply \"" + line + "\": " + e.getMessage());
+                    }
+                }
+            } catch (IOException ignored) {}
+        }, "fleet-rates");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /* Gives every shard thread its own connection, since IngestClient is single-threaded. */
+    private static SampleSink clientPerThread(InetSocketAddress address, List<IngestClient> clients) {
+        ThreadLocal<IngestClient> local = ThreadLocal.withInitial(() -> {
+            try {
+                IngestClient c = new IngestClient(address);
+                clients.add(c);
+                return c;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return new SampleSink() {
+            @Override public void accept(int device, long t, double v) { local.get().accept(device, t, v); }
+            @Override public void endBatch() { local.get().endBatch(); }
+        };
+    }
+
+    /* Re-drives everything recorded in a store through a counting sink on a virtual clock. */
+    private static void replayHeadless(String dir, double speed) {
+        LongAdder n = new LongAdder();
+        long[] span = { Long.MAX_VALUE, Long.MIN_VALUE };
+        long started = System.nanoTime();
+        try (TelemetryStore store = new TelemetryStore(java.nio.file.Paths.get(dir))) {
+            long first = store.firstTime();
+            if (first == Long.MIN_VALUE) {
+                System.out.println("[replay] " + dir + " holds no telemetry");
+                return;
+            }
+            System.out.printf("[replay] %s: %,d devices, speed %s%n", dir, store.deviceCount(), speed == 0 ? "max" : speed + "x");
+            store.replay(new SimClock(first, speed), (d, t, v) -> {
+                n.increment();
+                if (t < span[0]) span[0] = t;
+                if (t > span[1]) span[1] = t;
+            });
+        } catch (IOException e) {
+            System.err.println("[replay] failed: " + e);
+            return;
+        }
+        double wall = (System.nanoTime() - started) / 1e9, virtual = Math.max(0, span[1] - span[0]) / 1000.0;
+        System.out.printf("[replay] %,d samples covering %.1f s replayed in %.2f s (%.0fx), %,.0f samples/s%n",
+                n.sum(), virtual, wall, virtual / wall, n.sum() / wall);
+    }
+
+    /* One timing wheel and its worker thread. Only the worker touches the arrays. */
+    private static final class Shard implements Runnable {
+        private static final int WHEEL = 1024, MASK = WHEEL - 1;
+
+        final Thread thread;
+        volatile boolean running = true;
+        volatile long samples;
+
+        private static final int CAPTURE_CHUNK = 8192;        // devices copied per tick boundary during a checkpoint
+
+        private final SampleSink sink;
+        private final int index, stride;                 // device i of this shard is engine position index + i * stride
+        private final long tickNanos, tickMillis, epoch;
+        private final double speed;
+        private final int[] ids, rounds, next, slotOf;
+        private final long[] periodNanos, due;      // due: virtual ns since epoch of the next sample
+        private final SignalBank signals;
+        private final DeviceTable table;
+        private final int first;                     // device i of this shard is table row first + i
+        private Uplink.Link link;                    // null: samples go straight to the sink
+        private int[][] batchIdx;                    // samples due this tick, one batch per signal model
+        private long[][] batchT;
+        private double[][] batchV;
+        private int[] batchSize;
+        private final int[] head = new int[WHEEL];
+        private volatile long tick;
+        final ConcurrentLinkedQueue<long[]> changes = new ConcurrentLinkedQueue<>();   // {index, period ns}
+
+        volatile Frozen capture;                         // set by capture(), cleared here once every device is copied
+        private int captured;
+
+        private final Object jitterLock = new Object();
+        private long jitterTicks, jitterSum, jitterMax, jitterSquares, behind;
+
+        Shard(int index, int stride, int[] ids, long tickMillis, long seed, double speed, long epoch, SampleSink sink,
+              boolean realistic, DeviceTable table) {
+            int n = ids.length;
+            this.index = index;
+            this.stride = stride;
+            this.table = table;
+            this.first = table.shardStart(index);
+            this.sink = sink;
+            this.tickMillis = tickMillis;
+            this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+            this.speed = speed;
+            this.epoch = epoch;
+            this.ids = ids;
+            rounds = new int[n];
+            next = new int[n];
+            slotOf = new int[n];
+            periodNanos = new long[n];
+            due = new long[n];
+            double[] periods = new double[n];
+            Arrays.fill(head, -1);
+
+            for (int i = 0; i < n; i++) {
+                periodNanos[i] = periodNanos(defaultRate(ids[i]));
+                periods[i] = periodNanos[i] / 1e9;
+                // spread the first samples over one period
+                due[i] = (1 + deviceRandom(seed, ids[i]).nextInt((int) Math.max(1, periodNanos[i] / tickNanos))) * tickNanos;
+                schedule(i, due[i] / tickNanos);
+            }
+            signals = SignalBank.of(ids, seed, periods, realistic, table, first);
+            int models = signals.models();
+            batchIdx = new int[models][1024];
+            batchT = new long[models][1024];
+            batchV = new double[models][1024];
+            batchSize = new int[models];
+
+            thread = new Thread(this, "fleet-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        private void schedule(int i, long dueTick) {
+            int slot = (int) (dueTick & MASK);
+            rounds[i] = (int) ((dueTick - tick - 1) / WHEEL);
+            slotOf[i] = slot;
+            next[i] = head[slot];
+            head[slot] = i;
+        }
+
+        /* Rate changes: unlink from the current slot (a short walk) and reschedule in phase. */
+        private void applyChanges() {
+            for (long[] c; (c = changes.poll()) != null; ) {
+                int i = (int) c[0];
+                int slot = slotOf[i];
+                if (head[slot] == i) {
+                    head[slot] = next[i];
+                } else {
+                    int p = head[slot];
+                    while (next[p] != i) p = next[p];
+                    next[p] = next[i];
+                }
+                due[i] = Math.max(tick * tickNanos, due[i] - periodNanos[i] + c[1]);
+                periodNanos[i] = c[1];
+                signals.setPeriod(i, c[1] / 1e9);
+                schedule(i, Math.max(tick, due[i] / tickNanos));
+            }
+        }
+
+        @Override public void run() {
+            long origin = System.nanoTime() - (speed > 0 ? (long) (tick * tickNanos / speed) : 0);    // a restored shard starts mid-run
+            while (running) {
+                if (speed > 0) {
+                    long deadline = origin + (long) ((tick + 1) * tickNanos / speed);
+                    long now = System.nanoTime();
+                    while (now < deadline && running) {
+                        LockSupport.parkNanos(deadline - now);
+                        now = System.nanoTime();
+                    }
+                    recordJitter(now - deadline);
+                }
+                step();
+                Frozen f = capture;
+                if (f != null) copyChunk(f);
+            }
+        }
+
+        /* Copies the next chunk of devices into f by engine position; the last chunk hands f back. */
+        void copyChunk(Frozen f) {
+            long started = System.nanoTime();
+            if (captured == 0) f.shardTicks[index] = tick;
+            int to = Math.min(ids.length, captured + CAPTURE_CHUNK);
+            long[] rows = table.rows;
+            double[] cell = signals.cell;
+            for (int i = captured; i < to; i++) {
+                int p = index + i * stride, r = (first + i) * DeviceTable.ROW, fr = p * DeviceTable.ROW;
+                int c = i * SignalBank.CELL, fc = p * SignalBank.CELL;
+                f.due[p] = due[i];
+                f.period[p] = periodNanos[i];
+                f.rows[fr] = rows[r];
+                f.rows[fr + 1] = rows[r + 1];
+                f.rows[fr + 2] = rows[r + 2];
+                f.rows[fr + 3] = rows[r + 3];
+                f.cells[fc] = cell[c];
+                f.cells[fc + 1] = cell[c + 1];
+                f.cells[fc + 2] = cell[c + 2];
+                f.cells[fc + 3] = cell[c + 3];
+                f.bias[p] = signals.bias[i];
+                f.held[p] = signals.held[i];
+                f.burst[p] = signals.burst[i];
+                f.faultIn[p] = signals.faultIn[i];
+                f.fault[p] = signals.fault[i];
+            }
+            captured = to;
+            synchronized (f) { f.copyNanos += System.nanoTime() - started; }
+            if (to < ids.length) return;
+            captured = 0;
+            capture = null;
+            f.done.countDown();
+        }
+
+        /* Takes every device's state from f and rebuilds the wheel from the due times. Before start only. */
+        void restore(Frozen f) {
+            tick = f.tick;
+            Arrays.fill(head, -1);
+            long[] rows = table.rows;
+            double[] cell = signals.cell;
+            for (int i = 0; i < ids.length; i++) {
+                int p = index + i * stride;
+                System.arraycopy(f.rows, p * DeviceTable.ROW, rows, (first + i) * DeviceTable.ROW, DeviceTable.ROW);
+                System.arraycopy(f.cells, p * SignalBank.CELL, cell, i * SignalBank.CELL, SignalBank.CELL);
+                signals.bias[i] = f.bias[p];
+                signals.held[i] = f.held[p];
+                signals.burst[i] = f.burst[p];
+                signals.faultIn[i] = f.faultIn[p];
+                signals.fault[i] = f.fault[p];
+                due[i] = f.due[p];
+                periodNanos[i] = f.period[p];
+                schedule(i, Math.max(tick, due[i] / tickNanos));
+            }
+        }
+
+        /* Fires every sample due within the current tick and moves to the next one. */
+        int step() {
+            if (!changes.isEmpty()) applyChanges();
+            long end = (tick + 1) * tickNanos;
+            int[] size = batchSize;
+            Arrays.fill(size, 0);
+            int slot = (int) (tick & MASK);
+            int i = head[slot];
+            head[slot] = -1;
+            while (i != -1) {
+                int nx = next[i];
+                if (rounds[i] > 0) {
+                    rounds[i]--;
+                    next[i] = head[slot];
+                    head[slot] = i;
+                } else {
+                    int m = signals.model(i), n = size[m];
+                    int[] bi = batchIdx[m];
+                    long[] bt = batchT[m];
+                    long d = due[i], period = periodNanos[i];
+                    do {
+                        if (n == bi.length) {
+                            growBatch(m);
+                            bi = batchIdx[m];
+                            bt = batchT[m];
+                        }
+                        bi[n] = i;
+                        bt[n++] = epoch + d / 1_000_000;
+                        d += period;
+                    } while (d < end);
+                    size[m] = n;
+                    due[i] = d;
+                    schedule(i, d / tickNanos);
+                }
+                i = nx;
+            }
+            int fired = 0;
+            for (int m = 0; m < size.length; m++) {
+                if (size[m] > 0) emit(m, size[m]);
+                fired += size[m];
+            }
+            samples += fired;
+            if (link != null) link.flush();
+            sink.endBatch();            // every tick, quiet or not, so time-based flushes in the sinks stay on time
+            tick++;
+            return fired;
+        }
+
+        /* Wheel links, periods and due times, plus the signal columns. */
+        long bytes() { return ids.length * (4L * Integer.BYTES + 2L * Long.BYTES) + signals.bytes(); }
+
+        /* Generates one model's batch, in firing order, and hands it on. */
+        private void emit(int m, int n) {
+            int[] bi = batchIdx[m];
+            long[] bt = batchT[m];
+            double[] bv = batchV[m];
+            signals.fill(m, bi, bt, n, bv);
+            byte[] fault = signals.fault;
+            for (int k = 0; k < n; k++) {
+                int d = bi[k];
+                table.record(first + d, bt[k], bv[k], fault[d]);    // same row the RNG just advanced
+            }
+            if (link == null) {
+                for (int k = 0; k < n; k++) sink.accept(ids[bi[k]], bt[k], bv[k]);
+            } else {
+                for (int k = 0; k < n; k++) link.offer(bi[k], bt[k], bv[k]);
+            }
+        }
+
+        private void growBatch(int m) {
+            batchIdx[m] = Arrays.copyOf(batchIdx[m], batchIdx[m].length * 2);
+            batchT[m] = Arrays.copyOf(batchT[m], batchT[m].length * 2);
+            batchV[m] = Arrays.copyOf(batchV[m], batchV[m].length * 2);
+        }
+
+        private void recordJitter(long lateNanos) {
+            synchronized (jitterLock) {
+                jitterTicks++;
+                jitterSum += lateNanos;
+                jitterSquares += (lateNanos / 1000) * (lateNanos / 1000);
+                if (lateNanos > jitterMax) jitterMax = lateNanos;
+                behind = lateNanos;
+            }
+        }
+
+        long[] drainJitter() {
+            synchronized (jitterLock) {
+                long[] r = { jitterTicks, jitterSum, jitterMax, jitterSquares, behind };
+                jitterTicks = jitterSum = jitterMax = jitterSquares = 0;
+                return r;
+            }
+        }
+    }
+}
+
+/* --------------------- Activity Log Pipeline --------------------- */
+/**
+ * Bounded multi-producer ring of log records. Records keep the timestamp as a
+ * long and the message unformatted (text + kind + value); the text is only
+ * built when a line is actually painted. A full ring drops instead of blocking.
+ */
+class LogRing {
+    static final byte TEXT = 0, TEMP = 1, MOTION = 2;
+
+    private final long[] time;
+    private final String[] text;
+    private final byte[] kind;
+    private final double[] value;
+    private final AtomicLongArray ready;     // per-slot sequence (Vyukov bounded queue)
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final int mask;
+    private long head;                       // consumer (EDT) only
+
+    LogRing(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        time = new long[cap];
+        text = new String[cap];
+        kind = new byte[cap];
+        value = new double[cap];
+        ready = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) ready.set(i, i);
+        mask = cap - 1;
+    }
+
+    boolean offer(long t, String msg, byte k, double v) {
+        long pos;
+        int i;
+        for (;;) {
+            pos = tail.get();
+            i = (int) (pos & mask);
+            long r = ready.get(i);
+            if (r == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (r < pos) {
+                dropped.increment();
+                return false;
+            }
+        }
+        time[i] = t;
+        text[i] = msg;
+        kind[i] = k;
+        value[i] = v;
+        ready.lazySet(i, pos + 1);
+        return true;
+    }
+
+    int drainTo(LogStore store, int limit) {
+        int n = 0;
+        while (n < limit) {
+            int i = (int) (head & mask);
+            if (ready.get(i) != head + 1) break;
+            store.add(time[i], text[i], kind[i], value[i]);
+            text[i] = null;
+            ready.lazySet(i, head + mask + 1);
+            head++;
+            n++;
+        }
+        return n;
+    }
+
+    long dropped() { return dropped.sum(); }
+}
+
+/** EDT-only history of log records; keeps the newest {@code capacity} lines and formats them on demand. */
+class LogStore {
+    private final long[] time;
+    private final String[] text;
+    private final byte[] kind;
+    private final double[] value;
+    private long count;
+
+    private long stampSecond = Long.MIN_VALUE;
+    private String stamp = "";
+
+    LogStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        time = new long[capacity];
+        text = new String[capacity];
+        kind = new byte[capacity];
+        value = new double[capacity];
+    }
+
+    void add(long t, String msg, byte k, double v) {
+        int i = (int) (count % time.length);
+        time[i] = t;
+        text[i] = msg;
+        kind[i] = k;
+        value[i] = v;
+        count++;
+    }
+
+    int size() { return (int) Math.min(count, time.length); }
+
+    void clear() {
+        Arrays.fill(text, null);
+        count = 0;
+    }
+
+    /** Line {@code index} of the retained history, 0 being the oldest. */
+    String line(int index) {
+        int i = (int) ((count - size() + index) % time.length);
+        return "[" + stamp(time[i]) + "] " + body(text[i], kind[i], value[i]);
+    }
+
+    static String body(String msg, byte k, double v) {
+        switch (k) {
+            case LogRing.TEMP:   return msg + " → " + String.format("%.2f °C", v);
+            case LogRing.MOTION: return msg + " → " + (v >= 0.5 ? "DETECTED" : "NONE");
+            default:             return msg;
+        }
+    }
+
+    private String stamp(long millis) {
+        long sec = Math.floorDiv(millis, 1000);
+        if (sec != stampSecond) {
+            stampSecond = sec;
+            java.time.LocalTime lt = java.time.LocalTime.ofInstant(java.time.Instant.ofEpochSecond(sec), java.time.ZoneId.systemDefault());
+            stamp = String.format("%02d:%02d:%02d", lt.getHour(), lt.getMinute(), lt.getSecond());
+        }
+        return stamp;
+    }
+}
+
+/** Log viewer that only formats and paints the lines inside the visible rectangle. */
+class LogView extends JComponent implements Scrollable {
+    static final int FPS = 30;
+    static final int MAX_PER_FRAME = 1 << 16;
+
+    private final LogStore store;
+    private final Font font = new Font("Consolas", Font.PLAIN, 13);
+    private int lineH = 17, ascent = 13;
+
+    LogView(LogStore store) {
+        this.store = store;
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setFont(font);
+    }
+
+    @Override public void addNotify() {
+        super.addNotify();
+        FontMetrics fm = getFontMetrics(font);
+        lineH = fm.getHeight();
+        ascent = fm.getAscent();
+    }
+
+    /** Call after new lines were added: grows the view and keeps following the tail if it was already there. */
+    void refresh() {
+        Rectangle vr = getVisibleRect();
+        boolean follow = vr.height == 0 || vr.y + vr.height >= getHeight() - lineH;
+        revalidate();
+        if (follow) {
+            int h = Math.max(1, store.size()) * lineH;
+            scrollRectToVisible(new Rectangle(0, h - lineH, 1, lineH));
+        }
+        repaint();
+    }
+
+    @Override public Dimension getPreferredSize() {
+        return new Dimension(200, Math.max(1, store.size()) * lineH + 4);
+    }
+
+    @Override protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int size = store.size();
+        int first = Math.max(0, clip.y / lineH);
+        int last = Math.min(size - 1, (clip.y + clip.height) / lineH);
+        g.setFont(font);
+        g.setColor(Color.BLACK);
+        for (int i = first; i <= last; i++) g.drawString(store.line(i), 4, i * lineH + ascent);
+    }
+
+    @Override public Dimension getPreferredScrollableViewportSize() { return new Dimension(200, 160); }
+    @Override public int getScrollableUnitIncrement(Rectangle r, int orientation, int direction) { return lineH; }
+    @Override public int getScrollableBlockIncrement(Rectangle r, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? Math.max(lineH, r.height - lineH) : r.width;
+    }
+    @Override public boolean getScrollableTracksViewportWidth() { return true; }
+    @Override public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
+
+/* --------------------- Telemetry Store --------------------- */
+/**
+ * Append-only on-disk history. Every device encodes its samples into a small in-memory
+ * chunk (Gorilla-style: delta-of-delta timestamps, XOR-compressed temperatures, run-length
+ * motion edges); a full chunk is appended as one record to the current memory-mapped
+ * segment. Segments roll by size or age and are deleted once they fall out of the
+ * retention window or the size budget.
+ *
+ * Segment layout: 16-byte header (magic, version, created millis), then records of
+ * [len:int][device:int][type:byte][pad:3][count:int][timeBits:int][valueBits:int]
+ * [firstT:long][lastT:long][time words][value words], terminated by len == 0.
+ * <p>
+ * Queries go through a block index kept in memory: every device lists its records with
+ * their time span and a count/min/max/sum summary, rebuilt from the segments on open.
+ * {@link #range}, {@link #downsample} and {@link #latest} binary-search that list, so a
+ * query decodes only the records it overlaps, and a downsample bucket that covers a whole
+ * record takes its summary without decoding at all. Each device's timestamps are expected
+ * to be in order.
+ */
+class TelemetryStore implements SampleSink, Closeable {
+    static final int MAGIC = 0x494F5453;     // "IOTS"
+    static final short VERSION = 1;
+    static final int SEGMENT_HEADER = 16, RECORD_HEADER = 40;
+    static final int TIME_WORDS = 16, VALUE_WORDS = 64;
+    static final long CHUNK_MAX_AGE_MS = 60_000;
+    /* block index entry: segment << 32 | offset, time span, then the value summary */
+    static final int AT = 0, FIRST = 1, LAST = 2, COUNT = 3, MIN = 4, MAX = 5, SUM = 6, BLOCK = 7;
+
+    private final java.nio.file.Path dir;
+    private final long segmentBytes, segmentAgeMs, retentionMs, maxBytes;
+    private final LongAdder samples = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    private volatile Chunk[] chunks = new Chunk[64];
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int devices;
+    private java.io.Writer deviceIndex;
+
+    private java.nio.channels.FileChannel channel;
+    private java.nio.MappedByteBuffer segment;
+    private long segmentCreated;
+    private long bytesWritten, records;
+
+    /* mapped segments by number, null once expired; every segment below firstLive is gone */
+    private volatile java.nio.ByteBuffer[] mapped = new java.nio.ByteBuffer[16];
+    private java.nio.file.Path[] paths = new java.nio.file.Path[16];
+    private int segments;
+    private volatile int firstLive;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    TelemetryStore(java.nio.file.Path dir) throws IOException {
+        this(dir, Long.getLong("iot.store.segmentMB", 64) << 20, Long.getLong("iot.store.segmentMinutes", 60) * 60_000,
+             Long.getLong("iot.store.retentionHours", 72) * 3_600_000, Long.getLong("iot.store.maxMB", 4096) << 20);
+    }
+
+    TelemetryStore(java.nio.file.Path dir, long segmentBytes, long segmentAgeMs, long retentionMs, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.max(1 << 16, segmentBytes);
+        this.segmentAgeMs = segmentAgeMs;
+        this.retentionMs = retentionMs;
+        this.maxBytes = maxBytes;
+        java.nio.file.Files.createDirectories(dir);
+
+        java.nio.file.Path idx = dir.resolve("devices.txt");
+        if (java.nio.file.Files.exists(idx)) {
+            for (String line : java.nio.file.Files.readAllLines(idx)) {
+                String[] f = line.split(",", 3);
+                if (f.length == 3) define(Integer.parseInt(f[0]), Integer.parseInt(f[1]), f[2]);
+            }
+        }
+        deviceIndex = java.nio.file.Files.newBufferedWriter(idx, java.nio.charset.StandardCharsets.UTF_8,
+                java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+        for (java.nio.file.Path p : segments()) index(p);
+    }
+
+    /* Maps an existing segment and adds its records to the block index, decoding each once for its summary. */
+    private void index(java.nio.file.Path p) throws IOException {
+        java.nio.MappedByteBuffer b;
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(p, java.nio.file.StandardOpenOption.READ)) {
+            b = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (b.limit() < SEGMENT_HEADER || b.getInt(0) != MAGIC) return;
+        int seg = addSegment(p, b);
+        long[] time = new long[TIME_WORDS], value = new long[VALUE_WORDS];
+        double[] sum = new double[4];     // count, min, max, sum
+        for (int at = SEGMENT_HEADER; at + RECORD_HEADER <= b.limit(); ) {
+            int len = b.getInt(at);
+            if (len <= 0) break;
+            int dev = b.getInt(at + 4);
+            Chunk c = dev < devices ? chunks[dev] : null;
+            if (c != null) {
+                sum[0] = 0;
+                sum[1] = Double.POSITIVE_INFINITY;
+                sum[2] = Double.NEGATIVE_INFINITY;
+                sum[3] = 0;
+                long[] span = { Long.MAX_VALUE, Long.MIN_VALUE };
+                decodeRecord(b, at, time, value, Long.MIN_VALUE, Long.MAX_VALUE, (d, t, v) -> {
+                    sum[0]++;
+                    sum[1] = Math.min(sum[1], v);
+                    sum[2] = Math.max(sum[2], v);
+                    sum[3] += v;
+                    span[0] = Math.min(span[0], t);
+                    span[1] = Math.max(span[1], t);
+                    c.lastT = t;
+                    c.lastV = v;
+                });
+                c.addBlock((long) seg << 32 | at, span[0], span[1], (int) sum[0], sum[1], sum[2], sum[3]);
+            }
+            at += len;
+        }
+    }
+
+    /* Caller holds the store lock or is the constructor. */
+    private int addSegment(java.nio.file.Path p, java.nio.ByteBuffer b) {
+        if (segments == paths.length) {
+            paths = Arrays.copyOf(paths, segments * 2);
+            mapped = Arrays.copyOf(mapped, segments * 2);
+        }
+        paths[segments] = p;
+        mapped[segments] = b;
+        return segments++;
+    }
+
+    /** Returns the id for {@code name}, registering it on first use. */
+    synchronized int register(String name, int type) throws IOException {
+        Integer known = ids.get(name);
+        if (known != null) return known;
+        int id = devices;
+        define(id, type, name);
+        deviceIndex.write(id + "," + type + "," + name + "\n");
+        return id;
+    }
+
+    synchronized String nameOf(int device) { return device < devices ? chunks[device].name : null; }
+
+    synchronized int deviceCount() { return devices; }
+
+    private void define(int id, int type, String name) {
+        Chunk[] cs = chunks;
+        if (id >= cs.length) cs = Arrays.copyOf(cs, Math.max(id + 1, cs.length * 2));
+        cs[id] = new Chunk(id, type, name);
+        chunks = cs;
+        ids.put(name, id);
+        devices = Math.max(devices, id + 1);
+    }
+
+    /** Appends one sample. Each device must only be written from one thread at a time. */
+    @Override public void accept(int device, long t, double v) {
+        Chunk c = chunks[device];
+        synchronized (c) {                      // uncontended except against flush()
+            if (c.count > 0 && (!c.fits() || t - c.firstT > CHUNK_MAX_AGE_MS)) seal(c);
+            c.append(t, v);
+        }
+        samples.increment();
+    }
+
+    /** Seals every open chunk and forces the current segment to disk. */
+    void flush() {
+        Chunk[] cs;
+        int n;
+        synchronized (this) { cs = chunks; n = devices; }
+        for (int i = 0; i < n; i++) {
+            Chunk c = cs[i];
+            synchronized (c) { if (c.count > 0) seal(c); }
+        }
+        synchronized (this) {
+            if (segment != null) segment.force();
+            try { deviceIndex.flush(); } catch (IOException e) { throw new java.io.UncheckedIOException(e); }
+        }
+    }
+
+    @Override public void close() throws IOException {
+        flush();
+        synchronized (this) {
+            if (channel != null) channel.close();
+            channel = null;
+            segment = null;
+            deviceIndex.close();
+        }
+    }
+
+    long samples() { return samples.sum(); }
+
+    synchronized long bytesWritten() { return bytesWritten; }
+
+    synchronized long records() { return records; }
+
+    String stats() {
+        long n = samples(), bytes = bytesWritten();
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("%,d samples, %,d records, %.2f MB on disk (%.2f B/sample, %.1fx vs raw), %.2f MB/s, %,.0f samples/s",
+                n, records(), bytes / 1e6, n == 0 ? 0 : bytes / (double) n, bytes == 0 ? 0 : n * 16.0 / bytes,
+                bytes / 1e6 / secs, n / secs);
+    }
+
+    private void seal(Chunk c) {
+        int timeWords = (c.timePos + 63) >>> 6, valueWords = (c.finish() + 63) >>> 6;
+        int len = RECORD_HEADER + (timeWords + valueWords) * 8;
+        long ref;
+        synchronized (this) {
+            try {
+                if (segment == null || segment.remaining() < len + 4
+                        || c.lastT - segmentCreated > segmentAgeMs) roll(c.firstT);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+            int at = segment.position();
+            segment.position(at + 4);
+            segment.putInt(c.device).put((byte) c.type).put((byte) 0).putShort((short) 0);
+            segment.putInt(c.count).putInt(c.timePos).putInt(c.valuePos);
+            segment.putLong(c.firstT).putLong(c.lastT);
+            for (int i = 0; i < timeWords; i++) segment.putLong(c.time[i]);
+            for (int i = 0; i < valueWords; i++) segment.putLong(c.value[i]);
+            segment.putInt(at, len);            // publish the record last
+            bytesWritten += len;
+            records++;
+            ref = (long) (segments - 1) << 32 | at;
+        }
+        c.dropBlocksBefore(firstLive);
+        c.addBlock(ref, c.minT, c.maxT, c.count, c.min, c.max, c.sum);
+        c.reset();
+    }
+
+    private void roll(long now) throws IOException {
+        if (channel != null) {
+            segment.force();
+            channel.close();
+        }
+        segmentCreated = now;
+        java.nio.file.Path file = dir.resolve(String.format("seg-%013d-%06d.iot", now, records % 1_000_000));
+        channel = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.CREATE_NEW,
+                java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE);
+        segment = channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(now);
+        addSegment(file, segment);
+        expire(now, file);
+    }
+
+    /* Deletes the oldest segments beyond the retention window or the size budget. */
+    private void expire(long now, java.nio.file.Path current) throws IOException {
+        List<java.nio.file.Path> segs = segments();
+        long total = (long) segs.size() * segmentBytes;
+        for (java.nio.file.Path p : segs) {
+            if (p.equals(current)) break;
+            if (total <= maxBytes && created(p) >= now - retentionMs) break;
+            java.nio.file.Files.deleteIfExists(p);
+            total -= segmentBytes;
+            for (int i = firstLive; i < segments; i++) {
+                if (!p.equals(paths[i])) continue;
+                mapped[i] = null;
+                paths[i] = null;
+                firstLive = i + 1;          // segments expire oldest first
+            }
+        }
+    }
+
+    List<java.nio.file.Path> segments() throws IOException {
+        List<java.nio.file.Path> segs = new ArrayList<>();
+        try (java.nio.file.DirectoryStream<java.nio.file.Path> ds = java.nio.file.Files.newDirectoryStream(dir, "seg-*.iot")) {
+            for (java.nio.file.Path p : ds) segs.add(p);
+        }
+        Collections.sort(segs);
+        return segs;
+    }
+
+    private static long created(java.nio.file.Path p) {
+        String n = p.getFileName().toString();
+        return Long.parseLong(n.substring(4, 17));
+    }
+
+    /** Earliest timestamp of any sealed record, or Long.MIN_VALUE for an empty store. */
+    long firstTime() {
+        Chunk[] cs;
+        int n;
+        synchronized (this) { cs = chunks; n = devices; }
+        long first = Long.MAX_VALUE;
+        int live = firstLive;
+        for (int i = 0; i < n; i++) {
+            Chunk c = cs[i];
+            synchronized (c) {
+                int k = c.firstBlock(live);
+                if (k < c.blocks) first = Math.min(first, c.index[k * BLOCK + FIRST]);
+            }
+        }
+        return first == Long.MAX_VALUE ? Long.MIN_VALUE : first;
+    }
+
+    /**
+     * Re-emits every sealed sample paced by {@code clock}. Records of different devices
+     * overlap in time, so each segment is decoded whole and sorted by timestamp before it
+     * is played. Stops early (returning false) if the calling thread is interrupted.
+     */
+    boolean replay(SimClock clock, SampleSink sink) throws IOException {
+        long[] time = new long[TIME_WORDS], value = new long[VALUE_WORDS];
+        for (java.nio.file.Path p : segments()) {
+            int[] n = { 0 };
+            long[][] ts = { new long[4096] };
+            double[][] vs = { new double[4096] };
+            int[][] ds = { new int[4096] };
+            scanSegment(p, -1, Long.MIN_VALUE, Long.MAX_VALUE, time, value, (d, t, v) -> {
+                if (n[0] == ts[0].length) {
+                    ts[0] = Arrays.copyOf(ts[0], n[0] * 2);
+                    vs[0] = Arrays.copyOf(vs[0], n[0] * 2);
+                    ds[0] = Arrays.copyOf(ds[0], n[0] * 2);
+                }
+                ts[0][n[0]] = t;
+                vs[0][n[0]] = v;
+                ds[0][n[0]++] = d;
+            });
+            // a segment spans minutes, so (t - min) fits 32 bits and the index rides in the low half
+            long[] t = ts[0], order = new long[n[0]];
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < n[0]; i++) min = Math.min(min, t[i]);
+            for (int i = 0; i < n[0]; i++) order[i] = (t[i] - min) << 32 | i;
+            Arrays.sort(order);
+            for (long key : order) {
+                int i = (int) key;
+                if (!clock.awaitTime(t[i])) return false;
+                sink.accept(ds[0][i], t[i], vs[0][i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes every sealed sample of {@code device} (or of all devices for -1) with a
+     * timestamp in [from, to], in write order.
+     */
+    void scan(int device, long from, long to, SampleSink sink) throws IOException {
+        long[] time = new long[TIME_WORDS], value = new long[VALUE_WORDS];
+        for (java.nio.file.Path p : segments()) {
+            if (created(p) > to) break;
+            scanSegment(p, device, from, to, time, value, sink);
+        }
+    }
+
+    private static void scanSegment(java.nio.file.Path p, int device, long from, long to,
+                                    long[] time, long[] value, SampleSink sink) throws IOException {
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(p, java.nio.file.StandardOpenOption.READ)) {
+            java.nio.MappedByteBuffer b = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (b.getInt(0) != MAGIC) return;
+            int at = SEGMENT_HEADER;
+            while (at + RECORD_HEADER <= b.limit()) {
+                int len = b.getInt(at);
+                if (len <= 0) break;
+                int dev = b.getInt(at + 4);
+                long firstT = b.getLong(at + 24), lastT = b.getLong(at + 32);
+                if ((device < 0 || dev == device) && lastT >= from && firstT <= to) decodeRecord(b, at, time, value, from, to, sink);
+                at += len;
+            }
+        }
+    }
+
+    private static void decodeRecord(java.nio.ByteBuffer b, int at, long[] time, long[] value, long from, long to, SampleSink sink) {
+        int count = b.getInt(at + 12), timeBits = b.getInt(at + 16), valueBits = b.getInt(at + 20);
+        int tw = (timeBits + 63) >>> 6, vw = (valueBits + 63) >>> 6;
+        int pos = at + RECORD_HEADER;
+        for (int i = 0; i < tw; i++, pos += 8) time[i] = b.getLong(pos);
+        for (int i = 0; i < vw; i++, pos += 8) value[i] = b.getLong(pos);
+        Chunk.decode(b.get(at + 8), count, b.getLong(at + 24), time, value, from, to, b.getInt(at + 4), sink);
+    }
+
+    /* ------------ queries ------------ */
+
+    /**
+     * Samples of {@code device} with a timestamp in [from, to], oldest first, including the
+     * ones not sealed yet. Replaces the contents of {@code out} and returns it.
+     */
+    SampleCursor range(int device, long from, long to, SampleCursor out) {
+        out.clear();
+        Scratch s = select(device, from, to);
+        if (s == null) return out;
+        SampleSink add = out::add;
+        java.nio.ByteBuffer[] maps = mapped;
+        for (int k = 0; k < s.blocks; k++) {
+            long ref = s.index[k * BLOCK + AT];
+            java.nio.ByteBuffer b = maps[(int) (ref >>> 32)];
+            if (b != null) decodeRecord(b, (int) ref, s.time, s.value, from, to, add);
+        }
+        if (s.openCount > 0) Chunk.decode(s.openType, s.openCount, s.openFirst, s.openTime, s.openValue, from, to, device, add);
+        return out;
+    }
+
+    /**
+     * Count, min, max and mean of {@code device} over [from, to] in buckets of {@code bucketMs}
+     * starting at {@code from}; empty buckets are left out. A record that falls inside one
+     * bucket contributes its stored summary instead of being decoded. Replaces the contents of
+     * {@code out} and returns it.
+     */
+    BucketCursor downsample(int device, long from, long to, long bucketMs, BucketCursor out) {
+        if (bucketMs <= 0) throw new IllegalArgumentException("bucket must be > 0 ms: " + bucketMs);
+        out.clear(from, bucketMs);
+        Scratch s = select(device, from, to);
+        if (s == null) return out;
+        SampleSink add = (d, t, v) -> out.add(t, v);
+        java.nio.ByteBuffer[] maps = mapped;
+        for (int k = 0; k < s.blocks; k++) {
+            int e = k * BLOCK;
+            long ref = s.index[e + AT], first = s.index[e + FIRST], last = s.index[e + LAST];
+            java.nio.ByteBuffer b = maps[(int) (ref >>> 32)];
+            if (b == null) continue;
+            if (first >= from && last <= to && (first - from) / bucketMs == (last - from) / bucketMs) {
+                out.merge(first, (int) s.index[e + COUNT], Double.longBitsToDouble(s.index[e + MIN]),
+                        Double.longBitsToDouble(s.index[e + MAX]), Double.longBitsToDouble(s.index[e + SUM]));
+            } else {
+                decodeRecord(b, (int) ref, s.time, s.value, from, to, add);
+            }
+        }
+        if (s.openCount > 0) Chunk.decode(s.openType, s.openCount, s.openFirst, s.openTime, s.openValue, from, to, device, add);
+        return out;
+    }
+
+    /**
+     * The newest sample of each device in {@code group} that has one, in group order.
+     * Replaces the contents of {@code out} and returns it.
+     */
+    SampleCursor latest(int[] group, SampleCursor out) {
+        out.clear();
+        Chunk[] cs;
+        int n;
+        synchronized (this) { cs = chunks; n = devices; }
+        for (int d : group) {
+            if (d < 0 || d >= n) continue;
+            Chunk c = cs[d];
+            synchronized (c) {
+                if (c.lastT != Long.MIN_VALUE) out.add(d, c.lastT, c.lastV);
+            }
+        }
+        return out;
+    }
+
+    /*
+     * Copies the index entries of the records overlapping [from, to] and the open chunk,
+     * holding the device lock only for the copy. Returns null for an unknown device.
+     */
+    private Scratch select(int device, long from, long to) {
+        Chunk c;
+        synchronized (this) { c = device >= 0 && device < devices ? chunks[device] : null; }
+        if (c == null) return null;
+        Scratch s = scratch.get();
+        synchronized (c) {
+            int k = Math.max(c.firstBlock(firstLive), c.blockEndingAfter(from)), end = k;
+            while (end < c.blocks && c.index[end * BLOCK + FIRST] <= to) end++;
+            s.blocks = end - k;
+            if (s.index.length < s.blocks * BLOCK) s.index = new long[Math.max(s.blocks * BLOCK, s.index.length * 2)];
+            System.arraycopy(c.index, k * BLOCK, s.index, 0, s.blocks * BLOCK);
+            s.openCount = c.count > 0 && c.maxT >= from && c.minT <= to ? c.copyOpen(s.openTime, s.openValue) : 0;
+            s.openType = c.type;
+            s.openFirst = c.firstT;
+        }
+        return s;
+    }
+
+    /* Per-thread query buffers: selected index entries, a record's words and a copy of the open chunk. */
+    private static final class Scratch {
+        long[] index = new long[64 * BLOCK];
+        final long[] time = new long[TIME_WORDS], value = new long[VALUE_WORDS];
+        final long[] openTime = new long[TIME_WORDS], openValue = new long[VALUE_WORDS];
+        int blocks, openCount, openType;
+        long openFirst;
+    }
+
+    /* One device's open chunk: two bit streams plus the encoder state. */
+    private static final class Chunk {
+        final int device, type;
+        final String name;
+        final long[] time = new long[TIME_WORDS], value = new long[VALUE_WORDS];
+        int count, timePos, valuePos;
+        long firstT, lastT = Long.MIN_VALUE, prevDelta;
+        long prevBits;
+        int leading = -1, trailing;
+        int run;                                // motion: length of the current run
+        long minT, maxT;                        // summary of the open chunk, for its index entry
+        double min, max, sum, lastV;
+        long[] index = new long[16 * BLOCK];    // sealed records, oldest first
+        int blocks;
+
+        Chunk(int device, int type, String name) {
+            this.device = device;
+            this.type = type;
+            this.name = name;
+        }
+
+        /* Room for the worst-case encoding of one more sample (and the motion run terminator). */
+        boolean fits() {
+            return timePos + 68 <= TIME_WORDS * 64 && valuePos + (type == FleetEngine.MOTION ? 126 : 77) <= VALUE_WORDS * 64;
+        }
+
+        void append(long t, double v) {
+            double stored = type == FleetEngine.MOTION ? (v >= 0.5 ? 1 : 0) : v;
+            if (count == 0) {
+                minT = maxT = t;
+                min = max = sum = stored;
+            } else {
+                minT = Math.min(minT, t);
+                maxT = Math.max(maxT, t);
+                min = Math.min(min, stored);
+                max = Math.max(max, stored);
+                sum += stored;
+            }
+            lastV = stored;
+            if (count == 0) {
+                firstT = t;
+                prevDelta = 0;
+                if (type == FleetEngine.MOTION) {
+                    valuePos = Bits.put(value, valuePos, v >= 0.5 ? 1 : 0, 1);
+                    prevBits = v >= 0.5 ? 1 : 0;
+                    run = 1;
+                } else {
+                    prevBits = Double.doubleToRawLongBits(v);
+                    valuePos = Bits.put(value, valuePos, prevBits, 64);
+                    leading = -1;
+                }
+            } else {
+                long delta = t - lastT;
+                timePos = putDod(delta - prevDelta);
+                prevDelta = delta;
+                if (type == FleetEngine.MOTION) appendMotion(v >= 0.5 ? 1 : 0);
+                else appendXor(Double.doubleToRawLongBits(v));
+            }
+            lastT = t;
+            count++;
+        }
+
+        private int putDod(long dod) {
+            if (dod == 0) return Bits.put(time, timePos, 0, 1);
+            if (dod >= -63 && dod <= 64) return Bits.put(time, Bits.put(time, timePos, 0b10, 2), dod + 63, 7);
+            if (dod >= -255 && dod <= 256) return Bits.put(time, Bits.put(time, timePos, 0b110, 3), dod + 255, 9);
+            if (dod >= -2047 && dod <= 2048) return Bits.put(time, Bits.put(time, timePos, 0b1110, 4), dod + 2047, 12);
+            return Bits.put(time, Bits.put(time, timePos, 0b1111, 4), dod, 64);
+        }
+
+        private void appendXor(long bits) {
+            long xor = bits ^ prevBits;
+            prevBits = bits;
+            if (xor == 0) {
+                valuePos = Bits.put(value, valuePos, 0, 1);
+                return;
+            }
+            int lz = Math.min(31, Long.numberOfLeadingZeros(xor)), tz = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && lz >= leading && tz >= trailing) {
+                valuePos = Bits.put(value, valuePos, 0b10, 2);
+                valuePos = Bits.put(value, valuePos, xor >>> trailing, 64 - leading - trailing);
+            } else {
+                int sig = 64 - lz - tz;
+                valuePos = Bits.put(value, valuePos, 0b11, 2);
+                valuePos = Bits.put(value, valuePos, lz, 5);
+                valuePos = Bits.put(value, valuePos, sig & 63, 6);     // 64 is stored as 0
+                valuePos = Bits.put(value, valuePos, xor >>> tz, sig);
+                leading = lz;
+                trailing = tz;
+            }
+        }
+
+        /* Edge-only motion: only the length of each constant run is written, as an Elias-gamma code. */
+        private void appendMotion(long bit) {
+            if (bit == prevBits) { run++; return; }
+            valuePos = Bits.gamma(value, valuePos, run);
+            prevBits = bit;
+            run = 1;
+        }
+
+        /** Terminates the value stream and returns its length in bits. */
+        int finish() {
+            if (type == FleetEngine.MOTION && run > 0) {
+                valuePos = Bits.gamma(value, valuePos, run);
+                run = 0;
+            }
+            return valuePos;
+        }
+
+        void addBlock(long ref, long first, long last, int n, double lo, double hi, double total) {
+            if ((blocks + 1) * BLOCK > index.length) index = Arrays.copyOf(index, index.length * 2);
+            int e = blocks++ * BLOCK;
+            index[e + AT] = ref;
+            index[e + FIRST] = first;
+            index[e + LAST] = last;
+            index[e + COUNT] = n;
+            index[e + MIN] = Double.doubleToRawLongBits(lo);
+            index[e + MAX] = Double.doubleToRawLongBits(hi);
+            index[e + SUM] = Double.doubleToRawLongBits(total);
+        }
+
+        /* First block still in a live segment; expired ones are always a prefix. */
+        int firstBlock(int live) {
+            int lo = 0, hi = blocks;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if ((int) (index[mid * BLOCK + AT] >>> 32) < live) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        void dropBlocksBefore(int live) {
+            int k = blocks > 0 && (int) (index[AT] >>> 32) < live ? firstBlock(live) : 0;
+            if (k == 0) return;
+            System.arraycopy(index, k * BLOCK, index, 0, (blocks - k) * BLOCK);
+            blocks -= k;
+        }
+
+        /* First block whose last timestamp is >= t. */
+        int blockEndingAfter(long t) {
+            int lo = 0, hi = blocks;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (index[mid * BLOCK + LAST] < t) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        /* Copies the open chunk's streams, terminated as finish() would, and returns its sample count. */
+        int copyOpen(long[] t, long[] v) {
+            System.arraycopy(time, 0, t, 0, TIME_WORDS);
+            System.arraycopy(value, 0, v, 0, VALUE_WORDS);
+            if (type == FleetEngine.MOTION && run > 0) Bits.gamma(v, valuePos, run);
+            return count;
+        }
+
+        void reset() {
+            Arrays.fill(time, 0, Math.min(TIME_WORDS, (timePos + 63) >>> 6), 0);
+            Arrays.fill(value, 0, Math.min(VALUE_WORDS, (valuePos + 63) >>> 6), 0);
+            count = timePos = valuePos = 0;
+            leading = -1;
+            run = 0;
+        }
+
+        static void decode(int type, int count, long firstT, long[] time, long[] value,
+                           long from, long to, int device, SampleSink sink) {
+            int tp = 0, vp = 0;
+            long t = firstT, delta = 0;
+            long bits = 0, runLeft = 0;
+            int leading = 0, trailing = 0;
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    long dod;
+                    if (Bits.get(time, tp++, 1) == 0) dod = 0;
+                    else if (Bits.get(time, tp++, 1) == 0) { dod = Bits.get(time, tp, 7) - 63; tp += 7; }
+                    else if (Bits.get(time, tp++, 1) == 0) { dod = Bits.get(time, tp, 9) - 255; tp += 9; }
+                    else if (Bits.get(time, tp++, 1) == 0) { dod = Bits.get(time, tp, 12) - 2047; tp += 12; }
+                    else { dod = Bits.get(time, tp, 64); tp += 64; }
+                    delta += dod;
+                    t += delta;
+                }
+
+                double v;
+                if (type == FleetEngine.MOTION) {
+                    if (i == 0) { bits = Bits.get(value, vp++, 1); }
+                    else if (runLeft == 0) bits ^= 1;
+                    if (runLeft == 0) {
+                        int z = 0;
+                        while (Bits.get(value, vp++, 1) == 0) z++;
+                        runLeft = (1L << z) | (z == 0 ? 0 : Bits.get(value, vp, z));
+                        vp += z;
+                    }
+                    runLeft--;
+                    v = bits;
+                } else {
+                    if (i == 0) { bits = Bits.get(value, vp, 64); vp += 64; }
+                    else if (Bits.get(value, vp++, 1) == 1) {
+                        if (Bits.get(value, vp++, 1) == 1) {
+                            leading = (int) Bits.get(value, vp, 5);
+                            int sig = (int) Bits.get(value, vp + 5, 6);
+                            if (sig == 0) sig = 64;
+                            trailing = 64 - leading - sig;
+                            vp += 11;
+                        }
+                        int sig = 64 - leading - trailing;
+                        bits ^= Bits.get(value, vp, sig) << trailing;
+                        vp += sig;
+                    }
+                    v = Double.longBitsToDouble(bits);
+                }
+                if (t >= from && t <= to) sink.accept(device, t, v);
+            }
+        }
+    }
+}
+
+/**
+ * Result of a {@link TelemetryStore#range} or {@link TelemetryStore#latest} query as
+ * parallel primitive columns. Iterate with {@link #next()} or index directly; a cursor is
+ * meant to be reused across queries, which refill it in place.
+ */
+final class SampleCursor {
+    private int[] device = new int[256];
+    private long[] time = new long[256];
+    private double[] value = new double[256];
+    private int size, pos = -1;
+
+    void clear() { size = 0; pos = -1; }
+
+    void add(int d, long t, double v) {
+        if (size == time.length) {
+            device = Arrays.copyOf(device, size * 2);
+            time = Arrays.copyOf(time, size * 2);
+            value = Arrays.copyOf(value, size * 2);
+        }
+        device[size] = d;
+        time[size] = t;
+        value[size++] = v;
+    }
+
+    int size() { return size; }
+
+    boolean next() { return ++pos < size; }
+
+    int device() { return device[pos]; }
+    long time() { return time[pos]; }
+    double value() { return value[pos]; }
+
+    int deviceAt(int i) { return device[i]; }
+    long timeAt(int i) { return time[i]; }
+    double valueAt(int i) { return value[i]; }
+
+    long[] times() { return Arrays.copyOf(time, size); }
+    double[] values() { return Arrays.copyOf(value, size); }
+}
+
+/** Result of {@link TelemetryStore#downsample}: one row per non-empty bucket, oldest first. */
+final class BucketCursor {
+    private long[] start = new long[256];
+    private int[] count = new int[256];
+    private double[] min = new double[256], max = new double[256], sum = new double[256];
+    private int size, pos = -1;
+    private long from, width;
+
+    void clear(long from, long width) {
+        this.from = from;
+        this.width = width;
+        size = 0;
+        pos = -1;
+    }
+
+    void add(long t, double v) {
+        int b = bucket(t);
+        count[b]++;
+        min[b] = Math.min(min[b], v);
+        max[b] = Math.max(max[b], v);
+        sum[b] += v;
+    }
+
+    void merge(long t, int n, double lo, double hi, double total) {
+        int b = bucket(t);
+        count[b] += n;
+        min[b] = Math.min(min[b], lo);
+        max[b] = Math.max(max[b], hi);
+        sum[b] += total;
+    }
+
+    /* Row for t's bucket; samples arrive in time order, so it is the last row or a new one. */
+    private int bucket(long t) {
+        long s = from + Math.floorDiv(t - from, width) * width;
+        int b = size - 1;
+        while (b >= 0 && start[b] > s) b--;
+        if (b >= 0 && start[b] == s) return b;
+        if (size == start.length) {
+            start = Arrays.copyOf(start, size * 2);
+            count = Arrays.copyOf(count, size * 2);
+            min = Arrays.copyOf(min, size * 2);
+            max = Arrays.copyOf(max, size * 2);
+            sum = Arrays.copyOf(sum, size * 2);
+        }
+        b++;
+        System.arraycopy(start, b, start, b + 1, size - b);
+        System.arraycopy(count, b, count, b + 1, size - b);
+        System.arraycopy(min, b, min, b + 1, size - b);
+        System.arraycopy(max, b, max, b + 1, size - b);
+        System.arraycopy(sum, b, sum, b + 1, size - b);
+        start[b] = s;
+        count[b] = 0;
+        min[b] = Double.POSITIVE_INFINITY;
+        max[b] = Double.NEGATIVE_INFINITY;
+        sum[b] = 0;
+        size++;
+        return b;
+    }
+
+    int size() { return size; }
+
+    boolean next() { return ++pos < size; }
+
+    long start() { return start[pos]; }
+    int count() { return count[pos]; }
+    double min() { return min[pos]; }
+    double max() { return max[pos]; }
+    /** Mean value; for motion sensors the fraction of samples that saw motion. */
+    double mean() { return sum[pos] / count[pos]; }
+}
+
+/** MSB-first bit packing into long[] words. */
+final class Bits {
+    private Bits() {}
+
+    static int put(long[] w, int pos, long v, int n) {
+        if (n == 0) return pos;
+        if (n < 64) v &= (1L << n) - 1;
+        int idx = pos >>> 6, free = 64 - (pos & 63);
+        if (n <= free) {
+            w[idx] |= v << (free - n);
+        } else {
+            w[idx] |= v >>> (n - free);
+            w[idx + 1] |= v << (64 - (n - free));
+        }
+        return pos + n;
+    }
+
+    static long get(long[] w, int pos, int n) {
+        if (n == 0) return 0;
+        int idx = pos >>> 6, avail = 64 - (pos & 63);
+        long mask = n == 64 ? -1L : (1L << n) - 1;
+        if (n <= avail) return (w[idx] >>> (avail - n)) & mask;
+        int rem = n - avail;
+        long hi = avail == 64 ? w[idx] : w[idx] & ((1L << avail) - 1);
+        return ((hi << rem) | (w[idx + 1] >>> (64 - rem))) & mask;
+    }
+
+    /** Elias-gamma code of {@code n >= 1}. */
+    static int gamma(long[] w, int pos, long n) {
+        int z = 63 - Long.numberOfLeadingZeros(n);
+        pos += z;                                  // z zero bits (words are pre-zeroed)
+        return put(w, pos, n, z + 1);
+    }
+}
+
+/* --------------------- Simulation Clock & Replay --------------------- */
+/**
+ * Virtual simulation time in epoch millis. It starts at {@code origin} and runs at
+ * {@code speed} x wall time; speed 0 is "as fast as possible", where time only moves
+ * when a driver advances it through {@link #awaitTime}.
+ */
+class SimClock {
+    private final long origin, wallStart = System.nanoTime();
+    private final double speed;
+    private volatile long manual;
+
+    SimClock(long origin, double speed) {
+        this.origin = origin;
+        this.speed = Math.max(0, speed);
+        this.manual = origin;
+    }
+
+    /** Real-time clock starting now. */
+    static SimClock wall() { return new SimClock(System.currentTimeMillis(), 1); }
+
+    /** "1", "10x", "1000" or "max". */
+    static double parseSpeed(String s) {
+        s = s.trim().toLowerCase(Locale.ROOT);
+        if (s.equals("max") || s.equals("asap")) return 0;
+        if (s.endsWith("x")) s = s.substring(0, s.length() - 1);
+        return Double.parseDouble(s);
+    }
+
+    double speed() { return speed; }
+
+    long now() {
+        if (speed == 0) return manual;
+        return origin + (long) ((System.nanoTime() - wallStart) / 1e6 * speed);
+    }
+
+    /** Waits until virtual time reaches {@code t}. Returns false if interrupted while waiting. */
+    boolean awaitTime(long t) {
+        if (speed == 0) {
+            if (t > manual) manual = t;
+            return !Thread.currentThread().isInterrupted();
+        }
+        long target = wallStart + (long) ((t - origin) / speed * 1e6);
+        for (long now = System.nanoTime(); now < target; now = System.nanoTime()) {
+            LockSupport.parkNanos(target - now);
+            if (Thread.currentThread().isInterrupted()) return false;
+        }
+        return true;
+    }
+}
+
+/**
+ * Merges per-device sample streams in timestamp order and pushes them through a sink,
+ * paced by a {@link SimClock}. Streams are either recorded (arrays loaded from a store)
+ * or generated from a seed, so both kinds of run can be repeated exactly.
+ */
+class ReplayDriver implements Runnable {
+    abstract static class Stream {
+        final int device;
+        long t;
+        double v;
+
+        Stream(int device) { this.device = device; }
+
+        /** Moves to the next sample; false when the stream is exhausted. */
+        abstract boolean advance();
+    }
+
+    static Stream recorded(int device, long[] ts, double[] vs, int n) {
+        return new Stream(device) {
+            private int i;
+            @Override boolean advance() {
+                if (i >= n) return false;
+                t = ts[i];
+                v = vs[i++];
+                return true;
+            }
+        };
+    }
+
+    static Generated generated(int device, long seed, long start, long periodMs) {
+        return new Generated(device, seed, start, periodMs);
+    }
+
+    /** One device's signal at a fixed period; its position can be checkpointed and resumed exactly. */
+    static final class Generated extends Stream {
+        static final int BYTES = Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES + Double.BYTES + SignalBank.STATE_BYTES;
+
+        private final SignalBank bank;
+        private final long periodMs;
+        private final int[] idx = { 0 };
+        private final long[] ts = new long[1];
+        private final double[] out = new double[1];
+        private long next;
+        private boolean held;                 // a restored sample that was drawn but not yet delivered
+
+        Generated(int device, long seed, long start, long periodMs) {
+            super(device);
+            bank = SignalBank.of(new int[] { device }, seed, new double[] { periodMs / 1000.0 }, true);
+            this.periodMs = periodMs;
+            next = start;
+        }
+
+        @Override boolean advance() {
+            if (held) {
+                held = false;
+                return true;
+            }
+            t = ts[0] = next;
+            bank.fill(idx, ts, 1, out);
+            v = out[0];
+            next += periodMs;
+            return true;
+        }
+
+        /** Time of the sample the stream delivers next. */
+        long nextTime() { return held ? t : next; }
+
+        /*
+         * Once a driver has started, t/v (a nonzero epoch time) is the sample drawn but not yet
+         * delivered when it stopped, so it is saved as held and comes first after a restore.
+         */
+        void save(Checkpoint.Out o) {
+            o.putInt(device).putLong(periodMs).putLong(next).putInt(t != 0 ? 1 : 0).putInt(0).putLong(t).putDouble(v);
+            bank.save(0, o);
+        }
+
+        static Generated load(Checkpoint.In in) {
+            int device = in.getInt();
+            long periodMs = in.getLong(), next = in.getLong();
+            boolean drawn = in.getInt() != 0;
+            in.getInt();
+            Generated g = new Generated(device, 0, next, periodMs);
+            g.t = in.getLong();
+            g.v = in.getDouble();
+            g.held = drawn;
+            g.bank.load(0, in);
+            return g;
+        }
+    }
+
+    private final SimClock clock;
+    private final SampleSink sink;
+    private final Stream[] streams;
+    private final LongAdder samples = new LongAdder();
+    private volatile boolean finished;
+
+    ReplayDriver(SimClock clock, SampleSink sink, Stream... streams) {
+        this.clock = clock;
+        this.sink = sink;
+        this.streams = streams;
+    }
+
+    long samples() { return samples.sum(); }
+
+    boolean finished() { return finished; }
+
+    @Override public void run() {
+        boolean[] live = new boolean[streams.length];
+        for (int i = 0; i < streams.length; i++) live[i] = streams[i].advance();
+        while (true) {
+            int pick = -1;
+            for (int i = 0; i < streams.length; i++) {
+                if (live[i] && (pick < 0 || streams[i].t < streams[pick].t)) pick = i;
+            }
+            if (pick < 0) break;
+            if (clock.speed() > 0 && clock.now() < streams[pick].t) sink.endBatch();
+            if (!clock.awaitTime(streams[pick].t)) break;
+            Stream s = streams[pick];
+            sink.accept(s.device, s.t, s.v);
+            samples.increment();
+            live[pick] = s.advance();
+        }
+        sink.endBatch();
+        finished = true;
+    }
+}
+
+/* --------------------- Ingest Server --------------------- */
+/**
+ * Loopback telemetry ingest over non-blocking NIO. All connections read into one shared
+ * direct buffer and frames are decoded in place with absolute gets, so nothing is
+ * allocated per message; a connection only gets a small carry buffer of its own once a
+ * frame straddles two reads. Frame layout (big-endian):
+ * <pre>
+ *   0  u16  frame length = 16 + 16 * n
+ *   2  u8   version (1)
+ *   3  u8   n, samples in this frame (1..255)
+ *   4  i32  device id
+ *   8  i64  sender System.nanoTime() when the frame was opened
+ *  16  n x { i64 timestamp (epoch ms), f64 value }
+ * </pre>
+ * Latency is receive time minus the sender stamp, so it is only meaningful on one host.
+ */
+final class IngestServer implements Closeable, Runnable {
+    static final int VERSION = 1, HEADER = 16, SAMPLE = 16, MAX_BATCH = 255, BUFFER = 1 << 16;
+    static final int MAX_FRAME = HEADER + MAX_BATCH * SAMPLE, BACKLOG = 4096;
+
+    private final Selector selector = Selector.open();
+    private final ServerSocketChannel server = ServerSocketChannel.open();
+    private final SampleSink sink;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER);
+    private final LatencyHistogram latency;
+    private final Thread loop;
+    private volatile boolean running = true;
+    // written by the selector thread only
+    private volatile long frames, samples, bytes, rejected, refused;
+    private volatile int connections;
+    private final SelectionKey acceptKey;
+    private long acceptResume;
+    private long frameSent;
+
+    IngestServer(int port, SampleSink sink) throws IOException {
+        this(port, sink, new LatencyHistogram());
+    }
+
+    IngestServer(int port, SampleSink sink, LatencyHistogram latency) throws IOException {
+        this.sink = sink;
+        this.latency = latency;
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.configureBlocking(false);
+        acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+        loop = new Thread(this, "ingest-" + port());
+        loop.setDaemon(true);
+    }
+
+    IngestServer start() {
+        loop.start();
+        return this;
+    }
+
+    InetSocketAddress address() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int port() { return address().getPort(); }
+
+    long frames() { return frames; }
+
+    long samples() { return samples; }
+
+    long bytes() { return bytes; }
+
+    long rejected() { return rejected; }
+
+    /** Connections that could not be accepted, typically for lack of file descriptors. */
+    long refused() { return refused; }
+
+    int connections() { return connections; }
+
+    LatencyHistogram latency() { return latency; }
+
+    /** Sender stamp of the frame being delivered; only meaningful inside the sink's callbacks. */
+    long frameSent() { return frameSent; }
+
+    @Override public void run() {
+        while (running) {
+            try {
+                selector.select(acceptResume != 0 ? 50 : 0);
+                if (acceptResume != 0 && System.nanoTime() >= acceptResume) {
+                    acceptResume = 0;
+                    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) read(key);
+                }
+            } catch (IOException e) {
+                if (running) System.err.println("[ingest] " + e);
+            }
+        }
+    }
+
+    /* Out of descriptors the listen key would stay ready and spin, so accepting backs off for 50 ms. */
+    private void accept() {
+        try {
+            SocketChannel ch;
+            while ((ch = server.accept()) != null) {
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ch.register(selector, SelectionKey.OP_READ);
+                connections++;
+            }
+        } catch (IOException e) {
+            refused++;
+            acceptKey.interestOps(0);
+            acceptResume = System.nanoTime() + 50_000_000L;
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel ch = (SocketChannel) key.channel();
+        ByteBuffer carry = (ByteBuffer) key.attachment();
+        in.clear();
+        if (carry != null && carry.position() > 0) {
+            carry.flip();
+            in.put(carry);
+            carry.clear();
+        }
+        try {
+            int n = ch.read(in);
+            if (n < 0) {
+                drop(key);
+                return;
+            }
+            bytes += n;
+            in.flip();
+            boolean ok = decode(in);
+            if (ok && in.hasRemaining()) {
+                if (carry == null) key.attach(carry = ByteBuffer.allocateDirect(MAX_FRAME));
+                carry.put(in);
+            }
+            if (!ok) {
+                rejected++;
+                drop(key);
+            }
+        } catch (IOException e) {
+            drop(key);
+        }
+    }
+
+    /* Delivers every complete frame in the buffer; false on a malformed frame. */
+    private boolean decode(ByteBuffer b) {
+        while (b.remaining() >= HEADER) {
+            int p = b.position();
+            int len = b.getShort(p) & 0xFFFF, n = b.get(p + 3) & 0xFF;
+            if (b.get(p + 2) != VERSION || n == 0 || len != HEADER + n * SAMPLE) return false;
+            if (b.remaining() < len) break;
+            int device = b.getInt(p + 4);
+            long sent = b.getLong(p + 8);
+            latency.record(System.nanoTime() - sent);
+            frameSent = sent;
+            for (int q = p + HEADER, end = p + len; q < end; q += SAMPLE) {
+                sink.accept(device, b.getLong(q), b.getDouble(q + 8));
+            }
+            frames++;
+            samples += n;
+            b.position(p + len);
+        }
+        sink.endBatch();
+        return true;
+    }
+
+    private void drop(SelectionKey key) {
+        key.cancel();
+        try { key.channel().close(); } catch (IOException ignored) {}
+        connections--;
+    }
+
+    @Override public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) key.channel().close();
+        selector.close();
+    }
+}
+
+/**
+ * Blocking device-side connection. Consecutive samples of one device share a frame;
+ * the buffer goes out when it fills or when the producer signals {@link #endBatch()}.
+ * Not thread-safe: use one client per producer thread.
+ */
+final class IngestClient implements SampleSink, Closeable {
+    private final SocketChannel ch;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(IngestServer.BUFFER);
+    private int frameAt = -1, frameDevice;
+
+    IngestClient(InetSocketAddress server) throws IOException {
+        ch = SocketChannel.open(server);
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+    @Override public void accept(int device, long t, double v) {
+        if (frameAt >= 0 && frameDevice == device && (out.get(frameAt + 3) & 0xFF) < IngestServer.MAX_BATCH
+                && out.remaining() >= IngestServer.SAMPLE) {
+            out.put(frameAt + 3, (byte) ((out.get(frameAt + 3) & 0xFF) + 1));
+            out.putShort(frameAt, (short) ((out.getShort(frameAt) & 0xFFFF) + IngestServer.SAMPLE));
+        } else {
+            if (out.remaining() < IngestServer.HEADER + IngestServer.SAMPLE) endBatch();
+            frameAt = out.position();
+            frameDevice = device;
+            out.putShort((short) (IngestServer.HEADER + IngestServer.SAMPLE))
+               .put((byte) IngestServer.VERSION).put((byte) 1)
+               .putInt(device).putLong(System.nanoTime());
+        }
+        out.putLong(t).putDouble(v);
+    }
+
+    @Override public void endBatch() {
+        if (out.position() == 0) return;
+        out.flip();
+        try {
+            while (out.hasRemaining()) ch.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            out.clear();
+            frameAt = -1;
+        }
+    }
+
+    @Override public void close() throws IOException {
+        try {
+            endBatch();
+        } catch (UncheckedIOException ignored) {
+        } finally {
+            ch.close();
+        }
+    }
+}
+
+/**
+ * Log-linear latency histogram: 16 sub-buckets per power of two, so any percentile is
+ * within ~6% of the true value. Recording is one increment; {@link #drain()} snapshots
+ * and resets for interval reporting.
+ */
+final class LatencyHistogram {
+    private static final int SUB = 4, BUCKETS = (64 - SUB + 1) << SUB;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(0, nanos)));
+    }
+
+    static int index(long v) {
+        if (v < (1 << SUB)) return (int) v;
+        int octave = 63 - Long.numberOfLeadingZeros(v);
+        return ((octave - SUB + 1) << SUB) | (int) ((v >>> (octave - SUB)) & ((1 << SUB) - 1));
+    }
+
+    /* Upper edge of a bucket. */
+    static long value(int index) {
+        int octave = (index >>> SUB) + SUB - 1, sub = index & ((1 << SUB) - 1);
+        if (octave < SUB) return index;
+        return ((long) ((1 << SUB) | sub) << (octave - SUB)) + (1L << (octave - SUB)) - 1;
+    }
+
+    Snapshot drain() {
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) c[i] = counts.getAndSet(i, 0);
+        return new Snapshot(c);
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+            long n = 0;
+            for (long c : counts) n += c;
+            count = n;
+        }
+
+        /** Value at quantile {@code q} (0..1) in nanoseconds, 0 when empty. */
+        long percentile(double q) {
+            long rank = (long) Math.ceil(q * count), seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) return value(i);
+            }
+            return 0;
+        }
+
+        long max() { return percentile(1); }
+
+        static Snapshot merge(Snapshot[] parts) {
+            long[] c = new long[BUCKETS];
+            for (Snapshot p : parts) {
+                if (p == null) continue;
+                for (int i = 0; i < p.counts.length; i++) c[i] += p.counts[i];
+            }
+            return new Snapshot(c);
+        }
+
+        /** Approximate total in nanoseconds, taking each bucket at its upper edge. */
+        double sum() {
+            double s = 0;
+            for (int i = 0; i < counts.length; i++) if (counts[i] > 0) s += counts[i] * (double) value(i);
+            return s;
+        }
+    }
+}
+
+/* --------------------- Load Generator --------------------- */
+/**
+ * Client mode: every simulated device owns a TCP connection to an ingest endpoint and
+ * sends one frame per sample at its configured rate. A run ramps devices online
+ * linearly, holds steady, then multiplies every device's send rate for a spike, and
+ * reports achieved send rate, reconnects and the latency of each socket write.
+ * <p>
+ * On a runtime with virtual threads each device is a virtual thread running a plain
+ * blocking loop. Otherwise the devices are multiplexed over the FleetEngine's
+ * timing-wheel shards, still with one connection per device. The shards never block
+ * there: channels are non-blocking, one selector thread finishes connects and drains
+ * partial writes. A device holds up to {@value DeviceLink#PENDING_FRAMES} frames while it
+ * connects or while its socket is full, and skips and counts samples beyond that, so a
+ * slow gateway shows up as skips and failures rather than as a stalled shard.
+ */
+final class LoadGenerator implements SampleSink {
+    private final int devices, rampSecs, steadySecs, spikeSecs, spikeFactor;
+    private final long seed;
+    private final InetSocketAddress target;
+    private final DeviceLink[] links;
+    private final LongAdder sent = new LongAdder(), reconnects = new LongAdder(), failures = new LongAdder(), skipped = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private Selector selector;                           // multiplexed mode only
+    private final ConcurrentLinkedQueue<DeviceLink> registrations = new ConcurrentLinkedQueue<>();
+
+    LoadGenerator(InetSocketAddress target, int devices, int rampSecs, int steadySecs, int spikeSecs, int spikeFactor, long seed) {
+        this.target = target;
+        this.devices = devices;
+        this.rampSecs = rampSecs;
+        this.steadySecs = steadySecs;
+        this.spikeSecs = spikeSecs;
+        this.spikeFactor = Math.max(1, spikeFactor);
+        this.seed = seed;
+        links = new DeviceLink[devices];
+        for (int d = 0; d < devices; d++) links[d] = new DeviceLink(d);
+    }
+
+    /** {@code Thread.ofVirtual().factory()} on Java 21+, null on older runtimes. */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    double elapsed() { return (System.nanoTime() - startNanos) / 1e9; }
+
+    String phase() {
+        double t = elapsed();
+        if (t < rampSecs) return "ramp";
+        if (t >= rampSecs + steadySecs && t < rampSecs + steadySecs + spikeSecs) return "spike";
+        return "steady";
+    }
+
+    /* During the ramp, device d comes online once its share of the ramp has elapsed. */
+    private boolean online(int device) {
+        double t = elapsed();
+        return t >= rampSecs || device < devices * t / rampSecs;
+    }
+
+    private int burst() { return phase().equals("spike") ? spikeFactor : 1; }
+
+    /* Multiplexed mode: called by the fleet shards at each device's sample time. */
+    @Override public void accept(int device, long t, double v) {
+        if (!online(device)) return;
+        DeviceLink link = links[device];
+        for (int i = burst(); i > 0; i--) link.offer(t, v);
+    }
+
+    /* Multiplexed mode: completes connects and flushes what the shards could not write at once. */
+    private void select() {
+        try {
+            while (running) {
+                selector.select(100);
+                for (DeviceLink link; (link = registrations.poll()) != null; ) link.register();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid()) ((DeviceLink) key.attachment()).ready(key);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[load] selector failed: " + e);
+        }
+    }
+
+    /* Virtual-thread mode: one blocking loop per device. */
+    private void runDevice(int device) {
+        SplittableRandom rnd = FleetEngine.deviceRandom(seed, device);
+        int type = FleetEngine.typeOf(device);
+        long period = type == FleetEngine.TEMP ? FleetEngine.TEMP_PERIOD_MS : FleetEngine.MOTION_PERIOD_MS;
+        try {
+            Thread.sleep(rnd.nextLong(period));
+            while (running) {
+                if (online(device)) {
+                    long now = System.currentTimeMillis();
+                    double v = FleetEngine.sample(rnd, type);
+                    for (int i = burst(); i > 0; i--) links[device].send(now, v);
+                }
+                Thread.sleep(period);
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            links[device].close();
+        }
+    }
+
+    /** One device's connection; reconnects lazily on the next send after a failure. */
+    private final class DeviceLink {
+        private static final int PENDING_FRAMES = 16;      // multiplexed mode: frames held while the socket is full
+
+        private final int device;
+        private final ByteBuffer frame = ByteBuffer.allocate(IngestServer.HEADER + IngestServer.SAMPLE);
+        private SocketChannel ch;
+        private boolean everConnected, open;                // open: connect finished (multiplexed mode)
+        private ByteBuffer pending;                         // multiplexed mode, in write mode: frames not yet on the socket
+        private long written;                               // multiplexed mode: bytes on this connection, to count whole frames
+
+        DeviceLink(int device) { this.device = device; }
+
+        /* Multiplexed mode, on a shard thread: never blocks. */
+        synchronized void offer(long t, double v) {
+            try {
+                if (ch == null) {
+                    if (pending == null) pending = ByteBuffer.allocate(PENDING_FRAMES * frame.capacity());
+                    pending.clear();                        // a partial frame must not reach the new connection
+                    written = 0;
+                    ch = SocketChannel.open();
+                    ch.configureBlocking(false);
+                    ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    open = ch.connect(target);
+                    if (open) opened();
+                    else {
+                        registrations.add(this);
+                        selector.wakeup();
+                    }
+                }
+                if (pending.position() + frame.capacity() > pending.capacity()) {
+                    skipped.increment();
+                    return;
+                }
+                encode(t, v);
+                long t0 = System.nanoTime();
+                if (open && pending.position() == 0) wrote(ch.write(frame));
+                if (frame.hasRemaining()) {                 // held until connected, or until the socket is writable again
+                    boolean idle = pending.position() == 0;
+                    pending.put(frame);
+                    if (idle && open) {
+                        registrations.add(this);
+                        selector.wakeup();
+                    }
+                }
+                sendLatency.record(System.nanoTime() - t0);
+            } catch (IOException e) {
+                failures.increment();
+                close();
+            }
+        }
+
+        /* Counts the frames that n more bytes completed. */
+        private void wrote(int n) {
+            int f = frame.capacity();
+            sent.add((written + n) / f - written / f);
+            written += n;
+        }
+
+        private void opened() {
+            connected.incrementAndGet();
+            if (everConnected) reconnects.increment();
+            everConnected = true;
+        }
+
+        /* Selector thread: starts watching for connect completion or writability. */
+        synchronized void register() {
+            if (ch == null) return;
+            try {
+                ch.register(selector, open ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                failures.increment();
+                close();
+            }
+        }
+
+        /* Selector thread. */
+        synchronized void ready(SelectionKey key) {
+            if (key.channel() != ch) return;                // closed, and maybe reopened, since the select
+            try {
+                if (key.isConnectable()) {
+                    if (!ch.finishConnect()) return;
+                    open = true;
+                    opened();
+                    key.interestOps(pending.position() > 0 ? SelectionKey.OP_WRITE : 0);
+                    if (pending.position() == 0) return;
+                }
+                if (open) {
+                    pending.flip();
+                    wrote(ch.write(pending));
+                    pending.compact();
+                    if (pending.position() == 0) key.interestOps(0);
+                }
+            } catch (IOException e) {
+                failures.increment();
+                close();
+            }
+        }
+
+        private void encode(long t, double v) {
+            frame.clear();
+            frame.putShort((short) frame.capacity()).put((byte) IngestServer.VERSION).put((byte) 1)
+                 .putInt(device).putLong(System.nanoTime()).putLong(t).putDouble(v).flip();
+        }
+
+        synchronized void send(long t, double v) {
+            try {
+                if (ch == null) {
+                    ch = SocketChannel.open(target);
+                    ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    connected.incrementAndGet();
+                    if (everConnected) reconnects.increment();
+                    everConnected = true;
+                }
+                encode(t, v);
+                long t0 = System.nanoTime();
+                while (frame.hasRemaining()) ch.write(frame);
+                sendLatency.record(System.nanoTime() - t0);
+                sent.increment();
+            } catch (IOException e) {
+                failures.increment();
+                close();
+            }
+        }
+
+        synchronized void close() {
+            if (ch == null) return;
+            try { ch.close(); } catch (IOException ignored) {}
+            ch = null;
+            if (pending != null && pending.position() > 0) {   // frames that never fully reached the socket
+                skipped.add((pending.position() + frame.capacity() - 1) / frame.capacity());
+                pending.clear();
+            }
+            if (selector == null || open) connected.decrementAndGet();
+            open = false;
+        }
+    }
+
+    static void runHeadless(String[] args) {
+        int devices = 50_000, ramp = 10, steady = 20, spike = 5, factor = 5;
+        long seed = new SplittableRandom().nextLong();
+        String targetArg = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--target":       targetArg = args[++i]; break;
+                case "--ramp":         ramp = Integer.parseInt(args[++i]); break;
+                case "--steady":       steady = Integer.parseInt(args[++i]); break;
+                case "--spike":        spike = Integer.parseInt(args[++i]); break;
+                case "--spike-factor": factor = Integer.parseInt(args[++i]); break;
+                case "--seed":         seed = Long.parseLong(args[++i]); break;
+                default:               devices = Integer.parseInt(args[i]);
+            }
+        }
+
+        // without --target, a local ingest server stands in for the gateway
+        IngestServer server = null;
+        InetSocketAddress target;
+        try {
+            if (targetArg != null) {
+                int colon = targetArg.lastIndexOf(':');
+                target = new InetSocketAddress(targetArg.substring(0, colon), Integer.parseInt(targetArg.substring(colon + 1)));
+            } else {
+                server = new IngestServer(0, (d, t, v) -> {}).start();
+                target = server.address();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[load] bad target: " + e);
+            return;
+        }
+
+        LoadGenerator gen = new LoadGenerator(target, devices, ramp, steady, spike, factor, seed);
+        ThreadFactory virtual = virtualThreadFactory();
+        List<Thread> threads = new ArrayList<>();
+        FleetEngine engine = null;
+        Thread selecting = null;
+        if (virtual != null) {
+            for (int d = 0; d < devices; d++) {
+                int device = d;
+                Thread th = virtual.newThread(() -> gen.runDevice(device));
+                threads.add(th);
+                th.start();
+            }
+        } else {
+            try {
+                gen.selector = Selector.open();
+            } catch (IOException e) {
+                System.err.println("[load] cannot open selector: " + e);
+                return;
+            }
+            selecting = new Thread(gen::select, "load-selector");
+            selecting.setDaemon(true);
+            selecting.start();
+            engine = new FleetEngine(devices, Runtime.getRuntime().availableProcessors(), 1, seed, 1, System.currentTimeMillis(), gen);
+            engine.start();
+        }
+        System.out.printf("[load] %,d devices -> %s, %s, ramp %ds / steady %ds / spike %ds at %dx%n", devices, target,
+                virtual != null ? "one virtual thread each" : "no virtual threads on Java " + Runtime.version().feature()
+                        + ": multiplexed over " + engine.shardCount() + " shard(s)", ramp, steady, spike, factor);
+
+        long prevSent = 0, prevFrames = 0;
+        for (int s = 1; s <= ramp + steady + spike + steady; s++) {
+            try { Thread.sleep(1000); } catch (InterruptedException e) { break; }
+            long now = gen.sent.sum();
+            LatencyHistogram.Snapshot lat = gen.sendLatency.drain();
+            System.out.printf("[load] t=%3ds %-6s %,7d online %,9d msg/s  reconnects %,d  failures %,d  skipped %,d  send p50 %.3f ms  p99 %.3f ms  max %.3f ms%n",
+                    s, gen.phase(), gen.connected.get(), now - prevSent, gen.reconnects.sum(), gen.failures.sum(), gen.skipped.sum(),
+                    lat.percentile(0.5) / 1e6, lat.percentile(0.99) / 1e6, lat.max() / 1e6);
+            if (server != null) {
+                long frames = server.frames();
+                LatencyHistogram.Snapshot in = server.latency().drain();
+                System.out.printf("[ingest]              %,7d conns %,9d msg/s  ingest p99 %.3f ms  refused %,d%n",
+                        server.connections(), frames - prevFrames, in.percentile(0.99) / 1e6, server.refused());
+                prevFrames = frames;
+            }
+            prevSent = now;
+        }
+
+        gen.running = false;
+        if (engine != null) engine.stop();
+        for (Thread th : threads) th.interrupt();
+        if (selecting != null) {
+            gen.selector.wakeup();
+            try { selecting.join(); } catch (InterruptedException ignored) {}
+        }
+        for (DeviceLink link : gen.links) link.close();
+        if (gen.selector != null) {
+            try { gen.selector.close(); } catch (IOException ignored) {}
+        }
+        System.out.printf("[load] done: %,d frames sent, %.0f msg/s average, %,d reconnects, %,d failures, %,d skipped (connecting, backed up or disconnected)%n",
+                gen.sent.sum(), gen.sent.sum() / gen.elapsed(), gen.reconnects.sum(), gen.failures.sum(), gen.skipped.sum());
+        if (server != null) {
+            try { server.close(); } catch (IOException ignored) {}
+        }
+    }
+}
+
+/* --------------------- Metrics --------------------- */
+/**
+ * Counters, gauges and latency histograms for the sample pipeline. Histograms roll once
+ * a second on their own thread and quantiles cover the last {@value #WINDOW} complete
+ * seconds, so sparse events (a sample every 2 s, the odd GC) stay visible. The
+ * same registry is published three ways: as a JMX DynamicMBean, as Prometheus text
+ * on a loopback HTTP endpoint, and through {@link #value} for the dashboard panel.
+ */
+final class Metrics implements javax.management.DynamicMBean, Closeable {
+    static final String OBJECT_NAME = "iot.simulator:type=Metrics";
+    static final int WINDOW = 10;
+
+    private static final class Summary {
+        final String family, label, help;
+        final LatencyHistogram histogram;
+        final LatencyHistogram.Snapshot[] seconds = new LatencyHistogram.Snapshot[WINDOW];
+        int second;
+        volatile LatencyHistogram.Snapshot last = new LatencyHistogram.Snapshot(new long[0]);
+        volatile long total;
+        volatile double sumSeconds;
+
+        Summary(String family, String label, String help, LatencyHistogram histogram) {
+            this.family = family;
+            this.label = label;
+            this.help = help;
+            this.histogram = histogram;
+        }
+    }
+
+    private static final class Gauge {
+        final String name, help;
+        final boolean counter;
+        final java.util.function.DoubleSupplier value;
+
+        Gauge(String name, String help, boolean counter, java.util.function.DoubleSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.counter = counter;
+            this.value = value;
+        }
+    }
+
+    private final List<Summary> summaries = new CopyOnWriteArrayList<>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+    private final Map<String, java.util.function.DoubleSupplier> values = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metrics");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<Runnable> cleanup = new ArrayList<>();
+    private com.sun.net.httpserver.HttpServer http;
+
+    Metrics() {
+        timer.scheduleAtFixedRate(this::roll, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /** A per-stage latency summary, exported as {@code family{stage="label"}}. */
+    LatencyHistogram summary(String family, String label, String help) {
+        return summary(family, label, help, new LatencyHistogram());
+    }
+
+    /** Publishes a histogram owned elsewhere (the ingest server keeps its own). */
+    LatencyHistogram summary(String family, String label, String help, LatencyHistogram h) {
+        Summary s = new Summary(family, label, help, h);
+        summaries.add(s);
+        String key = family + (label == null ? "" : "_" + label);
+        values.put(key + "_p50_ms", () -> s.last.percentile(0.5) / 1e6);
+        values.put(key + "_p99_ms", () -> s.last.percentile(0.99) / 1e6);
+        values.put(key + "_max_ms", () -> s.last.max() / 1e6);
+        values.put(key + "_count", () -> s.total);
+        values.put(key + "_window_count", () -> s.last.count);
+        return h;
+    }
+
+    void gauge(String name, String help, java.util.function.DoubleSupplier value) {
+        gauges.add(new Gauge(name, help, false, value));
+        values.put(name, value);
+    }
+
+    void counter(String name, String help, java.util.function.LongSupplier total) {
+        gauges.add(new Gauge(name, help, true, total::getAsLong));
+        values.put(name, total::getAsLong);
+    }
+
+    /** Per-second rate of a running total, sampled at each roll. */
+    void rate(String name, String help, java.util.function.LongSupplier total) {
+        long[] prev = { total.getAsLong() };
+        double[] rate = { 0 };
+        timer.scheduleAtFixedRate(() -> {
+            long now = total.getAsLong();
+            rate[0] = now - prev[0];
+            prev[0] = now;
+        }, 1, 1, TimeUnit.SECONDS);
+        gauge(name, help, () -> rate[0]);
+    }
+
+    void every(long millis, Runnable task) {
+        timer.scheduleAtFixedRate(task, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Current value of a gauge, counter or summary statistic such as {@code iot_latency_seconds_paint_p99_ms}. */
+    double value(String name) {
+        java.util.function.DoubleSupplier v = values.get(name);
+        return v == null ? Double.NaN : v.getAsDouble();
+    }
+
+    private void roll() {
+        for (Summary s : summaries) {
+            LatencyHistogram.Snapshot snap = s.histogram.drain();
+            s.seconds[s.second++ % WINDOW] = snap;
+            s.last = LatencyHistogram.Snapshot.merge(s.seconds);
+            s.total += snap.count;
+            s.sumSeconds += snap.sum() / 1e9;
+        }
+    }
+
+    /** GC pause durations from the collectors' end-of-collection notifications. */
+    void watchGc(LatencyHistogram pauses) {
+        for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof javax.management.NotificationEmitter) || gc.getName().contains("Concurrent")) continue;
+            javax.management.NotificationEmitter emitter = (javax.management.NotificationEmitter) gc;
+            javax.management.NotificationListener l = (n, handback) -> {
+                if (!com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+                com.sun.management.GarbageCollectionNotificationInfo info = com.sun.management.GarbageCollectionNotificationInfo
+                        .from((javax.management.openmbean.CompositeData) n.getUserData());
+                pauses.record(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration()));
+            };
+            emitter.addNotificationListener(l, null, null);
+            cleanup.add(() -> {
+                try { emitter.removeNotificationListener(l); } catch (javax.management.ListenerNotFoundException ignored) {}
+            });
+        }
+        counter("iot_gc_collection_ms_total", "Accumulated collection time reported by all collectors.", () -> {
+            long ms = 0;
+            for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+                ms += Math.max(0, gc.getCollectionTime());
+            }
+            return ms;
+        });
+    }
+
+    /** Registers the MBean; a stale registration from an earlier dashboard is replaced. */
+    void registerJmx() throws javax.management.JMException {
+        javax.management.MBeanServer mbs = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+        javax.management.ObjectName name = new javax.management.ObjectName(OBJECT_NAME);
+        if (mbs.isRegistered(name)) mbs.unregisterMBean(name);
+        mbs.registerMBean(this, name);
+        cleanup.add(() -> {
+            try { mbs.unregisterMBean(name); } catch (javax.management.JMException ignored) {}
+        });
+    }
+
+    /** Serves {@code /metrics} in Prometheus text format on the loopback interface; returns the bound port. */
+    int serveHttp(int port) throws IOException {
+        http = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", ex -> {
+            byte[] body = prometheus().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, body.length);
+            try (java.io.OutputStream out = ex.getResponseBody()) { out.write(body); }
+        });
+        http.start();
+        return http.getAddress().getPort();
+    }
+
+    String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        Set<String> described = new HashSet<>();
+        for (Summary s : summaries) {
+            if (described.add(s.family)) {
+                sb.append("# HELP ").append(s.family).append(' ').append(s.help).append('\n');
+                sb.append("# TYPE ").append(s.family).append(" summary\n");
+            }
+            String labels = s.label == null ? "" : "stage=\"" + s.label + "\"";
+            LatencyHistogram.Snapshot snap = s.last;
+            for (double q : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                sb.append(s.family).append('{').append(labels).append(labels.isEmpty() ? "" : ",")
+                  .append("quantile=\"").append(q).append("\"} ").append(snap.percentile(q) / 1e9).append('\n');
+            }
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(s.family).append("_sum").append(suffix).append(' ').append(s.sumSeconds).append('\n');
+            sb.append(s.family).append("_count").append(suffix).append(' ').append(s.total).append('\n');
+        }
+        for (Gauge g : gauges) {
+            sb.append("# HELP ").append(g.name).append(' ').append(g.help).append('\n');
+            sb.append("# TYPE ").append(g.name).append(g.counter ? " counter\n" : " gauge\n");
+            sb.append(g.name).append(' ').append(g.value.getAsDouble()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override public void close() {
+        timer.shutdownNow();
+        if (http != null) http.stop(0);
+        for (Runnable r : cleanup) r.run();
+        cleanup.clear();
+    }
+
+    /* ---- DynamicMBean: every value() name is a read-only Double attribute ---- */
+
+    @Override public Object getAttribute(String attribute) throws javax.management.AttributeNotFoundException {
+        java.util.function.DoubleSupplier v = values.get(attribute);
+        if (v == null) throw new javax.management.AttributeNotFoundException(attribute);
+        return v.getAsDouble();
+    }
+
+    @Override public void setAttribute(javax.management.Attribute attribute) throws javax.management.AttributeNotFoundException {
+        throw new javax.management.AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override public javax.management.AttributeList getAttributes(String[] attributes) {
+        javax.management.AttributeList list = new javax.management.AttributeList();
+        for (String a : attributes) {
+            java.util.function.DoubleSupplier v = values.get(a);
+            if (v != null) list.add(new javax.management.Attribute(a, v.getAsDouble()));
+        }
+        return list;
+    }
+
+    @Override public javax.management.AttributeList setAttributes(javax.management.AttributeList attributes) {
+        return new javax.management.AttributeList();
+    }
+
+    @Override public Object invoke(String action, Object[] params, String[] signature) throws javax.management.ReflectionException {
+        throw new javax.management.ReflectionException(new NoSuchMethodException(action));
+    }
+
+    @Override public javax.management.MBeanInfo getMBeanInfo() {
+        List<String> names = new ArrayList<>(values.keySet());
+        Collections.sort(names);
+        javax.management.MBeanAttributeInfo[] attrs = new javax.management.MBeanAttributeInfo[names.size()];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = new javax.management.MBeanAttributeInfo(names.get(i), "java.lang.Double", names.get(i), true, false, false);
+        }
+        return new javax.management.MBeanInfo(Metrics.class.getName(), "IoT simulator pipeline metrics", attrs, null, null, null);
+    }
+}
+
+/* --------------------- Windowed Aggregation --------------------- */
+/** Merged statistics of one window, filled in place by {@link WindowAggregator#read}. */
+final class Aggregate {
+    long count, active;
+    double sum, min, max;
+    final int[] bins = new int[WindowAggregator.BINS];
+    boolean sketched;
+    private double lo, width;
+
+    void clear(double lo, double width) {
+        count = active = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        Arrays.fill(bins, 0);
+        sketched = false;
+        this.lo = lo;
+        this.width = width;
+    }
+
+    double mean() { return count == 0 ? Double.NaN : sum / count; }
+
+    /** Share of samples at or above 0.5, i.e. the fraction of time a motion sensor reported activity. */
+    double dutyCycle() { return count == 0 ? Double.NaN : (double) active / count; }
+
+    /** Approximate quantile from the fixed-range sketch, interpolated within a bin; NaN without one. */
+    double percentile(double q) {
+        if (!sketched || count == 0) return Double.NaN;
+        double rank = Math.max(1, q * count), seen = 0;
+        for (int b = 0; b < bins.length; b++) {
+            if (bins[b] == 0) continue;
+            if (seen + bins[b] >= rank) {
+                double v = lo + (b + (rank - seen) / bins[b]) * width;
+                return Math.max(min, Math.min(max, v));
+            }
+            seen += bins[b];
+        }
+        return max;
+    }
+}
+
+/**
+ * Streaming min/max/mean/count, duty cycle and a percentile sketch per device and per
+ * device group, over 1 s, 1 min and 1 h windows. Each window is a ring of sub-buckets
+ * ({@value #SLOTS} per window span, kept for two spans), so a sample is O(1) and touches
+ * only primitive arrays: sliding reads merge the last {@value #SLOTS} sub-buckets, tumbling
+ * reads the last complete aligned span. Sketches are {@value #BINS} linear bins over a
+ * fixed range and merge by addition; they are kept for groups, and for devices only when
+ * asked, since 100k devices would otherwise carry 100k sketches per sub-bucket.
+ * <p>
+ * Single writer. Readers may run concurrently and then see a sample half-applied.
+ */
+final class WindowAggregator implements SampleSink {
+    static final long[] SPANS = { 1_000L, 60_000L, 3_600_000L };
+    static final int SECOND = 0, MINUTE = 1, HOUR = 2;
+    static final int SLOTS = 5, RING = 2 * SLOTS, BINS = 64;
+
+    private final int devices, keys, sketchFrom;
+    private final int[] groupOf;
+    private final double lo, width;
+    private final Window[] windows = new Window[SPANS.length];
+    private volatile long newest = Long.MIN_VALUE;
+    private long late;
+
+    /**
+     * @param groupOf        group index of each device, or -1; groups become keys {@code devices + g}
+     * @param deviceSketches also keep a percentile sketch for every device
+     * @param lo             lower edge of the sketch range
+     * @param hi             upper edge of the sketch range; values outside land in the edge bins
+     */
+    WindowAggregator(int devices, int[] groupOf, int groups, boolean deviceSketches, double lo, double hi) {
+        this.devices = devices;
+        this.keys = devices + groups;
+        this.groupOf = groupOf;
+        this.sketchFrom = deviceSketches ? 0 : devices;
+        this.lo = lo;
+        this.width = (hi - lo) / BINS;
+        for (int w = 0; w < SPANS.length; w++) windows[w] = new Window(SPANS[w] / SLOTS);
+    }
+
+    /** Devices grouped by sensor type: group 0 is temperature, 1 motion. */
+    static int[] groupByType(int devices) {
+        int[] g = new int[devices];
+        for (int d = 0; d < devices; d++) g[d] = FleetEngine.typeOf(d);
+        return g;
+    }
+
+    int devices() { return devices; }
+
+    /** Timestamp of the newest sample seen, the natural "now" for reads during a replay. */
+    long newest() { return newest; }
+
+    /** Samples older than the kept sub-buckets of some window, and so not counted there. */
+    long late() { return late; }
+
+    /** Every window's sub-buckets and sketches as one checkpoint section. Only while no sample is being added. */
+    Checkpoint.Section section() {
+        Window w0 = windows[0];
+        long size = 16 + 16 + SPANS.length * ((long) keys * Long.BYTES + (long) w0.cells.length * Double.BYTES + (long) w0.sketch.length * Integer.BYTES);
+        return new Checkpoint.Section(Checkpoint.AGGREGATES, size, o -> {
+            o.putInt(keys).putInt(sketchFrom).putInt(SPANS.length).putInt(0).putLong(newest).putLong(late);
+            for (Window w : windows) {
+                o.putLongs(w.lastId, 0, keys).putDoubles(w.cells, 0, w.cells.length).putInts(w.sketch, 0, w.sketch.length);
+            }
+        });
+    }
+
+    /** Takes the windows from a {@link #section}; false, leaving this untouched, when it was written for another shape. */
+    boolean load(Checkpoint.In in) {
+        if (in.getInt() != keys || in.getInt() != sketchFrom || in.getInt() != SPANS.length) return false;
+        in.getInt();
+        newest = in.getLong();
+        late = in.getLong();
+        for (Window w : windows) {
+            in.getLongs(w.lastId, 0, keys);
+            in.getDoubles(w.cells, 0, w.cells.length);
+            in.getInts(w.sketch, 0, w.sketch.length);
+        }
+        return true;
+    }
+
+    @Override public void accept(int device, long t, double v) {
+        if (t > newest) newest = t;
+        int group = groupOf != null && device < groupOf.length ? groupOf[device] : -1;
+        for (Window w : windows) {
+            w.add(device, t, v);
+            if (group >= 0) w.add(devices + group, t, v);
+        }
+    }
+
+    /**
+     * Fills {@code out} for {@code key} (a device, or {@code devices() + group}) over window
+     * {@code span}: the last full span up to {@code now} when sliding, else the last complete
+     * span aligned to its length.
+     */
+    Aggregate read(int key, int span, boolean sliding, long now, Aggregate out) {
+        return windows[span].read(key, sliding, now, out);
+    }
+
+    /* Sub-bucket cells are interleaved (count, active, sum, min, max) so a sample touches one line per window. */
+    private static final int COUNT = 0, ACTIVE = 1, SUM = 2, MIN = 3, MAX = 4, CELL = 5;
+
+    private final class Window {
+        final long slotSpan;
+        final long[] lastId = new long[keys];
+        final double[] cells = new double[keys * RING * CELL];
+        final int[] sketch = new int[(keys - sketchFrom) * RING * BINS];
+
+        Window(long slotSpan) {
+            this.slotSpan = slotSpan;
+            Arrays.fill(lastId, Long.MIN_VALUE / 2);
+        }
+
+        void add(int key, long t, double v) {
+            long id = Math.floorDiv(t, slotSpan), last = lastId[key];
+            if (id > last) {
+                for (long k = Math.max(last + 1, id - RING + 1); k <= id; k++) clear(key, k);
+                lastId[key] = id;
+            } else if (id <= last - RING) {
+                late++;
+                return;
+            }
+            int slot = key * RING + Math.floorMod(id, RING), c = slot * CELL;
+            if (cells[c + COUNT]++ == 0) {
+                cells[c + MIN] = cells[c + MAX] = v;
+            } else {
+                if (v < cells[c + MIN]) cells[c + MIN] = v;
+                if (v > cells[c + MAX]) cells[c + MAX] = v;
+            }
+            cells[c + SUM] += v;
+            if (v >= 0.5) cells[c + ACTIVE]++;
+            if (key >= sketchFrom) {
+                int b = (int) ((v - lo) / width);
+                sketch[(slot - sketchFrom * RING) * BINS + Math.max(0, Math.min(BINS - 1, b))]++;
+            }
+        }
+
+        private void clear(int key, long id) {
+            int slot = key * RING + Math.floorMod(id, RING), c = slot * CELL;
+            cells[c + COUNT] = cells[c + ACTIVE] = cells[c + SUM] = 0;
+            if (key >= sketchFrom) {
+                int s = (slot - sketchFrom * RING) * BINS;
+                Arrays.fill(sketch, s, s + BINS, 0);
+            }
+        }
+
+        Aggregate read(int key, boolean sliding, long now, Aggregate out) {
+            out.clear(lo, width);
+            out.sketched = key >= sketchFrom;
+            long nowId = Math.floorDiv(now, slotSpan), from, to;
+            if (sliding) {
+                from = nowId - SLOTS + 1;
+                to = nowId;
+            } else {
+                from = Math.floorDiv(nowId, SLOTS) * SLOTS - SLOTS;
+                to = from + SLOTS - 1;
+            }
+            long last = lastId[key];
+            from = Math.max(from, last - RING + 1);
+            to = Math.min(to, last);
+            for (long id = from; id <= to; id++) {
+                int slot = key * RING + Math.floorMod(id, RING), c = slot * CELL;
+                if (cells[c + COUNT] == 0) continue;
+                out.count += (long) cells[c + COUNT];
+                out.active += (long) cells[c + ACTIVE];
+                out.sum += cells[c + SUM];
+                out.min = Math.min(out.min, cells[c + MIN]);
+                out.max = Math.max(out.max, cells[c + MAX]);
+                if (out.sketched) {
+                    int s = (slot - sketchFrom * RING) * BINS;
+                    for (int b = 0; b < BINS; b++) out.bins[b] += sketch[s + b];
+                }
+            }
+            return out;
+        }
+    }
+}
+
+/* --------------------- Rules & Alerts --------------------- */
+/** Receives alert transitions from a {@link RuleEngine}, on the thread that feeds it. */
+interface AlertSink {
+    /**
+     * @param subject device id, or zone index for zone rules
+     * @param value   the reading, zone fraction or silence length in ms that tripped the rule
+     * @param raised  false when a raised condition clears
+     */
+    void alert(RuleEngine.Rule rule, int subject, long t, double value, boolean raised);
+}
+
+/**
+ * Threshold, zone-activity and silence rules evaluated inline on the sample path.
+ * <p>
+ * Rules come from a small text format, one per line ({@code #} starts a comment):
+ * <pre>
+ * # name      sensor  condition
+ * hot         temp    > 28 for 3
+ * busy-zone   motion  active > 40% zone 8 within 10s
+ * silent      any     silent 5s
+ * </pre>
+ * Sensor is {@code temp}, {@code motion} or {@code any}; operators are {@code > >= < <= == !=};
+ * durations take {@code ms}, {@code s} or {@code m}. A zone is a run of consecutive device
+ * ids and its fraction counts only devices of the rule's sensor type.
+ * <p>
+ * Each rule compiles to an operator code and a threshold plus per-device primitive state
+ * (run lengths, last-active and last-seen times), so a sample costs a few array updates and
+ * no allocation. Zone decay and silence are found by a sweep over all devices every
+ * {@value #SWEEP_MS} ms of sample time, or on {@link #tick}. Alerts are edge-triggered:
+ * one when a condition starts holding, one when it clears.
+ */
+final class RuleEngine implements SampleSink {
+    static final String DEFAULTS = String.join("\n",
+            "# name        sensor  condition",
+            "hot           temp    > 28 for 3",
+            "busy-zone     motion  active > 40% zone 8 within 10s",
+            "silent        any     silent 5s");
+    static final long SWEEP_MS = 250;
+
+    enum Kind { THRESHOLD, ZONE, SILENCE }
+    static final int ANY = -1;
+    private static final String[] OPS = { ">", ">=", "<", "<=", "==", "!=" };
+
+    /** One parsed rule; its mutable state lives in the engine it is compiled into. */
+    static final class Rule {
+        final String name, text;
+        final Kind kind;
+        final int sensor, op, count, zone;
+        final double limit;
+        final long window;
+
+        Rule(String name, String text, Kind kind, int sensor, int op, double limit, int count, int zone, long window) {
+            this.name = name;
+            this.text = text;
+            this.kind = kind;
+            this.sensor = sensor;
+            this.op = op;
+            this.limit = limit;
+            this.count = count;
+            this.zone = zone;
+            this.window = window;
+        }
+
+        boolean test(double v) {
+            switch (op) {
+                case 0: return v > limit;
+                case 1: return v >= limit;
+                case 2: return v < limit;
+                case 3: return v <= limit;
+                case 4: return v == limit;
+                default: return v != limit;
+            }
+        }
+
+        boolean applies(int device) { return sensor == ANY || FleetEngine.typeOf(device) == sensor; }
+
+        @Override public String toString() { return name + ": " + text; }
+    }
+
+    static List<Rule> load(java.nio.file.Path file) throws IOException {
+        return parse(new String(java.nio.file.Files.readAllBytes(file), java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    static List<Rule> parse(String config) {
+        List<Rule> rules = new ArrayList<>();
+        String[] lines = config.split("\r?\n");
+        for (int n = 0; n < lines.length; n++) {
+            String line = lines[n];
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            String[] w = line.trim().split("\\s+");
+            if (w.length == 1 && w[0].isEmpty()) continue;
+            try {
+                rules.add(parseRule(w));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("rule line " + (n + 1) + ": " + e.getMessage() + " in \"" + lines[n].trim() + "\"", e);
+            }
+        }
+        return rules;
+    }
+
+    private static Rule parseRule(String[] w) {
+        if (w.length < 4) throw new IllegalArgumentException("expected: name sensor condition");
+        int sensor;
+        switch (w[1].toLowerCase(Locale.ROOT)) {
+            case "temp": case "temperature": sensor = FleetEngine.TEMP; break;
+            case "motion": sensor = FleetEngine.MOTION; break;
+            case "any": sensor = ANY; break;
+            default: throw new IllegalArgumentException("unknown sensor " + w[1]);
+        }
+        String text = String.join(" ", Arrays.copyOfRange(w, 1, w.length));
+        if (w[2].equals("silent") && w.length == 4) {
+            return new Rule(w[0], text, Kind.SILENCE, sensor, 0, 0, 0, 0, duration(w[3]));
+        }
+        if (w[2].equals("active") && w.length == 9 && w[5].equals("zone") && w[7].equals("within") && w[4].endsWith("%")) {
+            double pct = Double.parseDouble(w[4].substring(0, w[4].length() - 1)) / 100;
+            int zone = Integer.parseInt(w[6]);
+            if (zone < 1) throw new IllegalArgumentException("zone size must be positive");
+            return new Rule(w[0], text, Kind.ZONE, sensor, op(w[3]), pct, 0, zone, duration(w[8]));
+        }
+        if (w.length == 4 || (w.length == 6 && w[4].equals("for"))) {
+            int count = w.length == 6 ? Integer.parseInt(w[5]) : 1;
+            if (count < 1) throw new IllegalArgumentException("sample count must be positive");
+            return new Rule(w[0], text, Kind.THRESHOLD, sensor, op(w[2]), Double.parseDouble(w[3]), count, 0, 0);
+        }
+        throw new IllegalArgumentException("unrecognised condition");
+    }
+
+    private static int op(String s) {
+        for (int i = 0; i < OPS.length; i++) if (OPS[i].equals(s)) return i;
+        throw new IllegalArgumentException("unknown operator " + s);
+    }
+
+    private static long duration(String s) {
+        s = s.toLowerCase(Locale.ROOT);
+        if (s.endsWith("ms")) return Long.parseLong(s.substring(0, s.length() - 2));
+        if (s.endsWith("s")) return (long) (Double.parseDouble(s.substring(0, s.length() - 1)) * 1000);
+        if (s.endsWith("m")) return (long) (Double.parseDouble(s.substring(0, s.length() - 1)) * 60_000);
+        throw new IllegalArgumentException("duration needs a unit: " + s);
+    }
+
+    private final Rule[] rules;
+    private final int devices;
+    private final AlertSink sink;
+    /* per rule: run lengths (threshold), last active time (zone); firing per device or zone */
+    private final int[][] run;
+    private final long[][] lastActive;
+    private final int[][] zoneActive, zoneSize;
+    private final boolean[][] firing;
+    private final long[] lastSeen;
+    private final long[] raised;
+    private long newest = Long.MIN_VALUE, nextSweep = Long.MIN_VALUE, evaluations;
+
+    RuleEngine(List<Rule> rules, int devices, AlertSink sink) {
+        this.rules = rules.toArray(new Rule[0]);
+        this.devices = devices;
+        this.sink = sink;
+        int n = this.rules.length;
+        run = new int[n][];
+        lastActive = new long[n][];
+        zoneActive = new int[n][];
+        zoneSize = new int[n][];
+        firing = new boolean[n][];
+        raised = new long[n];
+        lastSeen = new long[devices];
+        Arrays.fill(lastSeen, Long.MIN_VALUE);
+        for (int r = 0; r < n; r++) {
+            Rule rule = this.rules[r];
+            if (rule.kind == Kind.ZONE) {
+                int zones = (devices + rule.zone - 1) / rule.zone;
+                lastActive[r] = new long[devices];
+                Arrays.fill(lastActive[r], Long.MIN_VALUE / 2);
+                zoneActive[r] = new int[zones];
+                zoneSize[r] = new int[zones];
+                for (int d = 0; d < devices; d++) if (rule.applies(d)) zoneSize[r][d / rule.zone]++;
+                firing[r] = new boolean[zones];
+            } else {
+                if (rule.kind == Kind.THRESHOLD) run[r] = new int[devices];
+                firing[r] = new boolean[devices];
+            }
+        }
+    }
+
+    Rule[] rules() { return rules; }
+
+    /** Alerts raised so far by rule {@code r}. */
+    synchronized long raised(int r) { return raised[r]; }
+
+    /** Rule checks performed, one per applicable rule per sample. */
+    synchronized long evaluations() { return evaluations; }
+
+    @Override public synchronized void accept(int device, long t, double v) {
+        if (device < 0 || device >= devices) return;
+        if (t > newest) newest = t;
+        if (lastSeen[device] < t) lastSeen[device] = t;
+        for (int r = 0; r < rules.length; r++) {
+            Rule rule = rules[r];
+            if (!rule.applies(device)) continue;
+            evaluations++;
+            switch (rule.kind) {
+                case THRESHOLD: {
+                    int[] runs = run[r];
+                    if (rule.test(v)) {
+                        if (++runs[device] == rule.count && !firing[r][device]) fire(r, device, t, v, true);
+                    } else {
+                        runs[device] = 0;
+                        if (firing[r][device]) fire(r, device, t, v, false);
+                    }
+                    break;
+                }
+                case ZONE: {
+                    if (v < 0.5) break;
+                    long[] last = lastActive[r];
+                    int z = device / rule.zone;
+                    if (last[device] < t - rule.window) {
+                        double f = (double) ++zoneActive[r][z] / zoneSize[r][z];
+                        if (!firing[r][z] && rule.test(f)) fire(r, z, t, f, true);
+                    }
+                    last[device] = Math.max(last[device], t);
+                    break;
+                }
+                case SILENCE:
+                    if (firing[r][device]) fire(r, device, t, 0, false);
+                    break;
+            }
+        }
+        if (t >= nextSweep) sweep(t);
+    }
+
+    /** Runs the time-based checks up to {@code now}, for when no samples arrive at all. */
+    synchronized void tick(long now) {
+        if (now > newest) newest = now;
+        sweep(now);
+    }
+
+    private void sweep(long now) {
+        nextSweep = now + SWEEP_MS;
+        for (int r = 0; r < rules.length; r++) {
+            Rule rule = rules[r];
+            if (rule.kind == Kind.ZONE) {
+                int[] active = zoneActive[r];
+                long[] last = lastActive[r];
+                Arrays.fill(active, 0);
+                for (int d = 0; d < devices; d++) if (last[d] >= now - rule.window) active[d / rule.zone]++;
+                for (int z = 0; z < active.length; z++) {
+                    if (firing[r][z] && !rule.test((double) active[z] / zoneSize[r][z])) {
+                        fire(r, z, now, (double) active[z] / zoneSize[r][z], false);
+                    }
+                }
+            } else if (rule.kind == Kind.SILENCE) {
+                boolean[] silent = firing[r];
+                for (int d = 0; d < devices; d++) {
+                    long seen = lastSeen[d];
+                    if (!silent[d] && seen != Long.MIN_VALUE && now - seen >= rule.window && rule.applies(d)) {
+                        fire(r, d, now, now - seen, true);
+                    }
+                }
+            }
+        }
+    }
+
+    private void fire(int r, int subject, long t, double value, boolean on) {
+        firing[r][subject] = on;
+        if (on) raised[r]++;
+        sink.alert(rules[r], subject, t, value, on);
+    }
+}
+
+/** Most recent alerts, newest first; {@link #add} must run on the EDT. */
+class AlertPanel extends JPanel {
+    static final int MAX = 200;
+    private final DefaultListModel<String> model = new DefaultListModel<>();
+    private final JLabel status = new JLabel("No alerts");
+    private long total, active;
+
+    AlertPanel() {
+        super(new BorderLayout());
+        setOpaque(false);
+        JList<String> list = new JList<>(model);
+        list.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override public Component getListCellRendererComponent(JList<?> l, Object v, int i, boolean sel, boolean focus) {
+                super.getListCellRendererComponent(l, v, i, sel, focus);
+                if (!sel) setForeground(String.valueOf(v).contains("cleared") ? new Color(110,110,110) : new Color(200,40,40));
+                return this;
+            }
+        });
+        status.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        status.setForeground(new Color(110,110,110));
+        status.setBorder(new EmptyBorder(4,6,2,6));
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        add(status, BorderLayout.SOUTH);
+    }
+
+    void add(String line, boolean raised) {
+        if (raised) {
+            total++;
+            active++;
+        } else {
+            active = Math.max(0, active - 1);
+        }
+        model.add(0, line);
+        if (model.size() > MAX) model.removeRange(MAX, model.size() - 1);
+        status.setText(String.format("%,d raised  ·  %,d active", total, active));
+    }
+
+    void clear() {
+        model.clear();
+        total = active = 0;
+        status.setText("No alerts");
+    }
+}
+
+/* --------------------- Device Registry --------------------- */
+/**
+ * Every device seen by the dashboard under a compact id, with its type, online status,
+ * last-seen time and sample stats. Fields live in fixed pages of primitive arrays, so
+ * registering never copies device state and ids stay valid for readers on any thread.
+ * Names are indexed in a sorted concurrent map, which also serves prefix searches.
+ * <p>
+ * {@link #seen} is the per-sample path and expects one writer per device; it only takes
+ * a lock when the status flips. Registrations and status changes bump {@link #version},
+ * which is what list models poll to batch their updates.
+ */
+final class DeviceRegistry {
+    static final byte OFFLINE = 0, ONLINE = 1;
+    private static final int PAGE_BITS = 10, PAGE = 1 << PAGE_BITS, MASK = PAGE - 1;
+
+    private static final class Page {
+        final String[] name = new String[PAGE];
+        final byte[] type = new byte[PAGE], status = new byte[PAGE];
+        final long[] lastSeen = new long[PAGE], samples = new long[PAGE];
+        final double[] last = new double[PAGE];
+    }
+
+    private final ConcurrentSkipListMap<String, Integer> byName = new ConcurrentSkipListMap<>();
+    private volatile Page[] pages = new Page[16];
+    private volatile int size;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger online = new AtomicInteger();
+
+    /** Returns the id of {@code name}, registering it (offline) if it is new. */
+    int register(String name, int type) {
+        Integer id = byName.get(name);
+        if (id != null) return id;
+        synchronized (this) {
+            id = byName.get(name);
+            if (id != null) return id;
+            int n = size;
+            Page[] p = pages;
+            if ((n >> PAGE_BITS) == p.length) p = Arrays.copyOf(p, p.length * 2);
+            if (p[n >> PAGE_BITS] == null) p[n >> PAGE_BITS] = new Page();
+            Page page = p[n >> PAGE_BITS];
+            page.name[n & MASK] = name;
+            page.type[n & MASK] = (byte) type;
+            page.lastSeen[n & MASK] = Long.MIN_VALUE;
+            pages = p;
+            size = n + 1;
+            byName.put(name, n);
+            version.incrementAndGet();
+            return n;
+        }
+    }
+
+    int size() { return size; }
+    int online() { return online.get(); }
+    long version() { return version.get(); }
+
+    /** Id registered for {@code name}, or -1. */
+    int find(String name) {
+        Integer id = byName.get(name);
+        return id == null ? -1 : id;
+    }
+
+    String name(int id) { return page(id).name[id & MASK]; }
+    int type(int id) { return page(id).type[id & MASK]; }
+    byte status(int id) { return page(id).status[id & MASK]; }
+    long lastSeen(int id) { return page(id).lastSeen[id & MASK]; }
+    long samples(int id) { return page(id).samples[id & MASK]; }
+    double last(int id) { return page(id).last[id & MASK]; }
+
+    /** Records a sample from {@code id}, bringing it online. */
+    void seen(int id, long t, double v) {
+        Page p = page(id);
+        int i = id & MASK;
+        p.samples[i]++;
+        p.last[i] = v;
+        if (t > p.lastSeen[i]) p.lastSeen[i] = t;
+        if (p.status[i] != ONLINE) setStatus(p, i, ONLINE);
+    }
+
+    /** Takes offline every online device not seen for {@code timeout} ms before {@code now}. */
+    void sweep(long now, long timeout) {
+        int n = size;
+        for (int id = 0; id < n; id++) {
+            Page p = page(id);
+            int i = id & MASK;
+            if (p.status[i] == ONLINE && now - p.lastSeen[i] > timeout) setStatus(p, i, OFFLINE);
+        }
+    }
+
+    void markAllOffline() {
+        int n = size;
+        for (int id = 0; id < n; id++) {
+            Page p = page(id);
+            if (p.status[id & MASK] == ONLINE) setStatus(p, id & MASK, OFFLINE);
+        }
+    }
+
+    /** Ids in name order, restricted to names starting with {@code prefix}. */
+    void forEachByName(String prefix, java.util.function.IntConsumer action) {
+        Map<String, Integer> view = prefix.isEmpty() ? byName : byName.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        for (Integer id : view.values()) action.accept(id);
+    }
+
+    private synchronized void setStatus(Page p, int i, byte status) {
+        if (p.status[i] == status) return;
+        p.status[i] = status;
+        if (status == ONLINE) online.incrementAndGet(); else online.decrementAndGet();
+        version.incrementAndGet();
+    }
+
+    private Page page(int id) { return pages[id >> PAGE_BITS]; }
+
+    /** Names, types and sample stats of every device; status is not kept, devices come back offline. */
+    Checkpoint.Section section() {
+        int n = size;
+        long bytes = Integer.BYTES;
+        for (int id = 0; id < n; id++) bytes += Checkpoint.sizeOf(name(id)) + Integer.BYTES + 2 * Long.BYTES + Double.BYTES;
+        return new Checkpoint.Section(Checkpoint.REGISTRY, bytes, o -> {
+            o.putInt(n);
+            for (int id = 0; id < n; id++) o.putString(name(id)).putInt(type(id)).putLong(lastSeen(id)).putLong(samples(id)).putDouble(last(id));
+        });
+    }
+
+    /** Registers every device of a {@link #section}, keeping the ids of names already known. */
+    void load(Checkpoint.In in) {
+        for (int k = in.getInt(); k > 0; k--) {
+            String name = in.getString();
+            int id = register(name, in.getInt());
+            Page p = page(id);
+            int i = id & MASK;
+            p.lastSeen[i] = in.getLong();
+            p.samples[i] = in.getLong();
+            p.last[i] = in.getDouble();
+        }
+        version.incrementAndGet();
+    }
+}
+
+/**
+ * Filtered, name-ordered view of a {@link DeviceRegistry} for a JList. Rows are device ids
+ * and labels are built only for the rows being painted, so with a fixed cell height the
+ * list costs the same at 100k devices as at two. Registry changes are picked up by
+ * {@link #refresh()}, which re-applies the filter and fires one event per batch.
+ */
+class DeviceListModel extends AbstractListModel<String> {
+    private final DeviceRegistry registry;
+    private int[] rows = new int[64];
+    private int size;
+    private String prefix = "";
+    private int type = -1, status = -1;
+    private long version = -1;
+
+    DeviceListModel(DeviceRegistry registry) { this.registry = registry; }
+
+    @Override public int getSize() { return size; }
+
+    @Override public String getElementAt(int index) {
+        int id = rows[index];
+        boolean on = registry.status(id) == DeviceRegistry.ONLINE;
+        long n = registry.samples(id);
+        if (n == 0) return registry.name(id) + "  ·  offline";
+        String value = registry.type(id) == FleetEngine.TEMP ? String.format("%.1f °C", registry.last(id))
+                                                              : registry.last(id) >= 0.5 ? "active" : "idle";
+        return String.format("%s  ·  %s  ·  %s  ·  %,d", registry.name(id), on ? "online" : "offline", value, n);
+    }
+
+    int idAt(int index) { return rows[index]; }
+
+    /** @param type a FleetEngine sensor type or -1; @param status a DeviceRegistry status or -1 */
+    void filter(String prefix, int type, int status) {
+        this.prefix = prefix;
+        this.type = type;
+        this.status = status;
+        rebuild();
+    }
+
+    /** Re-applies the filter if the registry changed since the last call; returns whether it did. */
+    boolean refresh() {
+        if (registry.version() == version) return false;
+        rebuild();
+        return true;
+    }
+
+    private void rebuild() {
+        version = registry.version();
+        int old = size;
+        size = 0;
+        registry.forEachByName(prefix, id -> {
+            if (type >= 0 && registry.type(id) != type) return;
+            if (status >= 0 && registry.status(id) != status) return;
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = id;
+        });
+        if (size < old) fireIntervalRemoved(this, size, old - 1);
+        if (size > old) fireIntervalAdded(this, old, size - 1);
+        if (Math.min(size, old) > 0) fireContentsChanged(this, 0, Math.min(size, old) - 1);
+    }
+}
+
+/* --------------------- UI Publication --------------------- */
+/**
+ * Newest (time, value, stamp) per slot, handed from producer threads to the EDT. A write
+ * overwrites the slot under a per-slot sequence number and queues the slot id only if it
+ * was clean, so the EDT's {@link #drain} once per frame sees at most one update per slot
+ * however fast samples arrive. Writes that land on a dirty slot are counted as coalesced.
+ * <p>
+ * One writer per slot; any number of slots may be written concurrently.
+ */
+final class LatestValues {
+    /** Receives one slot's newest value during {@link #drain}. */
+    interface Consumer { void accept(int slot, long t, double value, long stamp); }
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] seq, time, stamp;
+    private final double[] value;
+    private final AtomicIntegerArray dirty;
+    private final AtomicIntegerArray queue;     // slot + 1, 0 when empty
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder coalesced = new LongAdder();
+    private final int mask;
+    private long head, delivered;
+
+    LatestValues(int slots) {
+        seq = new long[slots];
+        time = new long[slots];
+        stamp = new long[slots];
+        value = new double[slots];
+        dirty = new AtomicIntegerArray(slots);
+        int cap = Integer.highestOneBit(Math.max(2, slots) * 2 - 1);
+        queue = new AtomicIntegerArray(cap);
+        mask = cap - 1;
+    }
+
+    void offer(int slot, long t, double v, long sentNanos) {
+        long s = seq[slot];
+        LONGS.setRelease(seq, slot, s + 1);    // odd: write in progress
+        VarHandle.storeStoreFence();
+        time[slot] = t;
+        value[slot] = v;
+        stamp[slot] = sentNanos;
+        LONGS.setRelease(seq, slot, s + 2);
+        if (dirty.get(slot) == 0 && dirty.compareAndSet(slot, 0, 1)) {
+            queue.set((int) (tail.getAndIncrement() & mask), slot + 1);
+        } else {
+            coalesced.increment();
+        }
+    }
+
+    /** EDT: hands every slot written since the last drain to {@code out}; returns how many. */
+    int drain(Consumer out) {
+        int n = 0;
+        for (int cell; (cell = queue.get((int) (head & mask))) != 0; head++, n++) {
+            queue.set((int) (head & mask), 0);
+            int slot = cell - 1;
+            dirty.set(slot, 0);                 // a write from here on queues the slot again
+            long t, st;
+            double v;
+            long s;
+            do {
+                s = (long) LONGS.getAcquire(seq, slot);
+                t = time[slot];
+                v = value[slot];
+                st = stamp[slot];
+                VarHandle.loadLoadFence();
+            } while ((s & 1) != 0 || s != (long) LONGS.getAcquire(seq, slot));
+            out.accept(slot, t, v, st);
+        }
+        delivered += n;
+        return n;
+    }
+
+    /** Writes that replaced a value the EDT had not shown yet. */
+    long coalesced() { return coalesced.sum(); }
+
+    /** Updates handed to the EDT so far. */
+    long delivered() { return delivered; }
+}
+
+/* --------------------- Signal Models --------------------- */
+/**
+ * Generates the next value for a batch of devices. Per-device state lives in the
+ * {@link SignalBank}'s primitive arrays; a model only holds its parameters, so one
+ * instance serves every device of a type.
+ */
+interface SignalModel {
+    /** Fills {@code out[k]} for bank device {@code idx[k]} at virtual time {@code t[k]} (ms), from <= k < to, in order. */
+    void fill(SignalBank bank, int[] idx, long[] t, int from, int to, double[] out);
+
+    /** Sets the starting state of device {@code i}. */
+    default void init(SignalBank bank, int i) {}
+
+    /** Recomputes per-sample coefficients of device {@code i} for a new sample interval. */
+    default void period(SignalBank bank, int i, double seconds) {}
+
+    /** Whether values are a continuous reading (drift faults apply) rather than on/off. */
+    default boolean continuous() { return true; }
+
+    /** First-order autoregressive noise around {@code mean}: reverts with time constant {@code tau}; tau <= 0 is a random walk. */
+    final class Ar1 implements SignalModel {
+        final double mean, tau, sd;
+
+        /** @param sd stationary deviation, or per-sqrt-second step size for a random walk */
+        Ar1(double mean, double tau, double sd) { this.mean = mean; this.tau = tau; this.sd = sd; }
+
+        @Override public void init(SignalBank b, int i) { b.cell[i * SignalBank.CELL + SignalBank.LEVEL] = mean + sd * b.gaussian(i); }
+
+        @Override public void period(SignalBank b, int i, double seconds) {
+            double decay = tau > 0 ? Math.exp(-seconds / tau) : 1;
+            b.cell[i * SignalBank.CELL + SignalBank.A] = decay;
+            b.cell[i * SignalBank.CELL + SignalBank.B] = tau > 0 ? sd * Math.sqrt(1 - decay * decay) : sd * Math.sqrt(seconds);
+        }
+
+        @Override public void fill(SignalBank b, int[] idx, long[] t, int from, int to, double[] out) {
+            double[] cell = b.cell;
+            for (int k = from; k < to; k++) {
+                int i = idx[k], c = i * SignalBank.CELL;
+                double x = mean + cell[c + SignalBank.A] * (cell[c + SignalBank.LEVEL] - mean) + cell[c + SignalBank.B] * b.gaussian(i);
+                cell[c + SignalBank.LEVEL] = x;
+                out[k] = x;
+            }
+        }
+    }
+
+    /** Daily sine peaking at {@code peakHour} (UTC) plus AR(1) noise with a 60 s time constant. */
+    final class Diurnal implements SignalModel {
+        private static final long DAY = 86_400_000L;
+        private static final int TABLE = 4096;
+        private static final double[] SIN = new double[TABLE + 1];
+        static {
+            for (int k = 0; k <= TABLE; k++) SIN[k] = Math.sin(2 * Math.PI * k / TABLE);
+        }
+
+        final double mean, amplitude, noise;
+        final long peak;
+        private final Ar1 jitter;
+
+        Diurnal(double mean, double amplitude, double peakHour, double noise) {
+            this.mean = mean;
+            this.amplitude = amplitude;
+            this.noise = noise;
+            this.peak = (long) (peakHour * 3_600_000);
+            this.jitter = new Ar1(0, 60, noise);
+        }
+
+        @Override public void init(SignalBank b, int i) { jitter.init(b, i); }
+
+        @Override public void period(SignalBank b, int i, double seconds) { jitter.period(b, i, seconds); }
+
+        @Override public void fill(SignalBank b, int[] idx, long[] t, int from, int to, double[] out) {
+            jitter.fill(b, idx, t, from, to, out);
+            long last = Long.MIN_VALUE;
+            double base = 0;
+            for (int k = from; k < to; k++) {
+                if (t[k] != last) {          // a tick's batch mostly shares one timestamp
+                    last = t[k];
+                    // quarter-day offset turns the table's sine into a cosine peaking at `peak`
+                    double pos = Math.floorMod(last - peak + DAY / 4, DAY) * (double) TABLE / DAY;
+                    int j = (int) pos;
+                    base = mean + amplitude * (SIN[j] + (SIN[j + 1] - SIN[j]) * (pos - j));
+                }
+                out[k] += base;
+            }
+        }
+    }
+
+    /** Motion as Poisson-arriving bursts of activity: {@code perMinute} arrivals, exponential lengths averaging {@code meanSeconds}. */
+    final class Bursts implements SignalModel {
+        final double perMinute, meanSeconds;
+
+        Bursts(double perMinute, double meanSeconds) { this.perMinute = perMinute; this.meanSeconds = meanSeconds; }
+
+        @Override public boolean continuous() { return false; }
+
+        @Override public void period(SignalBank b, int i, double seconds) {
+            b.cell[i * SignalBank.CELL + SignalBank.A] = 1 - Math.exp(-perMinute / 60 * seconds);  // chance a burst starts in one interval
+            b.cell[i * SignalBank.CELL + SignalBank.B] = meanSeconds / seconds;                    // mean burst length in samples
+        }
+
+        @Override public void fill(SignalBank b, int[] idx, long[] t, int from, int to, double[] out) {
+            double[] cell = b.cell;
+            int[] left = b.burst;
+            for (int k = from; k < to; k++) {
+                int i = idx[k], c = i * SignalBank.CELL;
+                if (left[i] > 0) {
+                    left[i]--;
+                    out[k] = 1;
+                } else if (b.uniform(i) < cell[c + SignalBank.A]) {
+                    left[i] = (int) Math.min(Integer.MAX_VALUE, -Math.log(1 - b.uniform(i)) * cell[c + SignalBank.B]);
+                    out[k] = 1;
+                } else {
+                    out[k] = 0;
+                }
+            }
+        }
+    }
+
+    /** The original generator: uniform 20..30 °C, motion on 40% of samples. */
+    final class Uniform implements SignalModel {
+        final int type;
+
+        Uniform(int type) { this.type = type; }
+
+        @Override public boolean continuous() { return type == FleetEngine.TEMP; }
+
+        @Override public void fill(SignalBank b, int[] idx, long[] t, int from, int to, double[] out) {
+            for (int k = from; k < to; k++) {
+                double u = b.uniform(idx[k]);
+                out[k] = type == FleetEngine.TEMP ? 20 + u * 10 : (u > 0.6 ? 1 : 0);
+            }
+        }
+    }
+}
+
+/**
+ * Signal state for a block of devices in primitive arrays, with one model per
+ * sensor type and an optional fault overlay: a device may start to drift (continuous
+ * signals only) or get stuck at its last value, and is later repaired.
+ * <p>
+ * Randomness is a SplitMix64 stream per device (one long of state, kept in the device's
+ * {@link DeviceTable} row), so a device's values depend only on the seed and its id, and a
+ * batch touches no shared generator.
+ * Fleet shards keep one batch per model as they fire, so each model runs one tight scalar
+ * loop over primitive arrays; a mixed batch is bucketed by model in a counting pass and
+ * scattered back, which costs about as much as generating it. The
+ * doubles a model touches on every sample share one 32-byte cell per device, because wheel
+ * batches visit devices in no useful order and the cells outgrow the cache at fleet scale.
+ * The JDK Vector API is still an incubator module on the supported runtime and the batches
+ * are gathered, so no explicit SIMD path is used.
+ */
+final class SignalBank {
+    static final byte OK = 0, DRIFT = 1, STUCK = 2;
+    /* cell layout: model level, two per-period model coefficients, sample interval */
+    static final int LEVEL = 0, A = 1, B = 2, SECONDS = 3, CELL = 4;
+
+    final long[] rows;                   // DeviceTable rows; device i's RNG is word RNG of row first + i
+    private final int first, n;
+    final double[] cell, bias, held;     // bias and held are only read while a fault lasts
+    final int[] burst, faultIn;
+    final byte[] fault;
+    private final byte[] type;
+    private final SignalModel[] models;
+    private final int[] offsets;
+    private final double onset, repair, driftPerSecond;
+    private int[] partIdx = new int[256], partPos = new int[256];
+    private long[] partT = new long[256];
+    private double[] partOut = new double[256];
+
+    /**
+     * @param ids            global device ids of the bank's devices (types follow {@link FleetEngine#typeOf})
+     * @param models         model per sensor type, indexed by type
+     * @param faultsPerHour  chance per device-hour that a healthy device develops a fault, 0 for none
+     */
+    SignalBank(int[] ids, long seed, double[] periodSeconds, SignalModel[] models,
+               double faultsPerHour, double repairsPerHour, double driftPerHour) {
+        this(ids, seed, periodSeconds, models, faultsPerHour, repairsPerHour, driftPerHour, new DeviceTable(ids.length, 1), 0);
+    }
+
+    /** Keeps device i's RNG in row {@code first + i} of {@code table}. */
+    SignalBank(int[] ids, long seed, double[] periodSeconds, SignalModel[] models,
+               double faultsPerHour, double repairsPerHour, double driftPerHour, DeviceTable table, int first) {
+        int n = ids.length;
+        this.n = n;
+        this.rows = table.rows;
+        this.first = first;
+        cell = new double[n * CELL];
+        bias = new double[n];
+        held = new double[n];
+        burst = new int[n];
+        faultIn = new int[n];
+        fault = new byte[n];
+        type = new byte[n];
+        this.models = models;
+        this.offsets = new int[models.length + 1];
+        this.onset = faultsPerHour / 3600;
+        this.repair = repairsPerHour / 3600;
+        this.driftPerSecond = driftPerHour / 3600;
+        for (int i = 0; i < n; i++) {
+            rows[(first + i) * DeviceTable.ROW + DeviceTable.RNG] = mix(seed ^ (0x9E3779B97F4A7C15L * (ids[i] + 1L)));
+            type[i] = (byte) FleetEngine.typeOf(ids[i]);
+            setPeriod(i, periodSeconds[i]);
+            models[type[i]].init(this, i);
+            if (onset > 0) faultIn[i] = samplesUntil(i, onset);
+        }
+    }
+
+    /** The default fleet models: diurnal temperature, bursty motion, rare drift and stuck faults. */
+    static SignalModel[] realistic() {
+        return new SignalModel[] { new SignalModel.Diurnal(24, 3, 15, 0.4), new SignalModel.Bursts(2, 5) };
+    }
+
+    static SignalModel[] uniform() {
+        return new SignalModel[] { new SignalModel.Uniform(FleetEngine.TEMP), new SignalModel.Uniform(FleetEngine.MOTION) };
+    }
+
+    /** Bank with the given models and default fault rates (faults only with the realistic models). */
+    static SignalBank of(int[] ids, long seed, double[] periodSeconds, boolean realistic) {
+        return of(ids, seed, periodSeconds, realistic, new DeviceTable(ids.length, 1), 0);
+    }
+
+    static SignalBank of(int[] ids, long seed, double[] periodSeconds, boolean realistic, DeviceTable table, int first) {
+        return realistic ? new SignalBank(ids, seed, periodSeconds, realistic(), 0.01, 0.5, 0.5, table, first)
+                         : new SignalBank(ids, seed, periodSeconds, uniform(), 0, 0, 0, table, first);
+    }
+
+    int size() { return n; }
+
+    int models() { return models.length; }
+
+    /** The model, indexed like the constructor's {@code models}, that generates device {@code i}. */
+    int model(int i) { return type[i]; }
+
+    /* Per-device columns outside the table; the partition scratch is per batch, not per device. */
+    long bytes() {
+        return n * (2L * Long.BYTES + CELL * Double.BYTES + 2L * Integer.BYTES + 2);
+    }
+
+    void setPeriod(int i, double periodSeconds) {
+        cell[i * CELL + SECONDS] = periodSeconds;
+        models[type[i]].period(this, i, periodSeconds);
+    }
+
+    /** As {@link #fill(int[], long[], int, double[])}, for a batch whose devices all use model {@code m}. */
+    void fill(int m, int[] idx, long[] t, int n, double[] out) {
+        models[m].fill(this, idx, t, 0, n, out);
+        if (onset > 0) applyFaults(idx, n, out);
+    }
+
+    /** Next value of each {@code idx[k]} at {@code t[k]} into {@code out[k]}; a device may appear several times, in time order. */
+    void fill(int[] idx, long[] t, int n, double[] out) {
+        if (n == 0) return;
+        int m0 = type[idx[0]], k0 = 1;
+        while (k0 < n && type[idx[k0]] == m0) k0++;
+        if (k0 == n) {                      // one model: no partition or scatter
+            fill(m0, idx, t, n, out);
+            return;
+        }
+        if (partIdx.length < n) {
+            int cap = Integer.highestOneBit(n - 1) << 1;
+            partIdx = new int[cap];
+            partPos = new int[cap];
+            partT = new long[cap];
+            partOut = new double[cap];
+        }
+        int[] off = offsets;
+        Arrays.fill(off, 0);
+        for (int k = 0; k < n; k++) off[type[idx[k]] + 1]++;
+        for (int m = 0; m < models.length; m++) off[m + 1] += off[m];
+        for (int k = 0; k < n; k++) {
+            int p = off[type[idx[k]]]++;    // stable: a device's samples stay in time order
+            partIdx[p] = idx[k];
+            partT[p] = t[k];
+            partPos[p] = k;
+        }
+        for (int m = 0, from = 0; m < models.length; m++) {
+            int to = off[m];                // after the pass, off[m] is the end of model m's run
+            if (to > from) models[m].fill(this, partIdx, partT, from, to, partOut);
+            from = to;
+        }
+        for (int q = 0; q < n; q++) out[partPos[q]] = partOut[q];
+        if (onset > 0) applyFaults(idx, n, out);
+    }
+
+    /* Healthy samples only count down to the next onset; the draws happen at transitions. */
+    private void applyFaults(int[] idx, int n, double[] out) {
+        for (int k = 0; k < n; k++) {
+            int i = idx[k], c = i * CELL;
+            byte f = fault[i];
+            if (f == DRIFT) {
+                out[k] += bias[i] += driftPerSecond * cell[c + SECONDS];
+            } else if (f == STUCK) {
+                out[k] = held[i];
+            }
+            if (--faultIn[i] > 0) continue;
+            if (f == OK) {
+                fault[i] = models[type[i]].continuous() && uniform(i) < 0.5 ? DRIFT : STUCK;
+                bias[i] = 0;
+                held[i] = out[k];
+                faultIn[i] = samplesUntil(i, repair);
+            } else {
+                fault[i] = OK;
+                faultIn[i] = samplesUntil(i, onset);
+            }
+        }
+    }
+
+    /** Bytes of {@link #save}: the table row (RNG included), the model cell and the fault state. */
+    static final int STATE_BYTES = DeviceTable.ROW * Long.BYTES + (CELL + 2) * Double.BYTES + 2 * Integer.BYTES + 1;
+
+    void save(int i, Checkpoint.Out out) {
+        out.putLongs(rows, (first + i) * DeviceTable.ROW, DeviceTable.ROW).putDoubles(cell, i * CELL, CELL)
+           .putDouble(bias[i]).putDouble(held[i]).putInt(burst[i]).putInt(faultIn[i]).putBytes(fault, i, 1);
+    }
+
+    void load(int i, Checkpoint.In in) {
+        in.getLongs(rows, (first + i) * DeviceTable.ROW, DeviceTable.ROW);
+        in.getDoubles(cell, i * CELL, CELL);
+        bias[i] = in.getDouble();
+        held[i] = in.getDouble();
+        burst[i] = in.getInt();
+        faultIn[i] = in.getInt();
+        in.getBytes(fault, i, 1);
+    }
+
+    /* Exponential wait for an event at {@code perSecond}, in samples at the device's current rate. */
+    private int samplesUntil(int i, double perSecond) {
+        double wait = -Math.log(1 - uniform(i)) / (perSecond * cell[i * CELL + SECONDS]);
+        return (int) Math.min(Integer.MAX_VALUE, 1 + wait);
+    }
+
+    /** Uniform in [0, 1) from device i's stream. */
+    double uniform(int i) {
+        return (mix(rows[(first + i) * DeviceTable.ROW] += 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+    }
+
+    /** Approximately standard normal: the sum of four 16-bit uniforms from one hash, rescaled. */
+    double gaussian(int i) {
+        long h = mix(rows[(first + i) * DeviceTable.ROW] += 0x9E3779B97F4A7C15L);
+        long sum = (h & 0xFFFF) + ((h >>> 16) & 0xFFFF) + ((h >>> 32) & 0xFFFF) + (h >>> 48);
+        return (sum * (1.0 / 65536) - 2) * 1.7320508075688772;
+    }
+
+    /* SplitMix64 finaliser. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
+
+/* --------------------- Uplink --------------------- */
+/**
+ * Simulated uplink between the fleet's producers and the ingest side. Every sample enters
+ * its device's bounded store-and-forward buffer and leaves once the link latency has passed,
+ * if the link is up. During an outage the buffer fills, dropping its oldest sample when full.
+ * On reconnect it drains in batches at the flush rate, so a fleet-wide outage ends in the
+ * same ingest burst that real gateways produce.
+ * <p>
+ * Configuration and statistics are shared by all shards. Each shard owns one {@link Link}
+ * holding its devices' buffers in primitive arrays and a timing wheel of pending flushes.
+ * Outages follow a fixed schedule in virtual time; loss and latency come from per-device
+ * streams; so a seeded run is reproducible.
+ */
+final class Uplink {
+    final long latencyMs, jitterMs;
+    final double loss, flushPerSecond;
+    final int buffer;
+    /* {first device, last device, start ms, length ms, repeat every ms or 0}, times relative to the epoch */
+    private final List<long[]> outages = new ArrayList<>();
+
+    final LongAdder delivered = new LongAdder(), lost = new LongAdder(), overflowed = new LongAdder(), buffered = new LongAdder();
+    final AtomicInteger offline = new AtomicInteger();
+    /** Backlog in samples when a device reconnects, and ms from reconnect until it is drained. */
+    final LatencyHistogram bursts = new LatencyHistogram(), catchUp = new LatencyHistogram();
+
+    /**
+     * @param latencyMs      one-way delay; each connection draws latencyMs..latencyMs+jitterMs
+     * @param loss           chance that a transmission is lost
+     * @param buffer         samples each device can hold while it cannot send
+     * @param flushPerSecond samples per second a device can send; a device producing faster backs up
+     */
+    Uplink(long latencyMs, long jitterMs, double loss, int buffer, double flushPerSecond) {
+        if (latencyMs < 0 || jitterMs < 0) throw new IllegalArgumentException("latency must be >= 0");
+        if (!(loss >= 0 && loss <= 1)) throw new IllegalArgumentException("loss must be 0..1: " + loss);
+        if (buffer < 1) throw new IllegalArgumentException("buffer must be >= 1: " + buffer);
+        if (!(flushPerSecond > 0)) throw new IllegalArgumentException("flush must be > 0: " + flushPerSecond);
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.loss = loss;
+        this.buffer = buffer;
+        this.flushPerSecond = flushPerSecond;
+    }
+
+    /**
+     * Parses {@code key=value} pairs separated by commas: {@code latency}, {@code jitter}
+     * (durations such as {@code 50ms}, {@code 2s}), {@code loss} (0..1), {@code buffer}
+     * (samples) and {@code flush} (samples/s). Missing keys keep their defaults: no latency,
+     * no loss, 64 samples, 100 samples/s.
+     */
+    static Uplink parse(String spec) {
+        long latency = 0, jitter = 0;
+        double loss = 0, flush = 100;
+        int buffer = 64;
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) continue;
+            int eq = part.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("expected key=value: " + part);
+            String key = part.substring(0, eq).trim(), value = part.substring(eq + 1).trim();
+            switch (key) {
+                case "latency": latency = millis(value); break;
+                case "jitter":  jitter = millis(value); break;
+                case "loss":    loss = Double.parseDouble(value); break;
+                case "buffer":  buffer = Integer.parseInt(value); break;
+                case "flush":   flush = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("unknown uplink setting: " + key);
+            }
+        }
+        return new Uplink(latency, jitter, loss, buffer, flush);
+    }
+
+    /**
+     * Adds an outage {@code selector@start+length}, optionally repeating as {@code /every}.
+     * The selector is {@code all}, a device id, a range {@code a-b} or {@code N%} for the first
+     * N percent of ids; times are durations from the start of the run. Call before the fleet starts.
+     */
+    String outage(String spec, int devices) {
+        int at = spec.indexOf('@'), plus = spec.indexOf('+', at + 1), slash = spec.indexOf('/', plus + 1);
+        if (at < 0 || plus < 0) throw new IllegalArgumentException("expected selector@start+length[/every]: " + spec);
+        String sel = spec.substring(0, at).trim();
+        long start = millis(spec.substring(at + 1, plus));
+        long length = millis(slash < 0 ? spec.substring(plus + 1) : spec.substring(plus + 1, slash));
+        long every = slash < 0 ? 0 : millis(spec.substring(slash + 1));
+        if (length <= 0) throw new IllegalArgumentException("outage length must be > 0: " + spec);
+        if (every != 0 && every <= length) throw new IllegalArgumentException("outage must repeat after more than its length: " + spec);
+        int from = 0, to = devices - 1;
+        if (sel.endsWith("%")) {
+            to = (int) Math.ceil(devices * Double.parseDouble(sel.substring(0, sel.length() - 1)) / 100) - 1;
+        } else if (!sel.equals("all")) {
+            int dash = sel.indexOf('-');
+            from = Integer.parseInt(dash < 0 ? sel : sel.substring(0, dash));
+            to = dash < 0 ? from : Integer.parseInt(sel.substring(dash + 1));
+        }
+        to = Math.min(to, devices - 1);
+        outages.add(new long[] { from, to, start, length, every });
+        return String.format("outage of %,d device(s) (%s) at %.1f s for %.1f s%s", Math.max(0, to - from + 1), sel,
+                start / 1000.0, length / 1000.0, every == 0 ? "" : String.format(", every %.1f s", every / 1000.0));
+    }
+
+    /* Durations: 250ms, 15s, 5m, 1h; a bare number is milliseconds. */
+    static long millis(String s) {
+        s = s.trim();
+        long unit = 1;
+        if (s.endsWith("ms")) s = s.substring(0, s.length() - 2);
+        else if (s.endsWith("s")) { unit = 1000; s = s.substring(0, s.length() - 1); }
+        else if (s.endsWith("m")) { unit = 60_000; s = s.substring(0, s.length() - 1); }
+        else if (s.endsWith("h")) { unit = 3_600_000; s = s.substring(0, s.length() - 1); }
+        return Math.round(Double.parseDouble(s.trim()) * unit);
+    }
+
+    /* End (ms from the epoch) of the outage covering device at ms, or -1 when its link is up. */
+    private static long downUntil(long[][] outages, int device, long ms) {
+        long until = -1;
+        for (long[] o : outages) {
+            if (device < o[0] || device > o[1]) continue;
+            long into = ms - o[2];
+            if (into < 0) continue;
+            if (o[4] > 0) into %= o[4];
+            if (into < o[3]) until = Math.max(until, ms - into + o[3]);
+        }
+        return until;
+    }
+
+    /** Link state for one shard's devices ({@code ids}, in the shard's index order). */
+    Link link(int[] ids, long epoch, long tickMillis, long seed, SampleSink out) {
+        return new Link(ids, epoch, tickMillis, seed, out);
+    }
+
+    /**
+     * Buffers for one shard, used only by its worker. Each device has one 64-byte row of
+     * link state and a ring of {@link #buffer} (time, value) pairs, both in flat long arrays
+     * so a sample touches few cache lines. A device with a non-empty buffer sits in the flush
+     * wheel at the tick its head can next be sent.
+     */
+    final class Link {
+        private static final int WHEEL = 1024, MASK = WHEEL - 1;
+        /* row layout; CATCH is the ms its catch-up started, -1 when not catching up */
+        private static final int FIRST = 0, COUNT = 1, NEXT = 2, ROUNDS = 3, FLAGS = 4, LATENCY = 5, STATE = 6, CATCH = 7, ROW = 8;
+        private static final long PENDING = 1, DOWN = 2;
+
+        private final SampleSink out;
+        private final long epoch, tickMillis, pumpGap;
+        private final int perPump;
+        private final long[][] schedule = outages.toArray(new long[0][]);
+        private final int[] ids;
+        private final long[] row, ring;                          // ring: sample ms since the epoch, value bits
+        private final int[] wheel = new int[WHEEL];
+        private long tick, backlog;                              // buffered change since the last flush
+
+        private Link(int[] ids, long epoch, long tickMillis, long seed, SampleSink out) {
+            int n = ids.length;
+            this.ids = ids;
+            this.out = out;
+            this.epoch = epoch;
+            this.tickMillis = tickMillis;
+            // flush in whole samples per wakeup, at least one tick apart
+            perPump = (int) Math.max(1, flushPerSecond * tickMillis / 1000);
+            pumpGap = Math.max(1, Math.round(perPump * 1000 / flushPerSecond / tickMillis));
+            row = new long[n * ROW];
+            ring = new long[n * buffer * 2];
+            Arrays.fill(wheel, -1);
+            for (int i = 0; i < n; i++) {
+                int r = i * ROW;
+                row[r + STATE] = SignalBank.mix(seed ^ 0x5DEECE66DL ^ (0x9E3779B97F4A7C15L * (ids[i] + 1L)));
+                row[r + LATENCY] = drawLatency(r);
+                row[r + CATCH] = -1;
+            }
+        }
+
+        /** Queues a sample of local device {@code i} produced during the current tick. */
+        void offer(int i, long t, double v) {
+            int r = i * ROW, c = (int) row[r + COUNT], f = (int) row[r + FIRST];
+            if (c == buffer) {
+                row[r + FIRST] = f = f + 1 == buffer ? 0 : f + 1;
+                c--;
+                overflowed.increment();
+            } else {
+                backlog++;
+            }
+            int at = f + c;
+            if (at >= buffer) at -= buffer;
+            int e = (i * buffer + at) * 2;
+            ring[e] = t - epoch;
+            ring[e + 1] = Double.doubleToRawLongBits(v);
+            row[r + COUNT] = c + 1;
+            if ((row[r + FLAGS] & PENDING) == 0) schedule(i, (t - epoch + row[r + LATENCY]) / tickMillis);
+        }
+
+        /**
+         * Sends whatever is due in the current tick to the downstream sink and advances to the
+         * next tick. Returns the number of samples delivered.
+         */
+        int flush() {
+            int slot = (int) (tick & MASK), sent = 0;
+            long now = tick * tickMillis;
+            int i = wheel[slot];
+            wheel[slot] = -1;
+            tick++;
+            while (i != -1) {
+                int r = i * ROW, nx = (int) row[r + NEXT];
+                if (row[r + ROUNDS] > 0) {
+                    row[r + ROUNDS]--;
+                    row[r + NEXT] = wheel[slot];
+                    wheel[slot] = i;
+                } else {
+                    row[r + FLAGS] &= ~PENDING;
+                    sent += pump(i, now);
+                }
+                i = nx;
+            }
+            if (sent > 0) delivered.add(sent);
+            if (backlog != 0) buffered.add(backlog);
+            backlog = 0;
+            return sent;
+        }
+
+        private int pump(int i, long now) {
+            int r = i * ROW;
+            long until = schedule.length == 0 ? -1 : downUntil(schedule, ids[i], now);
+            if (until >= 0) {
+                if ((row[r + FLAGS] & DOWN) == 0) {
+                    row[r + FLAGS] |= DOWN;
+                    row[r + CATCH] = -1;
+                    offline.incrementAndGet();
+                }
+                schedule(i, (until + tickMillis - 1) / tickMillis);
+                return 0;
+            }
+            if ((row[r + FLAGS] & DOWN) != 0) {
+                row[r + FLAGS] &= ~DOWN;
+                offline.decrementAndGet();
+                bursts.record(row[r + COUNT]);
+                row[r + CATCH] = now;
+                row[r + LATENCY] = drawLatency(r);
+            }
+            int base = i * buffer, h = (int) row[r + FIRST], c = (int) row[r + COUNT], tries = 0, sent = 0;
+            long end = now + tickMillis, lat = row[r + LATENCY];
+            while (c > 0 && tries < perPump && ring[(base + h) * 2] + lat < end) {
+                if (loss > 0 && uniform(r) < loss) {
+                    lost.increment();
+                } else {
+                    int e = (base + h) * 2;
+                    out.accept(ids[i], epoch + ring[e], Double.longBitsToDouble(ring[e + 1]));
+                    sent++;
+                }
+                tries++;
+                c--;
+                if (++h == buffer) h = 0;
+            }
+            row[r + FIRST] = h;
+            row[r + COUNT] = c;
+            backlog -= tries;
+            if (c > 0) {
+                schedule(i, tries == perPump ? tick - 1 + pumpGap : (ring[(base + h) * 2] + lat) / tickMillis);
+            } else if (row[r + CATCH] >= 0) {
+                catchUp.record(now - row[r + CATCH]);
+                row[r + CATCH] = -1;
+            }
+            return sent;
+        }
+
+        /* Never earlier than tick, the first tick not yet flushed. */
+        private void schedule(int i, long at) {
+            at = Math.max(at, tick);
+            int r = i * ROW, slot = (int) (at & MASK);
+            row[r + ROUNDS] = (at - tick) / WHEEL;
+            row[r + NEXT] = wheel[slot];
+            row[r + FLAGS] |= PENDING;
+            wheel[slot] = i;
+        }
+
+        private long drawLatency(int r) {
+            return latencyMs + (jitterMs == 0 ? 0 : (long) (uniform(r) * (jitterMs + 1)));
+        }
+
+        private double uniform(int r) {
+            return (SignalBank.mix(row[r + STATE] += 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+        }
+    }
+}
+
+/* --------------------- Multi-process Fleet --------------------- */
+/**
+ * Memory-mapped file shared by a fleet coordinator and its worker processes. The header
+ * holds the run parameters and the start/stop flags. Each worker owns one row that it
+ * rewrites every second, and each of its shard threads owns one row of per-type aggregates
+ * for the last completed wall-clock second. Rows are seqlocked, so a reader in another
+ * process never takes a half-written row.
+ */
+final class FleetStats implements Closeable {
+    static final long MAGIC = 0x494F54464C454554L;     // "IOTFLEET"
+    /* header */
+    static final int H_MAGIC = 0, H_DEVICES = 1, H_WORKERS = 2, H_SHARDS = 3, H_SEED = 4, H_EPOCH = 5,
+            H_START = 6, H_STOP = 7, H_RUN_FOR = 8, HEADER = 16;
+    /* worker row: totals since start; JITTER_MAX covers the last second */
+    static final int SEQ = 0, W_PID = 1, W_STATE = 2, W_DEVICES = 3, W_SAMPLES = 4, W_VIRTUAL = 5, W_TICKS = 6,
+            W_JITTER_SUM = 7, W_JITTER_MAX = 8, W_JITTER_SQUARES = 9, W_BEHIND = 10, WORKER = 16;
+    static final long STARTING = 0, READY = 1, RUNNING = 2, DONE = 3;
+    /* shard row: SEQ, the second it describes, then count/active/sum/min/max and the sketch per sensor type */
+    static final int S_INTERVAL = 1, GROUPS = 2, COUNT = 0, ACTIVE = 1, SUM = 2, MIN = 3, MAX = 4, BIN = 5,
+            GROUP_WORDS = BIN + WindowAggregator.BINS, SHARD = GROUPS + 2 * GROUP_WORDS;
+    /* sketch range, the same as the dashboard's aggregates */
+    static final double LO = 0, HI = 50, WIDTH = (HI - LO) / WindowAggregator.BINS;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, java.nio.ByteOrder.nativeOrder());
+
+    final int workers, shards;
+    private final java.nio.MappedByteBuffer map;
+    private final java.nio.channels.FileChannel channel;
+
+    private FleetStats(java.nio.channels.FileChannel channel, java.nio.MappedByteBuffer map) {
+        this.channel = channel;
+        this.map = map;
+        if (get(H_MAGIC) != MAGIC) throw new IllegalStateException("not a fleet stats file");
+        workers = (int) get(H_WORKERS);
+        shards = (int) get(H_SHARDS);
+    }
+
+    /** Creates the file for a run of {@code workers} processes with {@code shards} threads each. */
+    static FleetStats create(java.nio.file.Path file, int devices, int workers, int shards, long seed, long epoch, long runForMs) throws IOException {
+        long words = HEADER + (long) workers * WORKER + (long) workers * shards * SHARD;
+        java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.CREATE,
+                java.nio.file.StandardOpenOption.TRUNCATE_EXISTING, java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE);
+        java.nio.MappedByteBuffer b = ch.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, words * 8);
+        long[] header = { MAGIC, devices, workers, shards, seed, epoch, 0, 0, runForMs };
+        for (int i = header.length - 1; i >= 0; i--) LONGS.setVolatile(b, i * 8, header[i]);   // magic last
+        return new FleetStats(ch, b);
+    }
+
+    static FleetStats open(java.nio.file.Path file) throws IOException {
+        java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(file,
+                java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE);
+        return new FleetStats(ch, ch.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, ch.size()));
+    }
+
+    long get(int word) { return (long) LONGS.getVolatile(map, word * 8); }
+
+    void set(int word, long v) { LONGS.setVolatile(map, word * 8, v); }
+
+    int workerRow(int worker) { return HEADER + worker * WORKER; }
+
+    int shardRow(int worker, int shard) { return HEADER + workers * WORKER + (worker * shards + shard) * SHARD; }
+
+    /** Writes {@code values} into words [1, values.length] of a row under its seqlock. */
+    void write(int row, long[] values) {
+        long s = (long) LONGS.getVolatile(map, row * 8);
+        LONGS.setVolatile(map, row * 8, s + 1);        // odd: write in progress
+        for (int i = 0; i < values.length; i++) LONGS.set(map, (row + 1 + i) * 8, values[i]);
+        LONGS.setRelease(map, row * 8, s + 2);
+    }
+
+    /** Copies words [1, out.length] of a row; false if the writer kept it busy. */
+    boolean read(int row, long[] out) {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            long s = (long) LONGS.getAcquire(map, row * 8);
+            if ((s & 1) != 0) { Thread.onSpinWait(); continue; }
+            for (int i = 0; i < out.length; i++) out[i] = (long) LONGS.get(map, (row + 1 + i) * 8);
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getVolatile(map, row * 8) == s) return true;
+        }
+        return false;
+    }
+
+    @Override public void close() throws IOException { channel.close(); }
+}
+
+/**
+ * Runs a fleet as several worker JVMs on this machine. Devices are partitioned by a hash
+ * of their id; every worker runs its part with its own FleetEngine, keeps per-type
+ * aggregates per shard thread and publishes them with its counters through a
+ * {@link FleetStats} file. The coordinator starts all workers together, merges their rows
+ * every second into one fleet view (console and, with -Diot.metricsPort, /metrics) and
+ * stops them at the end. A device produces the same samples whichever worker runs it.
+ */
+final class FleetCoordinator implements Closeable {
+    private final int devices, workers, shards;
+    private final java.nio.file.Path file;
+    private final FleetStats stats;
+    private final List<Process> processes = new ArrayList<>();
+    private final Thread cleanup = new Thread(this::kill, "fleet-coordinator-cleanup");
+    private final long[] prevSamples, prevTicks, prevJitterSum, prevJitterSquares, row = new long[FleetStats.WORKER - 1];
+    private final long[] shardRow = new long[FleetStats.SHARD - 1];
+    private final Aggregate temp = new Aggregate(), motion = new Aggregate();
+    private long[] jitter = new long[5];
+    private long start, samples, rate, ended, virtualTime;
+    private int reporting, running;
+
+    /**
+     * @param runForMs   virtual time after which each worker stops by itself, 0 to run until {@link #close()}
+     * @param workerArgs fleet options passed on to every worker (speed, tick, signals, rates)
+     */
+    FleetCoordinator(int devices, int workers, int shards, long seed, long epoch, long runForMs, List<String> workerArgs) throws IOException {
+        this.devices = devices;
+        this.workers = workers;
+        this.shards = Math.max(1, shards);
+        file = java.nio.file.Files.createTempFile("iot-fleet-", ".stats");
+        stats = FleetStats.create(file, devices, workers, this.shards, seed, epoch, runForMs);
+        prevSamples = new long[workers];
+        prevTicks = new long[workers];
+        prevJitterSum = new long[workers];
+        prevJitterSquares = new long[workers];
+        Runtime.getRuntime().addShutdownHook(cleanup);
+
+        String javaBin = ProcessHandle.current().info().command().orElse(System.getProperty("java.home") + "/bin/java");
+        for (int w = 0; w < workers; w++) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(javaBin);
+            cmd.addAll(java.lang.management.ManagementFactory.getRuntimeMXBean().getInputArguments());
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add("IoTProjectPerfecttt");
+            cmd.add("--fleet");
+            cmd.addAll(workerArgs);
+            cmd.add("--worker");
+            cmd.add(file.toString());
+            cmd.add(Integer.toString(w));
+            processes.add(new ProcessBuilder(cmd).inheritIO().start());
+        }
+    }
+
+    /** Worker that runs {@code device}: a hash of the id, so neighbouring ids spread evenly. */
+    static int owner(int device, int workers) {
+        return (int) ((SignalBank.mix(device + 0x9E3779B97F4A7C15L) >>> 1) % workers);
+    }
+
+    /** Waits until every worker has built its engine, then starts them together. Returns the wait in ms. */
+    long start(long timeoutMs) throws IOException {
+        long began = System.currentTimeMillis();
+        for (int w = 0; w < workers; w++) {
+            while (stats.get(stats.workerRow(w) + FleetStats.W_STATE) < FleetStats.READY) {
+                if (!processes.get(w).isAlive()) throw new IOException("worker " + w + " exited with " + processes.get(w).exitValue());
+                if (System.currentTimeMillis() - began > timeoutMs) throw new IOException("worker " + w + " not ready after " + timeoutMs + " ms");
+                try { Thread.sleep(5); } catch (InterruptedException e) { throw new java.io.InterruptedIOException(); }
+            }
+        }
+        start = System.currentTimeMillis();
+        stats.set(FleetStats.H_START, start);
+        return start - began;
+    }
+
+    long startMillis() { return start; }
+
+    /**
+     * Merges every row for wall-clock second {@code second} (1 = the first second after
+     * start); call it shortly after that second has ended.
+     */
+    void collect(int second) {
+        samples = 0;
+        rate = 0;
+        running = 0;
+        long ticks = 0, jitterSum = 0, squares = 0, jitterMax = 0, behind = 0, virtual = Long.MAX_VALUE;
+        for (int w = 0; w < workers; w++) {
+            if (!stats.read(stats.workerRow(w), row)) continue;
+            long state = row[FleetStats.W_STATE - 1], n = row[FleetStats.W_SAMPLES - 1];
+            if (state == FleetStats.RUNNING) running++;
+            samples += n;
+            rate += n - prevSamples[w];
+            prevSamples[w] = n;
+            ticks += row[FleetStats.W_TICKS - 1] - prevTicks[w];
+            jitterSum += row[FleetStats.W_JITTER_SUM - 1] - prevJitterSum[w];
+            squares += row[FleetStats.W_JITTER_SQUARES - 1] - prevJitterSquares[w];
+            prevTicks[w] = row[FleetStats.W_TICKS - 1];
+            prevJitterSum[w] = row[FleetStats.W_JITTER_SUM - 1];
+            prevJitterSquares[w] = row[FleetStats.W_JITTER_SQUARES - 1];
+            jitterMax = Math.max(jitterMax, row[FleetStats.W_JITTER_MAX - 1]);
+            behind = Math.max(behind, row[FleetStats.W_BEHIND - 1]);
+            virtual = Math.min(virtual, row[FleetStats.W_VIRTUAL - 1]);
+        }
+        jitter = new long[] { ticks, jitterSum, jitterMax, squares, behind };
+        virtualTime = virtual;
+
+        temp.clear(FleetStats.LO, FleetStats.WIDTH);
+        motion.clear(FleetStats.LO, FleetStats.WIDTH);
+        reporting = 0;
+        for (int w = 0; w < workers; w++) {
+            for (int s = 0; s < shards; s++) {
+                if (!stats.read(stats.shardRow(w, s), shardRow) || shardRow[FleetStats.S_INTERVAL - 1] != second - 1) continue;
+                reporting++;
+                merge(temp, FleetStats.GROUPS - 1);
+                merge(motion, FleetStats.GROUPS - 1 + FleetStats.GROUP_WORDS);
+            }
+        }
+    }
+
+    private void merge(Aggregate a, int at) {
+        long n = shardRow[at + FleetStats.COUNT];
+        if (n == 0) return;
+        a.count += n;
+        a.active += shardRow[at + FleetStats.ACTIVE];
+        a.sum += Double.longBitsToDouble(shardRow[at + FleetStats.SUM]);
+        a.min = Math.min(a.min, Double.longBitsToDouble(shardRow[at + FleetStats.MIN]));
+        a.max = Math.max(a.max, Double.longBitsToDouble(shardRow[at + FleetStats.MAX]));
+        for (int b = 0; b < WindowAggregator.BINS; b++) a.bins[b] += (int) shardRow[at + FleetStats.BIN + b];
+        a.sketched = true;
+    }
+
+    long samples() { return samples; }
+    long rate() { return rate; }
+    int running() { return running; }
+    int reporting() { return reporting; }
+    long[] jitter() { return jitter; }
+    long virtualTime() { return virtualTime; }
+    Aggregate temperature() { return temp; }
+    Aggregate motion() { return motion; }
+
+    /** Blocks until every worker has stopped after its run-for time; returns false on timeout. */
+    boolean awaitDone(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (int w = 0; w < workers; w++) {
+            while (stats.get(stats.workerRow(w) + FleetStats.W_STATE) != FleetStats.DONE) {
+                if (!processes.get(w).isAlive() || System.currentTimeMillis() > deadline) return false;
+                Thread.sleep(1);
+            }
+        }
+        ended = System.currentTimeMillis();
+        return true;
+    }
+
+    /** Wall time from start until the last worker finished ({@link #awaitDone}) or now. */
+    long elapsedMillis() { return (ended != 0 ? ended : System.currentTimeMillis()) - start; }
+
+    /** Total samples of all workers, as last published. */
+    long totalSamples() {
+        long n = 0;
+        for (int w = 0; w < workers; w++) {
+            if (stats.read(stats.workerRow(w), row)) n += row[FleetStats.W_SAMPLES - 1];
+        }
+        return n;
+    }
+
+    /** Stops the workers, waits for them to exit and deletes the stats file. */
+    @Override public void close() throws IOException {
+        stats.set(FleetStats.H_STOP, 1);
+        for (Process p : processes) {
+            try {
+                if (!p.waitFor(5, TimeUnit.SECONDS)) p.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                p.destroyForcibly();
+            }
+        }
+        try { Runtime.getRuntime().removeShutdownHook(cleanup); } catch (IllegalStateException ignored) {}
+        stats.close();
+        java.nio.file.Files.deleteIfExists(file);
+    }
+
+    private void kill() {
+        for (Process p : processes) p.destroyForcibly();
+        try { java.nio.file.Files.deleteIfExists(file); } catch (IOException ignored) {}
+    }
+
+    /* ------------ command line ------------ */
+
+    /**
+     * {@code --fleet N --workers W}: runs and reports a partitioned fleet for {@code seconds},
+     * then writes the run summary to {@code summary} ("-" for stdout) unless it is null.
+     * Returns the exit status, 1 if the workers could not be started or followed.
+     */
+    static int run(int devices, int workers, int shards, int seconds, long seed, List<String> workerArgs, String summary) {
+        Metrics metrics = null;
+        try (FleetCoordinator c = new FleetCoordinator(devices, workers, shards, seed, System.currentTimeMillis(), 0, workerArgs)) {
+            long waited = c.start(60_000), startedAt = System.currentTimeMillis();
+            System.out.printf("[coord] %,d devices on %d worker process(es) x %d shard(s), seed %d, started after %d ms%n",
+                    devices, workers, c.shards, seed, waited);
+            int port = Integer.getInteger("iot.metricsPort", -1);
+            if (port >= 0) {
+                metrics = new Metrics();
+                metrics.counter("iot_fleet_samples_total", "Samples produced by all workers.", c::samples);
+                metrics.gauge("iot_fleet_samples_per_second", "Samples produced by all workers in the last second.", c::rate);
+                metrics.gauge("iot_fleet_workers_running", "Worker processes reporting as running.", c::running);
+                metrics.gauge("iot_fleet_temperature_mean", "Mean temperature over the last second.", () -> c.temperature().mean());
+                metrics.gauge("iot_fleet_motion_duty_cycle", "Share of motion samples that saw motion in the last second.", () -> c.motion().dutyCycle());
+                System.out.println("[coord] metrics at http://127.0.0.1:" + metrics.serveHttp(port) + "/metrics");
+            }
+            long[] run = new long[5];
+            for (int s = 1; s <= seconds; s++) {
+                long wake = c.startMillis() + s * 1000L + 100;     // shard rows for second s are written just after it ends
+                for (long now; (now = System.currentTimeMillis()) < wake; ) Thread.sleep(wake - now);
+                c.collect(s);
+                long[] j = c.jitter();
+                Scenario.addJitter(run, j);
+                double mean = j[0] == 0 ? 0 : j[1] / (double) j[0] / 1e3;     // us
+                double sd = j[0] == 0 ? 0 : Math.sqrt(Math.max(0, j[3] / (double) j[0] - mean * mean));
+                System.out.printf("[coord] t=%3ds  %d/%d running  %,10d samples/s  jitter avg %.3f ms  sd %.3f ms  max %.3f ms  drift %.3f ms%n",
+                        s, c.running(), workers, c.rate(), mean / 1e3, sd / 1e3, j[2] / 1e6, j[4] / 1e6);
+                Aggregate t = c.temperature(), m = c.motion();
+                System.out.printf("[coord]        temp mean %.2f p50 %.2f p99 %.2f max %.2f  motion duty %.3f  (%d/%d shards)%n",
+                        t.mean(), t.percentile(0.5), t.percentile(0.99), t.max, m.dutyCycle(), c.reporting(), workers * c.shards);
+            }
+            long total = c.totalSamples(), wall = c.elapsedMillis();
+            System.out.printf("[coord] done: %,d samples, %,.0f samples/s sustained over %d workers%n",
+                    total, total / (wall / 1000.0), workers);
+            if (summary != null) {
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("mode", "workers");
+                report.put("devices", devices);
+                report.put("workers", workers);
+                report.put("shards", c.shards);
+                report.put("seed", seed);
+                report.put("startup_ms", Scenario.startupMillis(startedAt));
+                report.put("workers_ready_ms", waited);
+                report.put("wall_seconds", wall / 1000.0);
+                report.put("samples", total);
+                report.put("samples_per_second", total / (wall / 1000.0));
+                report.put("jitter_ms", Scenario.jitter(run));
+                Scenario.writeSummary(summary, report);
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("[coord] " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            if (metrics != null) metrics.close();
+        }
+    }
+
+    /**
+     * Worker side of {@code --worker file index}: runs this worker's devices until the
+     * coordinator sets the stop flag, the run-for time is reached or the coordinator dies.
+     */
+    static void work(java.nio.file.Path path, int index, long tick, double speed, boolean realistic, List<String> rates) {
+        try (FleetStats stats = FleetStats.open(path)) {
+            int devices = (int) stats.get(FleetStats.H_DEVICES), workers = stats.workers;
+            long epoch = stats.get(FleetStats.H_EPOCH), runFor = stats.get(FleetStats.H_RUN_FOR);
+            int n = 0;
+            int[] ids = new int[devices / workers + 16];
+            for (int d = 0; d < devices; d++) {
+                if (owner(d, workers) != index) continue;
+                if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                ids[n++] = d;
+            }
+            ids = Arrays.copyOf(ids, n);
+
+            AtomicInteger claimed = new AtomicInteger();
+            long[] started = { Long.MAX_VALUE };
+            ThreadLocal<ShardAggregates> local = ThreadLocal.withInitial(
+                    () -> new ShardAggregates(stats, stats.shardRow(index, Math.min(stats.shards - 1, claimed.getAndIncrement())), started[0]));
+            SampleSink sink = new SampleSink() {
+                @Override public void accept(int device, long t, double v) { local.get().add(FleetEngine.typeOf(device), v); }
+                @Override public void endBatch() { local.get().publishIfDue(); }
+            };
+            FleetEngine engine = new FleetEngine(ids, stats.shards, tick, stats.get(FleetStats.H_SEED), speed, epoch, sink, realistic);
+            for (String r : rates) engine.applyRate(r, devices);
+
+            int row = stats.workerRow(index);
+            long pid = ProcessHandle.current().pid();
+            stats.write(row, new long[] { pid, FleetStats.READY, n, 0, epoch, 0, 0, 0, 0, 0 });
+            while (stats.get(FleetStats.H_START) == 0) {
+                if (stats.get(FleetStats.H_STOP) != 0 || !coordinatorAlive()) return;
+                Thread.sleep(1);
+            }
+            started[0] = stats.get(FleetStats.H_START);
+            engine.start();
+
+            long ticks = 0, jitterSum = 0, squares = 0, next = started[0] + 1000;
+            long state = FleetStats.RUNNING;
+            while (state == FleetStats.RUNNING) {
+                Thread.sleep(5);
+                long now = System.currentTimeMillis();
+                boolean finished = runFor > 0 && engine.virtualTime() >= epoch + runFor;
+                if (finished || stats.get(FleetStats.H_STOP) != 0 || !coordinatorAlive()) {
+                    engine.stop();
+                    state = FleetStats.DONE;
+                } else if (now < next) {
+                    continue;
+                }
+                next += 1000;
+                long[] j = engine.drainJitter();
+                ticks += j[0];
+                jitterSum += j[1];
+                squares += j[3];
+                stats.write(row, new long[] { pid, state, n, engine.samples(), engine.virtualTime(), ticks, jitterSum, j[2], squares, j[4] });
+            }
+        } catch (IOException e) {
+            System.err.println("[worker " + index + "] " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean coordinatorAlive() {
+        return ProcessHandle.current().parent().map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    /* One shard thread's per-type aggregates for the current wall-clock second, published when it ends. */
+    private static final class ShardAggregates {
+        private final FleetStats stats;
+        private final int row;
+        private final long start;
+        private final long[] out = new long[FleetStats.SHARD - 1];
+        private final long[] count = new long[2], active = new long[2];
+        private final double[] sum = new double[2], min = new double[2], max = new double[2];
+        private final int[][] bins = new int[2][WindowAggregator.BINS];
+        private long second;
+
+        ShardAggregates(FleetStats stats, int row, long start) {
+            this.stats = stats;
+            this.row = row;
+            this.start = start;
+            reset();
+        }
+
+        void add(int type, double v) {
+            count[type]++;
+            if (v >= 0.5) active[type]++;
+            sum[type] += v;
+            if (v < min[type]) min[type] = v;
+            if (v > max[type]) max[type] = v;
+            int b = (int) ((v - FleetStats.LO) / FleetStats.WIDTH);
+            bins[type][Math.max(0, Math.min(WindowAggregator.BINS - 1, b))]++;
+        }
+
+        void publishIfDue() {
+            long s = (System.currentTimeMillis() - start) / 1000;
+            if (s == second) return;
+            out[FleetStats.S_INTERVAL - 1] = second;
+            for (int g = 0; g < 2; g++) {
+                int at = FleetStats.GROUPS - 1 + g * FleetStats.GROUP_WORDS;
+                out[at + FleetStats.COUNT] = count[g];
+                out[at + FleetStats.ACTIVE] = active[g];
+                out[at + FleetStats.SUM] = Double.doubleToRawLongBits(sum[g]);
+                out[at + FleetStats.MIN] = Double.doubleToRawLongBits(min[g]);
+                out[at + FleetStats.MAX] = Double.doubleToRawLongBits(max[g]);
+                for (int b = 0; b < WindowAggregator.BINS; b++) out[at + FleetStats.BIN + b] = bins[g][b];
+            }
+            stats.write(row, out);
+            reset();
+            second = s;
+        }
+
+        private void reset() {
+            for (int g = 0; g < 2; g++) {
+                count[g] = active[g] = 0;
+                sum[g] = 0;
+                min[g] = Double.POSITIVE_INFINITY;
+                max[g] = Double.NEGATIVE_INFINITY;
+                Arrays.fill(bins[g], 0);
+            }
+        }
+    }
+}
+
+/* --------------------- Scenarios --------------------- */
+/**
+ * A headless run kept in a file of {@code key = value} lines, '#' starting a comment:
+ * <pre>
+ * devices   = 100000
+ * types     = temp            # temp, motion or all
+ * duration  = 2m
+ * seed      = 42
+ * speed     = max
+ * rate.temp = 0.5             # rate.&lt;selector&gt; = hz, one line per selector
+ * uplink    = latency=50ms,loss=0.001
+ * outage    = 25%@30s+10s     # may repeat
+ * store     = telemetry
+ * summary   = run.json        # JSON summary on exit, - for stdout
+ * </pre>
+ * The other keys are shards, tick, signals, workers, export, checkpoint, restore and ingest (true/false). A scenario
+ * expands into {@code --fleet} options; options after the file on the command line come
+ * later and so override it.
+ */
+final class Scenario {
+    private static final Set<String> OPTIONS = Set.of(
+            "types", "shards", "tick", "seed", "speed", "signals", "workers", "store", "uplink", "outage", "export", "summary",
+            "checkpoint", "restore");
+
+    static String[] args(java.nio.file.Path file, String[] overrides) throws IOException {
+        List<String> args = parse(new String(java.nio.file.Files.readAllBytes(file), java.nio.charset.StandardCharsets.UTF_8));
+        args.addAll(Arrays.asList(overrides));
+        return args.toArray(new String[0]);
+    }
+
+    static List<String> parse(String config) {
+        List<String> args = new ArrayList<>(List.of("--fleet"));
+        String[] lines = config.split("\r?\n");
+        for (int n = 0; n < lines.length; n++) {
+            String line = lines[n];
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            try {
+                int eq = line.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("expected key = value");
+                String key = line.substring(0, eq).trim(), value = line.substring(eq + 1).trim();
+                if (value.isEmpty()) throw new IllegalArgumentException("missing value");
+                if (key.startsWith("rate.")) {
+                    args.addAll(List.of("--rate", key.substring(5) + "=" + value));
+                } else if (key.equals("devices")) {
+                    args.add(Integer.toString(Integer.parseInt(value.replace("_", ""))));
+                } else if (key.equals("duration")) {
+                    args.addAll(List.of("--seconds", Long.toString((Uplink.millis(value) + 999) / 1000)));
+                } else if (key.equals("ingest")) {
+                    if (Boolean.parseBoolean(value)) args.add("--ingest");
+                } else if (OPTIONS.contains(key)) {
+                    args.addAll(List.of("--" + key, value));
+                } else {
+                    throw new IllegalArgumentException("unknown key " + key);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("scenario line " + (n + 1) + ": " + e.getMessage() + " in \"" + lines[n].trim() + "\"", e);
+            }
+        }
+        return args;
+    }
+
+    /* ------------ run summary ------------ */
+
+    /**
+     * Milliseconds from JVM launch to {@code startedAt}. Asked for after the run, so the
+     * management classes stay off the startup path being measured.
+     */
+    static long startupMillis(long startedAt) {
+        return startedAt - java.lang.management.ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    /* Adds one drainJitter() interval to run totals: counts and sums add, max and drift keep the largest. */
+    static void addJitter(long[] run, long[] j) {
+        run[0] += j[0];
+        run[1] += j[1];
+        run[2] = Math.max(run[2], j[2]);
+        run[3] += j[3];
+        run[4] = Math.max(run[4], j[4]);
+    }
+
+    /** {collections, ms} summed over the JVM's collectors since it started. */
+    static long[] gc() {
+        long[] r = new long[2];
+        for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+            r[0] += Math.max(0, gc.getCollectionCount());
+            r[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return r;
+    }
+
+    static Map<String, Object> jitter(long[] run) {
+        double mean = run[0] == 0 ? 0 : run[1] / (double) run[0] / 1e3;     // us
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ticks", run[0]);
+        m.put("avg", mean / 1e3);
+        m.put("sd", run[0] == 0 ? 0.0 : Math.sqrt(Math.max(0, run[3] / (double) run[0] - mean * mean)) / 1e3);
+        m.put("max", run[2] / 1e6);
+        m.put("max_drift", run[4] / 1e6);
+        return m;
+    }
+
+    /** p50/p99/max of a histogram, divided by {@code unit}. */
+    static Map<String, Object> percentiles(LatencyHistogram.Snapshot s, double unit) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", s.count);
+        m.put("p50", s.percentile(0.5) / unit);
+        m.put("p99", s.percentile(0.99) / unit);
+        m.put("max", s.max() / unit);
+        return m;
+    }
+
+    /** Writes {@code report} as one line of JSON to {@code target}, or to stdout for "-". */
+    static void writeSummary(String target, Map<String, ?> report) {
+        String line = json(report);
+        if (target.equals("-")) {
+            System.out.println(line);
+            return;
+        }
+        try {
+            java.nio.file.Files.write(java.nio.file.Paths.get(target), (line + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("[fleet] cannot write summary " + target + ": " + e);
+        }
+    }
+
+    /* Maps, strings, booleans and numbers only; doubles keep three decimals, non-finite ones become null. */
+    static String json(Object v) {
+        if (v instanceof Map) {
+            StringBuilder b = new StringBuilder("{");
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                if (b.length() > 1) b.append(',');
+                b.append(json(String.valueOf(e.getKey()))).append(':').append(json(e.getValue()));
+            }
+            return b.append('}').toString();
+        }
+        if (v instanceof String) {
+            StringBuilder b = new StringBuilder("\"");
+            for (char c : ((String) v).toCharArray()) {
+                if (c == '"' || c == '\\') b.append('\\').append(c);
+                else if (c < 0x20) b.append(String.format("\\u%04x", (int) c));
+                else b.append(c);
+            }
+            return b.append('"').toString();
+        }
+        if (v instanceof Double || v instanceof Float) {
+            double d = ((Number) v).doubleValue();
+            return Double.isFinite(d) ? Double.toString(Math.round(d * 1e3) / 1e3) : "null";
+        }
+        return String.valueOf(v);
+    }
+}
+
+/* --------------------- Export --------------------- */
+/**
+ * Streams samples out as CSV, InfluxDB line protocol or binary columns, to size-rotated
+ * files or a TCP socket. A producer only copies (device, time, value) into its own pooled
+ * column batch; full batches go on a bounded queue to the writer thread, which formats them
+ * into a reusable direct buffer, optionally compresses each block as a gzip member (so the
+ * files stay readable with gunzip) and writes it with a FileChannel. When the queue is full
+ * the producer waits ({@code block}), loses its batch ({@code drop}) or evicts the oldest
+ * queued batch ({@code drop-oldest}).
+ * <p>
+ * Text values are rounded to four decimals. A binary block is little-endian: "IOTC",
+ * version, sample count, then the ids (int), times (long, ms) and values (double) as columns.
+ */
+final class Exporter implements SampleSink, Closeable {
+    enum Format { CSV, INFLUX, BINARY }
+    enum Policy { BLOCK, DROP, DROP_OLDEST }
+
+    static final int BATCH = 4096, MAGIC = 0x43544F49, VERSION = 1;
+    private static final int BLOCK = 1 << 20;                          // block buffer
+    /* Longest text line: the influx prefix, a negative int id, the motion tag, a Double.toString
+       value, a negative long time, the ns padding and the newline. */
+    private static final int LINE = 11 + 11 + 19 + 24 + 1 + 20 + 6 + 1;
+    private static final long FLUSH_NANOS = 100_000_000L;               // endBatch ships batches older than this
+
+    final Format format;
+    final Policy policy;
+    final String target;
+    final int level, queueBatches, keep;                                // level: 0 = no compression
+    final long rotateBytes;
+
+    final LongAdder exported = new LongAdder(), dropped = new LongAdder();
+    private volatile long bytesRaw, bytesWritten, files;
+    private volatile IOException failure;
+
+    /* Per-producer open batch, in a slot close() can reach once the producers have stopped. */
+    private final List<Batch[]> slots = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Batch[]> open = ThreadLocal.withInitial(() -> {
+        Batch[] slot = { take() };
+        slots.add(slot);
+        return slot;
+    });
+    private final ArrayBlockingQueue<Batch> queue;
+    private final ConcurrentLinkedQueue<Batch> free = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean closing;
+
+    /* writer thread only */
+    private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK), packed;
+    private final java.util.zip.Deflater deflater;
+    private final java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+    private final byte[] line = new byte[LINE];
+    private java.nio.channels.WritableByteChannel out;
+    private long fileBytes;
+    private int sequence;
+    private final ArrayDeque<java.nio.file.Path> written = new ArrayDeque<>();
+
+    private static final class Batch {
+        final int[] device = new int[BATCH];
+        final long[] t = new long[BATCH];
+        final double[] v = new double[BATCH];
+        int n;
+        long opened;
+    }
+
+    /**
+     * @param target       a directory for rotated files, or {@code tcp://host:port}
+     * @param level        gzip level 1..9, or 0 to write blocks uncompressed
+     * @param rotateBytes  a file is closed once it reaches this size
+     * @param keep         rotated files to keep, oldest deleted first; 0 keeps all
+     * @param queueBatches batches of {@value #BATCH} samples that may wait for the writer
+     */
+    Exporter(Format format, String target, int level, long rotateBytes, int keep, int queueBatches, Policy policy) throws IOException {
+        if (level < 0 || level > 9) throw new IllegalArgumentException("gzip level must be 0..9: " + level);
+        if (rotateBytes < BLOCK) throw new IllegalArgumentException("rotate must be at least 1MB: " + rotateBytes);
+        if (queueBatches < 1 || keep < 0) throw new IllegalArgumentException("queue must be >= 1 and keep >= 0");
+        this.format = format;
+        this.target = target;
+        this.level = level;
+        this.rotateBytes = rotateBytes;
+        this.keep = keep;
+        this.queueBatches = queueBatches;
+        this.policy = policy;
+        queue = new ArrayBlockingQueue<>(queueBatches);
+        deflater = level == 0 ? null : new java.util.zip.Deflater(level, true);
+        packed = level == 0 ? null : ByteBuffer.allocateDirect(BLOCK + (BLOCK >> 6) + 64);
+        if (target.startsWith("tcp://")) {
+            out = connect(target.substring(6));
+        } else {
+            java.nio.file.Path dir = java.nio.file.Paths.get(target);
+            java.nio.file.Files.createDirectories(dir);
+            try (java.nio.file.DirectoryStream<java.nio.file.Path> ds = java.nio.file.Files.newDirectoryStream(dir, "export-*")) {
+                for (java.nio.file.Path p : ds) {
+                    String name = p.getFileName().toString();
+                    int dot = name.indexOf('.');
+                    try { sequence = Math.max(sequence, Integer.parseInt(name.substring(7, dot < 0 ? name.length() : dot))); }
+                    catch (NumberFormatException ignored) {}
+                }
+            }
+        }
+        writer = new Thread(this::drain, "exporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Parses {@code key=value} pairs separated by commas: {@code format} (csv, influx, binary),
+     * {@code to} (directory or tcp://host:port), {@code gzip} (level 1..9, or bare for 1),
+     * {@code rotate} (size such as 256MB), {@code keep} (files), {@code queue} (batches) and
+     * {@code policy} (block, drop, drop-oldest). Defaults: csv to ./export, uncompressed,
+     * 256MB files, all kept, 64 batches, block.
+     */
+    static Exporter parse(String spec) throws IOException {
+        Format format = Format.CSV;
+        Policy policy = Policy.BLOCK;
+        String to = "export";
+        int level = 0, keep = 0, queue = 64;
+        long rotate = 256L << 20;
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) continue;
+            int eq = part.indexOf('=');
+            String key = eq < 0 ? part : part.substring(0, eq).trim(), value = eq < 0 ? "" : part.substring(eq + 1).trim();
+            switch (key) {
+                case "format": format = Format.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "to":     to = value; break;
+                case "gzip":   level = value.isEmpty() ? 1 : Integer.parseInt(value); break;
+                case "rotate": rotate = bytes(value); break;
+                case "keep":   keep = Integer.parseInt(value); break;
+                case "queue":  queue = Integer.parseInt(value); break;
+                case "policy": policy = Policy.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')); break;
+                default: throw new IllegalArgumentException("unknown export setting: " + key);
+            }
+        }
+        return new Exporter(format, to, level, rotate, keep, queue, policy);
+    }
+
+    /* Sizes: 512KB, 64MB, 2GB; a bare number is bytes. */
+    static long bytes(String s) {
+        s = s.trim().toUpperCase(Locale.ROOT);
+        int shift = s.endsWith("KB") ? 10 : s.endsWith("MB") ? 20 : s.endsWith("GB") ? 30 : 0;
+        return Math.round(Double.parseDouble(shift == 0 ? s : s.substring(0, s.length() - 2).trim()) * (1L << shift));
+    }
+
+    private static SocketChannel connect(String hostPort) throws IOException {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("expected tcp://host:port: " + hostPort);
+        return SocketChannel.open(new InetSocketAddress(hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1))));
+    }
+
+    /* ------------ producer side ------------ */
+
+    @Override public void accept(int device, long t, double v) {
+        Batch[] slot = open.get();
+        Batch b = slot[0];
+        int n = b.n;
+        if (n == 0) b.opened = System.nanoTime();
+        b.device[n] = device;
+        b.t[n] = t;
+        b.v[n] = v;
+        if ((b.n = n + 1) == BATCH) slot[0] = submit(b);
+    }
+
+    /** Ships this producer's batch if it has waited {@value #FLUSH_NANOS} ns, bounding export lag at low rates. */
+    @Override public void endBatch() {
+        Batch[] slot = open.get();
+        Batch b = slot[0];
+        if (b.n > 0 && System.nanoTime() - b.opened >= FLUSH_NANOS) slot[0] = submit(b);
+    }
+
+    /* Queues b under the policy and returns the batch the producer fills next. */
+    private Batch submit(Batch b) {
+        if (failure != null || !writer.isAlive()) {
+            dropped.add(b.n);
+            b.n = 0;
+            return b;
+        }
+        switch (policy) {
+            case BLOCK:
+                try {
+                    queue.put(b);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.add(b.n);
+                    b.n = 0;
+                    return b;
+                }
+                break;
+            case DROP:
+                if (!queue.offer(b)) {
+                    dropped.add(b.n);
+                    b.n = 0;
+                    return b;
+                }
+                break;
+            default:
+                while (!queue.offer(b)) {
+                    Batch old = queue.poll();
+                    if (old != null) {
+                        dropped.add(old.n);
+                        recycle(old);
+                    }
+                }
+        }
+        return take();
+    }
+
+    private Batch take() {
+        Batch b = free.poll();
+        return b != null ? b : new Batch();
+    }
+
+    private void recycle(Batch b) {
+        b.n = 0;
+        free.offer(b);
+    }
+
+    /* ------------ writer thread ------------ */
+
+    private void drain() {
+        Batch b = null;                                                 // taken from the queue, not yet encoded
+        try {
+            while (true) {
+                b = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (b == null) {
+                    if (closing && queue.isEmpty()) break;
+                    continue;
+                }
+                if (out == null) next();
+                block.clear();
+                if (fileBytes == 0 && format != Format.BINARY) header();
+                // coalesce whatever is queued into one block: fewer writes and gzip members at high rates
+                do {
+                    encode(b);
+                    recycle(b);
+                    b = null;
+                } while (block.remaining() >= BATCH * (format == Format.BINARY ? 20 : LINE) + 16 && (b = queue.poll()) != null);
+                write();
+            }
+        } catch (IOException e) {
+            fail(e, b);
+        } catch (RuntimeException e) {
+            fail(new IOException("encoding failed: " + e, e), b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try { if (out != null) out.close(); } catch (IOException ignored) {}
+            out = null;
+        }
+    }
+
+    /* Records the failure and drops the batch in hand plus everything queued; submit drops the rest. */
+    private void fail(IOException e, Batch inFlight) {
+        failure = e;
+        System.err.println("[export] write to " + target + " failed, dropping from now on: " + e);
+        if (inFlight != null) {
+            dropped.add(inFlight.n);
+            recycle(inFlight);
+        }
+        for (Batch b; (b = queue.poll()) != null; ) {
+            dropped.add(b.n);
+            recycle(b);
+        }
+    }
+
+    private void next() throws IOException {
+        java.nio.file.Path dir = java.nio.file.Paths.get(target);
+        String ext = format == Format.CSV ? ".csv" : format == Format.INFLUX ? ".lp" : ".iotc";
+        java.nio.file.Path file = dir.resolve(String.format("export-%05d%s%s", ++sequence, ext, level > 0 ? ".gz" : ""));
+        out = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.CREATE_NEW, java.nio.file.StandardOpenOption.WRITE);
+        fileBytes = 0;
+        files++;
+        written.add(file);
+        while (keep > 0 && written.size() > keep) java.nio.file.Files.deleteIfExists(written.poll());
+    }
+
+    private void header() {
+        if (format == Format.CSV) block.put("device,type,time_ms,value\n".getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+    }
+
+    private void encode(Batch b) {
+        int n = b.n;
+        if (format == Format.BINARY) {
+            block.order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(VERSION).putInt(n);
+            int at = block.position();
+            block.asIntBuffer().put(b.device, 0, n);
+            block.position(at += 4 * n);
+            block.asLongBuffer().put(b.t, 0, n);
+            block.position(at += 8 * n);
+            block.asDoubleBuffer().put(b.v, 0, n);
+            block.position(at + 8 * n).order(java.nio.ByteOrder.BIG_ENDIAN);
+        } else {
+            boolean csv = format == Format.CSV;
+            for (int i = 0; i < n; i++) {
+                int d = b.device[i], p = 0;
+                if (csv) {
+                    p = digits(d, p);
+                    p = ascii(FleetEngine.typeOf(d) == FleetEngine.TEMP ? ",temp," : ",motion,", p);
+                    p = digits(b.t[i], p);
+                    line[p++] = ',';
+                    p = value(b.v[i], p);
+                } else {
+                    p = ascii("iot,device=", p);
+                    p = digits(d, p);
+                    p = ascii(FleetEngine.typeOf(d) == FleetEngine.TEMP ? ",type=temp value=" : ",type=motion value=", p);
+                    p = value(b.v[i], p);
+                    line[p++] = ' ';
+                    p = digits(b.t[i], p);
+                    p = ascii("000000", p);                     // ms to the protocol's ns
+                }
+                line[p++] = '\n';
+                block.put(line, 0, p);
+            }
+        }
+        exported.add(n);
+    }
+
+    private int ascii(String s, int p) {
+        for (int i = 0; i < s.length(); i++) line[p++] = (byte) s.charAt(i);
+        return p;
+    }
+
+    private int digits(long v, int p) {
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) return ascii(Long.toString(v), p);
+            line[p++] = '-';
+            v = -v;
+        }
+        int start = p;
+        do {
+            line[p++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        for (int i = start, j = p - 1; i < j; i++, j--) {
+            byte c = line[i];
+            line[i] = line[j];
+            line[j] = c;
+        }
+        return p;
+    }
+
+    /* Four decimals without trailing zeros; NaN, infinities and huge values fall back to Double.toString. */
+    private int value(double v, int p) {
+        if (!(Math.abs(v) < 1e14)) return ascii(Double.toString(v), p);
+        long scaled = Math.round(v * 10_000);
+        if (scaled < 0) {
+            line[p++] = '-';
+            scaled = -scaled;
+        }
+        p = digits(scaled / 10_000, p);
+        int frac = (int) (scaled % 10_000);
+        if (frac == 0) return p;
+        line[p++] = '.';
+        for (int div = 1000; frac > 0; div /= 10) {
+            line[p++] = (byte) ('0' + frac / div);
+            frac %= div;
+        }
+        return p;
+    }
+
+    private void write() throws IOException {
+        block.flip();
+        bytesRaw += block.remaining();
+        ByteBuffer data = block;
+        if (deflater != null) {
+            packed.clear();
+            packed.order(java.nio.ByteOrder.LITTLE_ENDIAN)
+                  .putShort((short) 0x8b1f).put((byte) 8).put((byte) 0).putInt(0).put((byte) 0).put((byte) 255);
+            crc.reset();
+            crc.update(block.duplicate());
+            deflater.reset();
+            deflater.setInput(block);
+            deflater.finish();
+            while (!deflater.finished()) deflater.deflate(packed);
+            packed.putInt((int) crc.getValue()).putInt((int) deflater.getBytesRead());
+            packed.flip();
+            data = packed;
+        }
+        int len = data.remaining();
+        while (data.hasRemaining()) out.write(data);
+        bytesWritten += len;
+        fileBytes += len;
+        if (fileBytes >= rotateBytes && out instanceof java.nio.channels.FileChannel) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /* ------------ reporting ------------ */
+
+    long bytesRaw() { return bytesRaw; }
+    long bytesWritten() { return bytesWritten; }
+    long files() { return files; }
+    int queued() { return queue.size(); }
+    IOException failure() { return failure; }
+
+    /** Ships every producer's partial batch and waits for the writer; call once the producers have stopped. */
+    @Override public void close() throws IOException {
+        for (Batch[] slot : slots) {
+            Batch b = slot[0];
+            if (b != null && b.n > 0) slot[0] = submit(b);
+        }
+        closing = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (deflater != null) deflater.end();
+        if (failure != null) throw failure;
+    }
+
+    String stats() {
+        return String.format("%,d samples, %,d dropped, %,d file(s), %.2f MB written (%.2f MB before compression)%s",
+                exported.sum(), dropped.sum(), files, bytesWritten / 1e6, bytesRaw / 1e6,
+                failure != null ? ", failed: " + failure.getMessage() : "");
+    }
+}
+
+/* --------------------- Device State --------------------- */
+/**
+ * Per-device state of an engine in one primitive table, a 32-byte row per device: RNG
+ * state, last value, last sample time, and the sample count packed with the status (a
+ * {@link SignalBank} fault code, or {@link #NEVER} before the first sample). Shards own
+ * contiguous runs of rows and write them in place, so a row has a single writer, shards do
+ * not share cache lines but at run ends, and nothing is allocated per device or per sample.
+ * Readers on other threads may see a row halfway through an update.
+ * <p>
+ * The fields share a row rather than each having a column: wheel batches visit devices in
+ * no useful order, so a column per field costs a cache miss per field, while the row is
+ * already in cache once the signal model has advanced the device's RNG.
+ */
+final class DeviceTable {
+    static final int RNG = 0, LAST = 1, TIME = 2, COUNT = 3, ROW = 4;     // COUNT: samples << 8 | status
+    static final byte NEVER = -1;
+
+    final long[] rows;
+    private final int size, shards, perShard, extra;
+
+    /** Rows for {@code size} positions of an engine whose position p runs on shard p % shards. */
+    DeviceTable(int size, int shards) {
+        this.size = size;
+        this.shards = Math.max(1, shards);
+        perShard = size / this.shards;
+        extra = size % this.shards;
+        rows = new long[size * ROW];
+        for (int r = 0; r < size; r++) {
+            rows[r * ROW + TIME] = Long.MIN_VALUE;
+            rows[r * ROW + COUNT] = NEVER & 0xFF;
+        }
+    }
+
+    int size() { return size; }
+
+    long bytes() { return (long) size * ROW * Long.BYTES; }
+
+    /** First row of shard {@code s}; its device i is row {@code shardStart(s) + i}. */
+    int shardStart(int s) { return s * perShard + Math.min(s, extra); }
+
+    /** Row of the device at engine position {@code p}. */
+    int row(int p) { return shardStart(p % shards) + p / shards; }
+
+    void record(int row, long t, double v, byte status) {
+        int r = row * ROW;
+        rows[r + LAST] = Double.doubleToRawLongBits(v);
+        rows[r + TIME] = t;
+        rows[r + COUNT] = ((rows[r + COUNT] >>> 8) + 1) << 8 | (status & 0xFF);
+    }
+
+    double last(int row) { return Double.longBitsToDouble(rows[row * ROW + LAST]); }
+    long lastTime(int row) { return rows[row * ROW + TIME]; }
+    long samples(int row) { return rows[row * ROW + COUNT] >>> 8; }
+    byte status(int row) { return (byte) rows[row * ROW + COUNT]; }
+
+    /** Rows per status: never sampled, ok, drifting, stuck. */
+    int[] statusCounts() {
+        int[] counts = new int[4];
+        for (int r = 0; r < size; r++) counts[status(r) + 1]++;
+        return counts;
+    }
+
+    /** Rows not sampled since {@code before}, which includes rows never sampled. */
+    int staleSince(long before) {
+        int n = 0;
+        for (int r = 0; r < size; r++) if (lastTime(r) < before) n++;
+        return n;
+    }
+}
+
+/* --------------------- Fleet Heatmap --------------------- */
+/**
+ * One cell per device of a {@link FleetEngine}, colored by its latest value, its alert and
+ * fault state, or how long ago it last reported. Cells are written straight into the int[]
+ * behind a TYPE_INT_RGB image: each {@link #update} re-derives every device's color from its
+ * {@link DeviceTable} row, stores pixels only for cells whose color changed, and
+ * {@link #refresh} repaints just the band of cell rows that holds them. Colors come from
+ * short palettes, so a reading that moves within its band costs a compare and nothing else.
+ * <p>
+ * Taking the raster's array stops Java2D from caching the image in video memory; a blit of
+ * the changed band is still far cheaper than a fillRect per cell. Cells run row-major in
+ * engine position order at the largest square size that fits, one pixel at the smallest
+ * (rows that still do not fit are clipped); a click selects a device.
+ */
+final class FleetHeatmap extends JComponent {
+    enum Mode { VALUE, ALERTS, STALENESS }
+
+    static final double TEMP_LO = 18, TEMP_HI = 30;
+    static final int EMPTY = 0xFFE4E4E8, GAP = 0xFFFFFFFF;
+    static final int[] HEAT = ramp(32, 0x2C7BB6, 0xFFFFBF, 0xD7191C);
+    static final int MOTION_IDLE = 0xFF3A3F58, MOTION_ACTIVE = 0xFFF59E0B;
+    static final int ALERT = 0xFFDC2626, OK = 0xFF34B27D, DRIFT = 0xFFF59E0B, STUCK = 0xFF8B5CF6;
+    static final int[] AGE = ramp(8, 0x34B27D, 0xF5D90B, 0xF97316);
+    static final int OFFLINE = 0xFF9CA3AF;
+
+    private final DeviceTable table;
+    private final int[] ids, rowOf;
+    private final byte[] alerts;
+    private final long offlineAfter;
+    private final int n;
+    private java.util.function.IntConsumer onSelect = d -> {};
+    private Mode mode = Mode.VALUE;
+
+    private BufferedImage image;
+    private int[] px, shown;
+    private int cols, cell, width;
+    private long newest = Long.MIN_VALUE, drawnAt = Long.MIN_VALUE;
+    private int selected = -1, alerting, offline, changed;
+
+    /**
+     * @param alerts open alert count per device id, written by the sample path, or null
+     * @param offlineAfter a device silent this long (sample time) is drawn offline
+     */
+    FleetHeatmap(FleetEngine engine, byte[] alerts, long offlineAfter) {
+        table = engine.table();
+        ids = engine.devices();
+        n = ids.length;
+        rowOf = new int[n];
+        for (int p = 0; p < n; p++) rowOf[p] = table.row(p);
+        this.alerts = alerts;
+        this.offlineAfter = Math.max(1, offlineAfter);
+        setPreferredSize(new Dimension(600, 400));
+        setToolTipText("");
+        addMouseListener(new MouseAdapter() {
+            @Override public void mouseClicked(MouseEvent e) {
+                int p = cellAt(e.getX(), e.getY());
+                if (p < 0) return;
+                selected = p;
+                repaint();
+                onSelect.accept(ids[p]);
+            }
+        });
+    }
+
+    /** Called on the EDT with the device id of a clicked cell. */
+    void onSelect(java.util.function.IntConsumer listener) { onSelect = listener; }
+
+    void setMode(Mode m) {
+        mode = m;
+        if (shown != null) Arrays.fill(shown, 0);
+    }
+
+    Mode mode() { return mode; }
+
+    int alerting() { return alerting; }
+    int offline() { return offline; }
+    /** Cells redrawn by the last {@link #update}. */
+    int changed() { return changed; }
+    int devices() { return n; }
+    /** Cell edge in pixels and cells per row, once the first update has laid the grid out. */
+    int cell() { return cell; }
+    int columns() { return cols; }
+
+    /** Recolors changed cells and repaints the rows that hold them. EDT only. */
+    void refresh() {
+        int[] band = update();
+        if (band != null) repaint(0, band[0] * cell, cols * cell, (band[1] - band[0] + 1) * cell);
+    }
+
+    /**
+     * Brings the image up to date with the table at the current size and returns the first and
+     * last cell row that changed, or null when nothing did. Staleness is measured against the
+     * newest sample time seen by the previous pass, so it follows the fleet's virtual clock at
+     * any speed.
+     */
+    int[] update() {
+        if (!layout(getWidth(), getHeight())) return null;
+        long[] rows = table.rows;
+        Mode m = mode;
+        long now = newest, seen = Long.MIN_VALUE;
+        int cols = this.cols, cell = this.cell, width = this.width;
+        int first = -1, last = -1, alerting = 0, offline = 0, changed = 0;
+        for (int p = 0, x = 0, y = 0; p < n; p++) {
+            int r = rowOf[p] * DeviceTable.ROW;
+            long t = rows[r + DeviceTable.TIME];
+            if (t > seen) seen = t;
+            long age = t == Long.MIN_VALUE || now == Long.MIN_VALUE ? 0 : Math.max(0, now - t);
+            boolean alert = alerts != null && alerts[ids[p]] > 0;
+            boolean silent = age >= offlineAfter;
+            if (alert) alerting++;
+            if (silent) offline++;
+            int c = color(m, rows, r, ids[p], t, age, alert);
+            if (c != shown[p]) {
+                shown[p] = c;
+                fill(x * cell, y * cell, cell, width, c);
+                if (first < 0) first = y;
+                last = y;
+                changed++;
+            }
+            if (++x == cols) { x = 0; y++; }
+        }
+        drawnAt = now;
+        newest = seen;
+        this.alerting = alerting;
+        this.offline = offline;
+        this.changed = changed;
+        return first < 0 ? null : new int[] { first, last };
+    }
+
+    private int color(Mode m, long[] rows, int r, int id, long t, long age, boolean alert) {
+        if (t == Long.MIN_VALUE) return EMPTY;
+        if (m == Mode.VALUE) {
+            double v = Double.longBitsToDouble(rows[r + DeviceTable.LAST]);
+            if (FleetEngine.typeOf(id) != FleetEngine.TEMP) return v >= 0.5 ? MOTION_ACTIVE : MOTION_IDLE;
+            int i = (int) ((v - TEMP_LO) * (HEAT.length / (TEMP_HI - TEMP_LO)));
+            return HEAT[Math.max(0, Math.min(HEAT.length - 1, i))];
+        }
+        if (m == Mode.ALERTS) {
+            byte status = (byte) rows[r + DeviceTable.COUNT];
+            return alert ? ALERT : status == SignalBank.DRIFT ? DRIFT : status == SignalBank.STUCK ? STUCK : OK;
+        }
+        return age >= offlineAfter ? OFFLINE : AGE[(int) (age * AGE.length / offlineAfter)];
+    }
+
+    /** Color of the device at position {@code p} from its current row, aged as of the last {@link #update}. */
+    int colorOf(int p) {
+        int r = rowOf[p] * DeviceTable.ROW;
+        long t = table.rows[r + DeviceTable.TIME];
+        long age = t == Long.MIN_VALUE || drawnAt == Long.MIN_VALUE ? 0 : Math.max(0, drawnAt - t);
+        return color(mode, table.rows, r, ids[p], t, age, alerts != null && alerts[ids[p]] > 0);
+    }
+
+    /* Cell pixels, leaving a one-pixel gap on the right and bottom once cells are big enough to show one. */
+    private void fill(int x0, int y0, int cell, int width, int c) {
+        int size = cell > 3 ? cell - 1 : cell;
+        for (int dy = 0, o = y0 * width + x0; dy < size; dy++, o += width) {
+            for (int dx = 0; dx < size; dx++) px[o + dx] = c;
+        }
+    }
+
+    /* Picks the largest cell that fits n cells into w x h; a new size means a new image and a full redraw. */
+    private boolean layout(int w, int h) {
+        if (w <= 0 || h <= 0 || n == 0) return false;
+        int size = Math.max(1, (int) Math.sqrt((double) w * h / n));
+        while (size > 1 && (long) (w / size) * (h / size) < n) size--;
+        int c = Math.max(1, w / size);
+        if (image != null && size == cell && c == cols) return true;
+        cell = size;
+        cols = c;
+        width = cols * cell;
+        int height = Math.max(1, (n + cols - 1) / cols) * cell;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        px = ((java.awt.image.DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(px, GAP);
+        shown = new int[n];
+        return true;
+    }
+
+    private int cellAt(int x, int y) {
+        if (image == null || x < 0 || x >= width) return -1;
+        int p = (y / cell) * cols + x / cell;
+        return y < 0 || p >= n ? -1 : p;
+    }
+
+    @Override public String getToolTipText(MouseEvent e) {
+        int p = cellAt(e.getX(), e.getY());
+        if (p < 0) return null;
+        int row = rowOf[p];
+        long t = table.lastTime(row);
+        if (t == Long.MIN_VALUE) return FleetEngine.nameOf(ids[p]) + ": no samples yet";
+        byte status = table.status(row);
+        return String.format("%s: %.2f  ·  %s  ·  %.1f s ago  ·  %,d samples", FleetEngine.nameOf(ids[p]), table.last(row),
+                alerts != null && alerts[ids[p]] > 0 ? "alerting" : status == SignalBank.DRIFT ? "drifting" : status == SignalBank.STUCK ? "stuck" : "ok",
+                Math.max(0, newest - t) / 1000.0, table.samples(row));
+    }
+
+    @Override protected void paintComponent(Graphics g) {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (image == null) {
+            layout(getWidth(), getHeight());
+            update();
+        }
+        if (image == null) return;
+        g.drawImage(image, 0, 0, null);
+        if (selected < 0) return;
+        int s = Math.max(cell, 5), x = (selected % cols) * cell + cell / 2 - s / 2, y = (selected / cols) * cell + cell / 2 - s / 2;
+        g.setColor(Color.BLACK);
+        g.drawRect(x - 1, y - 1, s + 1, s + 1);
+    }
+
+    /* Linear blend through the given RGB stops, opaque. */
+    static int[] ramp(int size, int... stops) {
+        int[] out = new int[size];
+        for (int i = 0; i < size; i++) {
+            double f = (double) i / (size - 1) * (stops.length - 1);
+            int k = Math.min(stops.length - 2, (int) f);
+            double u = f - k;
+            int a = stops[k], b = stops[k + 1], c = 0xFF000000;
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int ca = a >> shift & 0xFF, cb = b >> shift & 0xFF;
+                c |= (int) Math.round(ca + (cb - ca) * u) << shift;
+            }
+            out[i] = c;
+        }
+        return out;
+    }
+}
+
+/* --------------------- Checkpoint --------------------- */
+/**
+ * Versioned binary snapshot of simulator state, written and read through memory-mapped
+ * sections. Layout, little-endian:
+ * <pre>
+ *   0  i64  magic "IOTSNAP1"
+ *   8  i32  format version ({@value #VERSION})
+ *  12  i32  section count n
+ *  16  n x { i32 tag, i32 CRC32C of the payload, i64 offset, i64 length }
+ *      payloads, each starting on an 8-byte boundary
+ * </pre>
+ * Arrays go in and out with bulk copies between the heap and the mapping, so a section costs
+ * about a memcpy plus its checksum. A reader rejects another format version or a section
+ * whose checksum does not match, and skips tags it does not know, so later versions can add
+ * sections. Files are written under a temporary name and renamed into place, so a crash
+ * mid-write leaves the previous snapshot intact.
+ */
+final class Checkpoint {
+    static final long MAGIC = 0x3150414E53544F49L;       // "IOTSNAP1" read as little-endian bytes
+    static final int VERSION = 1;
+    static final int FLEET = 1, DEVICES = 2, REGISTRY = 3, RING = 4, AGGREGATES = 5, STREAM = 6;
+    private static final int ENTRY = 24;
+
+    /** A section's size must be known up front: it becomes its own mapping. */
+    static final class Section {
+        final int tag;
+        final long size;
+        final java.util.function.Consumer<Out> body;
+
+        Section(int tag, long size, java.util.function.Consumer<Out> body) {
+            this.tag = tag;
+            this.size = size;
+            this.body = body;
+        }
+    }
+
+    /** Writes {@code sections} to {@code file} and returns the file's size. */
+    static long write(java.nio.file.Path file, List<Section> sections) throws IOException {
+        java.nio.file.Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long[] offsets = new long[sections.size()];
+        int[] crcs = new int[sections.size()];
+        long end = align(16 + (long) ENTRY * sections.size());
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = end;
+            end = align(end + sections.get(i).size);
+        }
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(tmp, java.nio.file.StandardOpenOption.CREATE,
+                java.nio.file.StandardOpenOption.TRUNCATE_EXISTING, java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE)) {
+            for (int i = 0; i < offsets.length; i++) {
+                Section s = sections.get(i);
+                if (s.size == 0) continue;
+                java.nio.MappedByteBuffer map = ch.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, offsets[i], s.size);
+                Out out = new Out(map);
+                s.body.accept(out);
+                if (map.position() != s.size) throw new IllegalStateException("section " + s.tag + " wrote " + map.position() + " of " + s.size + " bytes");
+                java.util.zip.CRC32C crc = new java.util.zip.CRC32C();
+                crc.update(map.flip());
+                crcs[i] = (int) crc.getValue();
+                map.force();
+            }
+            ByteBuffer head = ByteBuffer.allocate(16 + ENTRY * sections.size()).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+            head.putLong(MAGIC).putInt(VERSION).putInt(sections.size());
+            for (int i = 0; i < offsets.length; i++) head.putInt(sections.get(i).tag).putInt(crcs[i]).putLong(offsets[i]).putLong(sections.get(i).size);
+            head.flip();
+            while (head.hasRemaining()) ch.write(head, head.position());
+            ch.truncate(end);
+            ch.force(true);
+        }
+        java.nio.file.Files.move(tmp, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        return end;
+    }
+
+    private static long align(long n) { return (n + 7) & ~7L; }
+
+    private final Map<Integer, List<In>> sections = new HashMap<>();
+    final long bytes;
+
+    /** Maps every section of {@code file} and checks its checksum. */
+    Checkpoint(java.nio.file.Path file) throws IOException {
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.READ)) {
+            bytes = ch.size();
+            ByteBuffer head = ByteBuffer.allocate(16).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, head, 0);
+            if (head.getLong(0) != MAGIC) throw new IOException(file + " is not a simulator checkpoint");
+            int version = head.getInt(8), n = head.getInt(12);
+            if (version != VERSION) throw new IOException(file + " is checkpoint format " + version + ", this build reads " + VERSION);
+            if (n < 0 || 16L + (long) ENTRY * n > bytes) throw new IOException(file + " has a damaged section table");
+            ByteBuffer table = ByteBuffer.allocate(ENTRY * n).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+            readFully(ch, table, 16);
+            for (int i = 0; i < n; i++) {
+                int tag = table.getInt(), crc = table.getInt();
+                long offset = table.getLong(), length = table.getLong();
+                if (offset < 0 || length < 0 || offset + length > bytes || length > Integer.MAX_VALUE) {
+                    throw new IOException(file + ": section " + i + " lies outside the file");
+                }
+                java.nio.MappedByteBuffer map = ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, offset, length);
+                java.util.zip.CRC32C check = new java.util.zip.CRC32C();
+                check.update(map.duplicate());
+                if ((int) check.getValue() != crc) throw new IOException(file + ": section " + i + " (tag " + tag + ") fails its checksum");
+                sections.computeIfAbsent(tag, k -> new ArrayList<>()).add(new In(map));
+            }
+        }
+    }
+
+    private static void readFully(java.nio.channels.FileChannel ch, ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, at + buf.position()) < 0) throw new IOException("checkpoint truncated");
+        }
+        buf.flip();
+    }
+
+    /** Sections with {@code tag} in the order they were written; empty when there are none. */
+    List<In> all(int tag) { return sections.getOrDefault(tag, List.of()); }
+
+    /** The first section with {@code tag}, or null. */
+    In first(int tag) {
+        List<In> l = all(tag);
+        return l.isEmpty() ? null : l.get(0);
+    }
+
+    static long sizeOf(String s) { return Integer.BYTES + s.getBytes(java.nio.charset.StandardCharsets.UTF_8).length; }
+
+    /** Sequential writer over one mapped section. */
+    static final class Out {
+        private final ByteBuffer b;
+
+        Out(ByteBuffer b) { this.b = b.order(java.nio.ByteOrder.LITTLE_ENDIAN); }
+
+        Out putInt(int v) { b.putInt(v); return this; }
+        Out putLong(long v) { b.putLong(v); return this; }
+        Out putDouble(double v) { b.putDouble(v); return this; }
+
+        Out putString(String s) {
+            byte[] utf = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            b.putInt(utf.length).put(utf);
+            return this;
+        }
+
+        Out putBytes(byte[] a, int off, int len) { b.put(a, off, len); return this; }
+
+        Out putInts(int[] a, int off, int len) {
+            b.asIntBuffer().put(a, off, len);
+            b.position(b.position() + len * Integer.BYTES);
+            return this;
+        }
+
+        Out putLongs(long[] a, int off, int len) {
+            b.asLongBuffer().put(a, off, len);
+            b.position(b.position() + len * Long.BYTES);
+            return this;
+        }
+
+        Out putDoubles(double[] a, int off, int len) {
+            b.asDoubleBuffer().put(a, off, len);
+            b.position(b.position() + len * Double.BYTES);
+            return this;
+        }
+    }
+
+    /** Sequential reader over one mapped section. */
+    static final class In {
+        private final ByteBuffer b;
+
+        In(ByteBuffer b) { this.b = b.order(java.nio.ByteOrder.LITTLE_ENDIAN); }
+
+        int getInt() { return b.getInt(); }
+        long getLong() { return b.getLong(); }
+        double getDouble() { return b.getDouble(); }
+        int remaining() { return b.remaining(); }
+
+        String getString() {
+            byte[] utf = new byte[b.getInt()];
+            b.get(utf);
+            return new String(utf, java.nio.charset.StandardCharsets.UTF_8);
+        }
+
+        void getBytes(byte[] a, int off, int len) { b.get(a, off, len); }
+
+        void getInts(int[] a, int off, int len) {
+            b.asIntBuffer().get(a, off, len);
+            b.position(b.position() + len * Integer.BYTES);
+        }
+
+        void getLongs(long[] a, int off, int len) {
+            b.asLongBuffer().get(a, off, len);
+            b.position(b.position() + len * Long.BYTES);
+        }
+
+        void getDoubles(double[] a, int off, int len) {
+            b.asDoubleBuffer().get(a, off, len);
+            b.position(b.position() + len * Double.BYTES);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/** 100k devices feeding a {@link WindowAggregator} for {@link iot.bench.AggregationBench}. */
+public class AggregationFixture implements iot.bench.AggregationBench.Ops {
+    static final int DEVICES = 100_000, TICKS = 1000;
+
+    private final WindowAggregator aggregates = new WindowAggregator(DEVICES, WindowAggregator.groupByType(DEVICES), 2, false, 0, 50);
+    private final FleetEngine fed, plain;
+    private final Aggregate out = new Aggregate();
+    private double sum;
+
+    public AggregationFixture() {
+        fed = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, aggregates);
+        plain = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, (d, t, v) -> sum += v);
+        fed.step(60 * TICKS);
+    }
+
+    @Override public long ingest() { return fed.step(TICKS); }
+
+    @Override public long generateOnly() { return plain.step(TICKS); }
+
+    @Override public double readAll() {
+        long now = aggregates.newest();
+        double acc = 0;
+        for (int key = 0; key < DEVICES + 2; key++) {
+            acc += aggregates.read(key, WindowAggregator.MINUTE, true, now, out).sum;
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,94 @@
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+
+/** A 1200x300 offscreen chart for {@link iot.bench.ChartPaintBench}, plus a one-million-sample history ring. */
+public class ChartPaintFixture implements iot.bench.ChartPaintBench.Ops {
+    static final int W = 1200, H = 300;
+
+    private final BufferedImage image = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB);
+    private final Font axisFont = new Font("Segoe UI", Font.PLAIN, 12);
+    private final SampleRing history = new SampleRing(1_000_000, true);
+    private int points;
+    private long[] t;
+    private double[] v;
+
+    @Override public void setUp(int points) {
+        this.points = points;
+        t = new long[points];
+        v = new double[points];
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int i = 0; i < points; i++) {
+            t[i] = i * 2000L;
+            v[i] = 20 + rnd.nextDouble() * 10;
+        }
+        for (int i = 0; i < 1_000_000; i++) history.add(i * 10L, 20 + rnd.nextDouble() * 10);
+    }
+
+    @Override public BufferedImage legacyPaint() {
+        Graphics2D g2 = image.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int left = 60, right = 20, top = 26, bottom = 40;
+        int gw = W - left - right, gh = H - top - bottom;
+
+        g2.setColor(new Color(248,248,249));
+        g2.fillRect(0, 0, W, H);
+        g2.setColor(new Color(224,224,226));
+        for (int i = 0; i <= 4; i++) g2.drawLine(left, top + i*gh/4, left+gw, top + i*gh/4);
+
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = 0; i < points; i++) {
+            min = Math.min(min, v[i]);
+            max = Math.max(max, v[i]);
+        }
+        g2.setColor(new Color(70,70,70));
+        g2.setFont(axisFont);
+        for (int i = 0; i <= 4; i++) g2.drawString(String.format("%.1f°C", max - i*(max-min)/4.0), 8, top + i*gh/4 + 4);
+
+        Path2D.Double path = new Path2D.Double();
+        Path2D.Double area = new Path2D.Double();
+        long t0 = t[0], dt = Math.max(1, t[points-1] - t0);
+        for (int i = 0; i < points; i++) {
+            double nx = left + ((double)(t[i] - t0) / dt) * gw;
+            double ny = top + (max - v[i]) / (max - min) * gh;
+            if (i == 0) {
+                path.moveTo(nx, ny);
+                area.moveTo(nx, top+gh);
+                area.lineTo(nx, ny);
+            } else {
+                path.lineTo(nx, ny);
+                area.lineTo(nx, ny);
+            }
+        }
+        area.lineTo(left + gw, top+gh);
+        area.closePath();
+
+        Rectangle bounds = area.getBounds();
+        g2.setPaint(new GradientPaint(0, bounds.y, new Color(72,201,176,200), 0, bounds.y + bounds.height, new Color(72,201,176,40)));
+        g2.fill(area);
+        Color line = new Color(20,140,90);
+        g2.setColor(line);
+        g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2.draw(path);
+        for (int i = 0; i < points; i++) {
+            double nx = left + ((double)(t[i] - t0) / dt) * gw;
+            double ny = top + (max - v[i]) / (max - min) * gh;
+            g2.setColor(Color.WHITE);
+            g2.fill(new Ellipse2D.Double(nx-4, ny-4, 8, 8));
+            g2.setColor(line.darker());
+            g2.draw(new Ellipse2D.Double(nx-4, ny-4, 8, 8));
+        }
+        g2.dispose();
+        return image;
+    }
+
+    @Override public Decimated decimateMinMax() {
+        return Decimator.decimate(history, Decimator.MINMAX, 0, 10_000_000L, W);
+    }
+
+    @Override public Decimated decimateLttb() {
+        return Decimator.decimate(history, Decimator.LTTB, 0, 10_000_000L, W);
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** A stepped 1M-device fleet and its checkpoint file for {@link iot.bench.CheckpointBench}. */
+public class CheckpointFixture implements iot.bench.CheckpointBench.Ops {
+    static final int DEVICES = 1_000_000;
+
+    private FleetEngine engine;
+    private FleetEngine.Frozen frozen;
+    private Path file;
+
+    @Override public void setUp() {
+        try {
+            file = Files.createTempFile("iot-bench", ".ckpt");
+            engine = new FleetEngine(DEVICES, 1, 10, 42, 1, 1_700_000_000_000L, (device, t, v) -> { });
+            engine.step(3_000);     // 30 s in: every device has a schedule and signal state
+            frozen = engine.frozen();
+            save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override public long save() {
+        try {
+            return Checkpoint.write(file, engine.capture(frozen).sections());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override public long restore() {
+        try {
+            FleetEngine.Frozen f = FleetEngine.Frozen.read(new Checkpoint(file));
+            return FleetEngine.restore(f, 1, 1, (device, t, v) -> { }).devices().length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override public void tearDown() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
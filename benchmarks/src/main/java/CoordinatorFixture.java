@@ -0,0 +1,22 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/** Fixed-size fleet runs split across worker processes for {@link iot.bench.CoordinatorBench}. */
+public class CoordinatorFixture implements iot.bench.CoordinatorBench.Ops {
+    static final int DEVICES = 200_000;
+    static final long VIRTUAL_MS = 120_000;
+
+    @Override public long run(int workers) {
+        try (FleetCoordinator c = new FleetCoordinator(DEVICES, workers, 1, 42, 0, VIRTUAL_MS, List.of("--speed", "max"))) {
+            c.start(60_000);
+            if (!c.awaitDone(600_000)) throw new IllegalStateException("workers did not finish");
+            return c.totalSamples();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import javax.swing.DefaultListModel;
+
+/** Registries and list models at fleet scale for {@link iot.bench.DeviceListBench}. */
+public class DeviceListFixture implements iot.bench.DeviceListBench.Ops {
+    static final int ADDED = 20_000, FLEET = 100_000;
+
+    private final String[] names = new String[FLEET];
+    private final DeviceRegistry fleet = new DeviceRegistry();
+    private final DeviceListModel model = new DeviceListModel(fleet);
+    private long t;
+    private int next;
+
+    public DeviceListFixture() {
+        for (int d = 0; d < FLEET; d++) {
+            names[d] = FleetEngine.nameOf(d);
+            fleet.register(names[d], FleetEngine.typeOf(d));
+            if (d % 3 == 0) fleet.seen(d, 0, 1);
+        }
+    }
+
+    @Override public int legacyRegister() {
+        DefaultListModel<String> list = new DefaultListModel<>();
+        for (int d = 0; d < ADDED; d++) if (!list.contains(names[d])) list.addElement(names[d]);
+        return list.size();
+    }
+
+    @Override public int register() {
+        DeviceRegistry r = new DeviceRegistry();
+        for (int d = 0; d < ADDED; d++) r.register(names[d], FleetEngine.typeOf(d));
+        return r.size();
+    }
+
+    @Override public long seen() {
+        int id = next;
+        next = next == FLEET - 1 ? 0 : next + 1;
+        fleet.seen(id, ++t, 1);
+        return fleet.samples(id);
+    }
+
+    @Override public int prefixSearch() {
+        model.filter("TempSensor-123", -1, -1);
+        return model.getSize();
+    }
+
+    @Override public int filterOnline() {
+        model.filter("", -1, DeviceRegistry.ONLINE);
+        return model.getSize();
+    }
+}
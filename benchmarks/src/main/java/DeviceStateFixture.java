@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/** 1M devices held as objects and as a {@link DeviceTable} for {@link iot.bench.DeviceStateBench}. */
+public class DeviceStateFixture implements iot.bench.DeviceStateBench.Ops {
+    static final int DEVICES = 1_000_000;
+
+    /* The object model the dashboard started from: one of these per device, a Sample per reading. */
+    static final class Sample {
+        final long t;
+        final double v;
+        Sample(long t, double v) { this.t = t; this.v = v; }
+    }
+
+    static final class Device {
+        final String name;
+        final int type;
+        final SplittableRandom rnd;
+        Sample last;
+        long samples;
+        boolean online;
+        Runnable task;
+
+        Device(String name, int type, SplittableRandom rnd) {
+            this.name = name;
+            this.type = type;
+            this.rnd = rnd;
+        }
+    }
+
+    private final List<Device> devices = new ArrayList<>();
+    private final DeviceTable table = new DeviceTable(DEVICES, 1);
+    private final long[] clock = { 1_700_000_000_000L };
+
+    public DeviceStateFixture() {
+        for (int d = 0; d < DEVICES; d++) {
+            Device dev = new Device(FleetEngine.nameOf(d), FleetEngine.typeOf(d), FleetEngine.deviceRandom(42, d));
+            long[] now = clock;
+            dev.task = () -> {
+                dev.last = new Sample(now[0], FleetEngine.sample(dev.rnd, dev.type));
+                dev.samples++;
+                dev.online = true;
+            };
+            devices.add(dev);
+            table.rows[d * DeviceTable.ROW + DeviceTable.RNG] = SignalBank.mix(42 ^ (0x9E3779B97F4A7C15L * (d + 1L)));
+        }
+    }
+
+    @Override public double objects() {
+        clock[0] += 1000;
+        double acc = 0;
+        for (Device dev : devices) {
+            dev.task.run();
+            acc += dev.last.v;
+        }
+        return acc;
+    }
+
+    @Override public double table() {
+        long t = clock[0] += 1000;
+        double acc = 0;
+        for (int d = 0; d < DEVICES; d++) {
+            long h = SignalBank.mix(table.rows[d * DeviceTable.ROW + DeviceTable.RNG] += 0x9E3779B97F4A7C15L);
+            double u = (h >>> 11) * 0x1.0p-53, v = (d & 1) == 0 ? 20 + u * 10 : (u > 0.6 ? 1 : 0);
+            table.record(d, t, v, SignalBank.OK);
+            acc += v;
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Exporters over 100k devices for {@link iot.bench.ExportBench}. Each writes 64MB files
+ * into a temporary directory and keeps the last two; the directory is deleted on exit.
+ */
+public class ExportFixture implements iot.bench.ExportBench.Ops {
+    static final int DEVICES = 100_000;
+
+    private final double[] values = new double[DEVICES];
+    private final Exporter csv, csvGzip, influx, binary;
+    private long t = 1_700_000_000_000L;
+    private double sum;
+
+    public ExportFixture() {
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int d = 0; d < DEVICES; d++) {
+            values[d] = FleetEngine.typeOf(d) == FleetEngine.TEMP ? Math.round((24 + rnd.nextGaussian()) * 100) / 100.0 : rnd.nextInt(2);
+        }
+        try {
+            Path dir = Files.createTempDirectory("iot-export");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir)));
+            csv = exporter(dir, "csv", "format=csv");
+            csvGzip = exporter(dir, "gzip", "format=csv,gzip");
+            influx = exporter(dir, "influx", "format=influx");
+            binary = exporter(dir, "binary", "format=binary");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Exporter exporter(Path dir, String name, String spec) throws IOException {
+        return Exporter.parse(spec + ",to=" + dir.resolve(name) + ",rotate=64MB,keep=2");
+    }
+
+    private static void delete(Path dir) {
+        try (java.util.stream.Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(java.util.Comparator.reverseOrder())::iterator) Files.deleteIfExists(p);
+        } catch (IOException ignored) {}
+    }
+
+    private long push(SampleSink sink) {
+        long now = t += 1000;
+        for (int d = 0; d < DEVICES; d++) sink.accept(d, now, values[d]);
+        sink.endBatch();
+        return now;
+    }
+
+    @Override public long counting() { return push((d, time, v) -> sum += v) + (long) sum; }
+
+    @Override public long csv() { return push(csv); }
+
+    @Override public long csvGzip() { return push(csvGzip); }
+
+    @Override public long influx() { return push(influx); }
+
+    @Override public long binary() { return push(binary); }
+}
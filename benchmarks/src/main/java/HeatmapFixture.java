@@ -0,0 +1,57 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/** A 100k-device fleet feeding a {@link FleetHeatmap} for {@link iot.bench.HeatmapBench}. */
+public class HeatmapFixture implements iot.bench.HeatmapBench.Ops {
+    static final int DEVICES = 100_000, WIDTH = 1200, HEIGHT = 800;
+    static final long FRAME_MS = 33;
+
+    private FleetEngine engine;
+    private FleetHeatmap heatmap;
+    private BufferedImage canvas;
+    private Graphics2D g;
+
+    @Override public void setUp(String mode) {
+        byte[] open = new byte[DEVICES];
+        RuleEngine rules = new RuleEngine(RuleEngine.parse(RuleEngine.DEFAULTS), DEVICES, (rule, subject, t, value, raised) -> {
+            if (rule.kind != RuleEngine.Kind.ZONE) open[subject] += raised ? 1 : -1;
+        });
+        engine = new FleetEngine(DEVICES, 1, FRAME_MS, 42, 1, 1_700_000_000_000L, rules);
+        heatmap = new FleetHeatmap(engine, open, 5_000);
+        heatmap.setSize(WIDTH, HEIGHT);
+        heatmap.setMode(FleetHeatmap.Mode.valueOf(mode));
+        engine.step(200);       // every device has reported a few times
+        heatmap.update();
+        canvas = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = canvas.createGraphics();
+    }
+
+    /* What a paintComponent that knows nothing about the last frame does: every cell, every frame. */
+    @Override public int fillRect() {
+        engine.step(1);
+        int cell = heatmap.cell(), cols = heatmap.columns();
+        for (int p = 0; p < DEVICES; p++) {
+            g.setColor(new Color(heatmap.colorOf(p)));
+            g.fillRect(p % cols * cell, p / cols * cell, cell, cell);
+        }
+        return DEVICES;
+    }
+
+    @Override public int step() {
+        return (int) engine.step(1);
+    }
+
+    @Override public int frame() {
+        engine.step(1);
+        heatmap.update();
+        return heatmap.changed();
+    }
+
+    @Override public int fullRedraw() {
+        engine.step(1);
+        heatmap.setMode(heatmap.mode());
+        heatmap.update();
+        return heatmap.changed();
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Two days of history for 1000 devices (one sample every 10 s, 17M samples) in a temporary
+ * {@link TelemetryStore} for {@link iot.bench.HistoryBench}. The directory is deleted on exit.
+ */
+public class HistoryFixture implements iot.bench.HistoryBench.Ops {
+    static final int DEVICES = 1000;
+    static final long START = 1_700_000_000_000L, PERIOD = 10_000, DAYS = 2, HOUR = 3_600_000, END = START + DAYS * 24 * HOUR;
+
+    private final TelemetryStore store;
+    private final SampleCursor rows = new SampleCursor();
+    private final BucketCursor buckets = new BucketCursor();
+    private final int[] all = new int[DEVICES];
+    private int device;
+    private double sum;
+
+    public HistoryFixture() {
+        try {
+            Path dir = Files.createTempDirectory("iot-history");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir)));
+            store = new TelemetryStore(dir, 64 << 20, DAYS * 24 * HOUR, 30 * 24 * HOUR, 4096L << 20);
+            for (int d = 0; d < DEVICES; d++) all[d] = store.register(FleetEngine.nameOf(d), FleetEngine.typeOf(d));
+            SplittableRandom rnd = new SplittableRandom(42);
+            double[] level = new double[DEVICES];
+            java.util.Arrays.fill(level, 24);
+            for (long t = START; t < END; t += PERIOD) {
+                for (int d = 0; d < DEVICES; d++) {
+                    double v = FleetEngine.typeOf(d) == FleetEngine.TEMP
+                            ? (level[d] = Math.round((level[d] + rnd.nextGaussian() * 0.05) * 100) / 100.0)
+                            : (rnd.nextInt(10) < 3 ? 1 : 0);
+                    store.accept(d, t, v);
+                }
+            }
+            store.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void delete(Path dir) {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+            Files.deleteIfExists(dir);
+        } catch (IOException ignored) {}
+    }
+
+    /* An hour in the middle of the second day, on a different device each call. */
+    private long hourStart() { return START + 30 * HOUR; }
+
+    private int nextDevice() { return device = (device + 7) % DEVICES; }
+
+    @Override public double scanHour() {
+        double[] acc = { 0 };
+        try {
+            store.scan(nextDevice(), hourStart(), hourStart() + HOUR, (d, t, v) -> acc[0] += v);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return acc[0];
+    }
+
+    @Override public double rangeHour() {
+        store.range(nextDevice(), hourStart(), hourStart() + HOUR, rows);
+        double acc = 0;
+        while (rows.next()) acc += rows.value();
+        return acc;
+    }
+
+    @Override public double downsampleTwoDays() {
+        store.downsample(nextDevice(), START, END, 5 * 60_000, buckets);
+        double acc = 0;
+        while (buckets.next()) acc += buckets.mean();
+        return acc;
+    }
+
+    @Override public double latestAll() {
+        store.latest(all, rows);
+        double acc = 0;
+        while (rows.next()) acc += rows.value();
+        return acc;
+    }
+}
@@ -0,0 +1,28 @@
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/** Log pipeline for {@link iot.bench.LogFormatBench}; the store starts with 64k temperature lines. */
+public class LogFormatFixture implements iot.bench.LogFormatBench.Ops {
+    private final LogRing ring = new LogRing(1 << 16);
+    private final LogStore store = new LogStore(1 << 16);
+    private long t = System.currentTimeMillis();
+    private double v = 20;
+
+    public LogFormatFixture() {
+        for (int i = 0; i < 1 << 16; i++) store.add(t + i * 10L, "TempSensor-1", LogRing.TEMP, 20 + i % 10);
+    }
+
+    @Override public String legacyFormat() {
+        String stamp = new SimpleDateFormat("HH:mm:ss").format(new Date());
+        return "[" + stamp + "] " + "TempSensor-1 → " + String.format("%.2f °C", v += 0.01);
+    }
+
+    @Override public int enqueue() {
+        ring.offer(t++, "TempSensor-1", LogRing.TEMP, v += 0.01);
+        return ring.drainTo(store, 1);
+    }
+
+    @Override public String formatVisibleLine() {
+        return store.line((int) (t++ & 0xFFFF));
+    }
+}
@@ -0,0 +1,30 @@
+/** Default rules over 100k devices fed from a recorded fleet second, for {@link iot.bench.RuleBench}. */
+public class RuleFixture implements iot.bench.RuleBench.Ops {
+    static final int DEVICES = 100_000, SAMPLES = iot.bench.RuleBench.SAMPLES;
+
+    private final int[] device = new int[SAMPLES];
+    private final long[] time = new long[SAMPLES];
+    private final double[] value = new double[SAMPLES];
+    private final long span;
+    private final RuleEngine engine;
+    private long offset, alerts;
+
+    public RuleFixture() {
+        int[] n = { 0 };
+        FleetEngine fleet = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, (d, t, v) -> {
+            if (n[0] == SAMPLES) return;
+            device[n[0]] = d;
+            time[n[0]] = t;
+            value[n[0]++] = v;
+        });
+        while (n[0] < SAMPLES) fleet.step(100);
+        span = time[SAMPLES - 1] - time[0] + 1;
+        engine = new RuleEngine(RuleEngine.parse(RuleEngine.DEFAULTS), DEVICES, (r, s, t, v, on) -> alerts++);
+    }
+
+    @Override public long evaluate() {
+        for (int i = 0; i < SAMPLES; i++) engine.accept(device[i], time[i] + offset, value[i]);
+        offset += span;
+        return alerts;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Buffers for {@link iot.bench.SampleBufferBench}, each pre-filled to the default history of 90. */
+public class SampleBufferFixture implements iot.bench.SampleBufferBench.Ops {
+    static final int MAX = 90;
+
+    static final class Sample {
+        final long t;
+        final double v;
+
+        Sample(long t, double v) {
+            this.t = t;
+            this.v = v;
+        }
+    }
+
+    private final ArrayDeque<Sample> deque = new ArrayDeque<>();
+    private final SampleRing ring = new SampleRing(MAX);
+    private final SampleRing history = new SampleRing(1_000_000, true);
+    private final Series series = new Series(MAX);
+    private long t;
+    private double v;
+
+    public SampleBufferFixture() {
+        for (int i = 0; i < MAX; i++) {
+            deque.addLast(new Sample(t, v));
+            ring.add(t, v);
+            t++;
+        }
+    }
+
+    @Override public void dequeInsert() {
+        synchronized (deque) {
+            if (deque.size() >= MAX) deque.removeFirst();
+            deque.addLast(new Sample(t++, v += 0.25));
+        }
+    }
+
+    @Override public void ringInsert() {
+        ring.add(t++, v += 0.25);
+    }
+
+    @Override public void historyInsert() {
+        history.add(t++, v += 0.25);
+    }
+
+    @Override public List<Sample> dequeSnapshot() {
+        synchronized (deque) {
+            return new ArrayList<>(deque);
+        }
+    }
+
+    @Override public Series ringSnapshot() {
+        ring.snapshot(series, MAX);
+        return series;
+    }
+}
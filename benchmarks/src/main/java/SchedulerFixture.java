@@ -0,0 +1,40 @@
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/** 100k devices scheduled on a timing wheel and on a heap for {@link iot.bench.SchedulerBench}. */
+public class SchedulerFixture implements iot.bench.SchedulerBench.Ops {
+    static final int DEVICES = 100_000, TICKS = 1000;
+
+    private final FleetEngine engine;
+    private final PriorityQueue<long[]> heap = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    private long heapTick;
+    private double sum;
+
+    public SchedulerFixture() {
+        engine = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, (d, t, v) -> sum += v);
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int d = 0; d < DEVICES; d++) {
+            long period = FleetEngine.typeOf(d) == FleetEngine.TEMP ? FleetEngine.TEMP_PERIOD_MS : FleetEngine.MOTION_PERIOD_MS;
+            heap.add(new long[] { 1 + rnd.nextLong(period), period, d });
+        }
+    }
+
+    @Override public long timingWheel() {
+        return engine.step(TICKS);
+    }
+
+    @Override public long heapQueue() {
+        long fired = 0, end = heapTick + TICKS;
+        SplittableRandom rnd = new SplittableRandom(heapTick);
+        for (; heapTick < end; heapTick++) {
+            while (heap.peek()[0] <= heapTick) {
+                long[] e = heap.poll();
+                sum += FleetEngine.sample(rnd, (int) e[2] & 1);
+                e[0] += e[1];
+                heap.add(e);
+                fired++;
+            }
+        }
+        return fired;
+    }
+}
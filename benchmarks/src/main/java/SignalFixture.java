@@ -0,0 +1,54 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/** A 1M-device fleet's signal state for {@link iot.bench.SignalBench}. */
+public class SignalFixture implements iot.bench.SignalBench.Ops {
+    static final int DEVICES = 1_000_000, BATCH = 1000;
+
+    private final SplittableRandom[] rng = new SplittableRandom[DEVICES];
+    private final SignalBank uniform, realistic;
+    private final int[][] idx = new int[2][BATCH];
+    private final long[][] t = new long[2][BATCH];
+    private final double[][] out = new double[2][BATCH];
+    private long now;
+
+    public SignalFixture() {
+        int[] ids = new int[DEVICES];
+        double[] periods = new double[DEVICES];
+        for (int d = 0; d < DEVICES; d++) {
+            ids[d] = d;
+            rng[d] = FleetEngine.deviceRandom(42, d);
+        }
+        Arrays.fill(periods, 1.0);
+        uniform = SignalBank.of(ids, 42, periods, false);
+        realistic = SignalBank.of(ids, 42, periods, true);
+    }
+
+    @Override public double legacySample() {
+        double sum = 0;
+        for (int d = 0; d < DEVICES; d++) sum += FleetEngine.sample(rng[d], FleetEngine.typeOf(d));
+        return sum;
+    }
+
+    @Override public double uniformModel() { return second(uniform); }
+
+    @Override public double realisticModels() { return second(realistic); }
+
+    /* One batch per model and tick, as a fleet shard keeps them; ids alternate temp and motion. */
+    private double second(SignalBank bank) {
+        double sum = 0;
+        now += 1000;
+        for (int from = 0; from < DEVICES; from += BATCH) {
+            for (int m = 0; m < 2; m++) {
+                int n = 0;
+                for (int d = from + m; d < from + BATCH; d += 2) {
+                    idx[m][n] = d;
+                    t[m][n++] = now + from / BATCH;
+                }
+                bank.fill(m, idx[m], t[m], n, out[m]);
+                for (int k = 0; k < n; k++) sum += out[m][k];
+            }
+        }
+        return sum;
+    }
+}
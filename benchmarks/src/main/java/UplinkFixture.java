@@ -0,0 +1,24 @@
+/** 100k-device fleets with and without a simulated uplink for {@link iot.bench.UplinkBench}. */
+public class UplinkFixture implements iot.bench.UplinkBench.Ops {
+    static final int DEVICES = 100_000, TICKS = 1000;
+
+    private final FleetEngine direct, uplink, outages;
+    private double sum;
+
+    public UplinkFixture() {
+        SampleSink sink = (d, t, v) -> sum += v;
+        direct = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, sink);
+        uplink = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, sink);
+        uplink.uplink(Uplink.parse("latency=50ms,jitter=30ms,loss=0.001"));
+        outages = new FleetEngine(DEVICES, 1, 1, 42, 0, 0, sink);
+        Uplink flaky = Uplink.parse("latency=50ms,jitter=30ms,loss=0.001");
+        flaky.outage("50%@0s+5s/10s", DEVICES);
+        outages.uplink(flaky);
+    }
+
+    @Override public long direct() { return direct.step(TICKS); }
+
+    @Override public long uplink() { return uplink.step(TICKS); }
+
+    @Override public long outages() { return outages.step(TICKS); }
+}
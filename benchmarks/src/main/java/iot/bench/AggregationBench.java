@@ -0,0 +1,39 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Window aggregation for 100k devices grouped by type. {@code ingest} is one second of
+ * virtual fleet time (about 58k samples) fed through the aggregator, {@code generateOnly}
+ * the same second into a summing sink, so the difference is the aggregation cost.
+ * {@code readAll} is one sliding-minute read of every device and group, what an exporter
+ * pass would do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AggregationBench {
+    public interface Ops {
+        long ingest();
+        long generateOnly();
+        double readAll();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "AggregationFixture"); }
+
+    @Benchmark
+    public long ingest() { return ops.ingest(); }
+
+    @Benchmark
+    public long generateOnly() { return ops.generateOnly(); }
+
+    @Benchmark
+    public double readAll() { return ops.readAll(); }
+}
@@ -0,0 +1,39 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Temperature chart rendering into an offscreen image. {@code legacyPaint} is the
+ * original TempPanel.paintComponent: a full Path2D line plus gradient area and a
+ * marker per sample, rebuilt on every repaint. See {@link DecimationBench} for the
+ * history view.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ChartPaintBench {
+    public interface Ops {
+        void setUp(int points);
+        Object legacyPaint();
+        Object decimateMinMax();
+        Object decimateLttb();
+    }
+
+    @Param({"90", "1000"})
+    public int points;
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() {
+        ops = Fixtures.load(Ops.class, "ChartPaintFixture");
+        ops.setUp(points);
+    }
+
+    @Benchmark
+    public Object legacyPaint() { return ops.legacyPaint(); }
+}
@@ -0,0 +1,42 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Checkpointing a 1M-device fleet: {@code save} captures every device between ticks and
+ * writes the mapped, checksummed file (about 109 MB); {@code restore} opens and verifies it
+ * and rebuilds an engine with its schedule. Single shots, since each one is a full file
+ * through the page cache rather than a steady-state loop.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+@State(Scope.Thread)
+public class CheckpointBench {
+    public interface Ops {
+        void setUp();
+        long save();
+        long restore();
+        void tearDown();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() {
+        ops = Fixtures.load(Ops.class, "CheckpointFixture");
+        ops.setUp();
+    }
+
+    @TearDown
+    public void tearDown() { ops.tearDown(); }
+
+    @Benchmark
+    public long save() { return ops.save(); }
+
+    @Benchmark
+    public long restore() { return ops.restore(); }
+}
@@ -0,0 +1,33 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Scaling of the multi-process fleet: one operation simulates two minutes of a 200k-device
+ * fleet (about 14M samples) as fast as possible, split across {@code workers} JVMs, timed
+ * from the start signal until the last worker finishes, plus worker startup. With one
+ * core per worker the time should fall close to 1/workers.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class CoordinatorBench {
+    public interface Ops {
+        long run(int workers);
+    }
+
+    @Param({ "1", "2", "4" })
+    public int workers;
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "CoordinatorFixture"); }
+
+    @Benchmark
+    public long run() { return ops.run(workers); }
+}
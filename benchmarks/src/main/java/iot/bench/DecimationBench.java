@@ -0,0 +1,30 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The work the zoomable history view does before painting: reducing one million
+ * samples to one point pair per column of a 1200 px chart.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DecimationBench {
+    private ChartPaintBench.Ops ops;
+
+    @Setup
+    public void setUp() {
+        ops = Fixtures.load(ChartPaintBench.Ops.class, "ChartPaintFixture");
+        ops.setUp(2);
+    }
+
+    @Benchmark
+    public Object minMax() { return ops.decimateMinMax(); }
+
+    @Benchmark
+    public Object lttb() { return ops.decimateLttb(); }
+}
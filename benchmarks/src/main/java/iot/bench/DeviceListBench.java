@@ -0,0 +1,46 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Device list maintenance. {@code legacyRegister} and {@code register} add 20k devices to
+ * the original DefaultListModel (contains + addElement) and to a DeviceRegistry; the
+ * others work on a registry of 100k: one sample through {@code seen}, a prefix search
+ * and a status-filtered refresh of the list model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeviceListBench {
+    public interface Ops {
+        int legacyRegister();
+        int register();
+        long seen();
+        int prefixSearch();
+        int filterOnline();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "DeviceListFixture"); }
+
+    @Benchmark
+    public int legacyRegister() { return ops.legacyRegister(); }
+
+    @Benchmark
+    public int register() { return ops.register(); }
+
+    @Benchmark
+    public long seen() { return ops.seen(); }
+
+    @Benchmark
+    public int prefixSearch() { return ops.prefixSearch(); }
+
+    @Benchmark
+    public int filterOnline() { return ops.filterOnline(); }
+}
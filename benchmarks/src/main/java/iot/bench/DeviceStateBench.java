@@ -0,0 +1,35 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Per-device state for a 1M-device fleet: one operation gives every device a new reading.
+ * {@code objects} is the original model (a device object with a String name, its own
+ * SplittableRandom, a scheduled lambda and a new Sample per reading); {@code table} advances
+ * the RNG word of each device's {@code DeviceTable} row and updates the row in place. Run
+ * with {@code -prof gc} for the allocation and collection figures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx1g" })
+@State(Scope.Thread)
+public class DeviceStateBench {
+    public interface Ops {
+        double objects();
+        double table();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "DeviceStateFixture"); }
+
+    @Benchmark
+    public double objects() { return ops.objects(); }
+
+    @Benchmark
+    public double table() { return ops.table(); }
+}
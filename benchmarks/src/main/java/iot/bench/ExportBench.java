@@ -0,0 +1,46 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Streaming export of a 100k-device fleet: one operation hands 100k samples (one per
+ * device) to the sink. {@code counting} is a plain sink for reference; the others go
+ * through an exporter writing rotated files on its own thread. The queue blocks when
+ * full, so once it has filled the time per operation is the writer's sustained rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBench {
+    public interface Ops {
+        long counting();
+        long csv();
+        long csvGzip();
+        long influx();
+        long binary();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "ExportFixture"); }
+
+    @Benchmark
+    public long counting() { return ops.counting(); }
+
+    @Benchmark
+    public long csv() { return ops.csv(); }
+
+    @Benchmark
+    public long csvGzip() { return ops.csvGzip(); }
+
+    @Benchmark
+    public long influx() { return ops.influx(); }
+
+    @Benchmark
+    public long binary() { return ops.binary(); }
+}
@@ -0,0 +1,20 @@
+package iot.bench;
+
+/**
+ * The simulator's classes are package-private in the unnamed package, which JMH
+ * benchmarks cannot live in and named packages cannot import. Each benchmark therefore
+ * declares an {@code Ops} interface and drives an unnamed-package fixture that
+ * implements it; the fixture is loaded once per trial, so the measured call is an
+ * ordinary monomorphic interface call.
+ */
+final class Fixtures {
+    private Fixtures() {}
+
+    static <T> T load(Class<T> ops, String fixture) {
+        try {
+            return ops.cast(Class.forName(fixture).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot load fixture " + fixture, e);
+        }
+    }
+}
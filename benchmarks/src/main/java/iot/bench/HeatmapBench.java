@@ -0,0 +1,53 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One dashboard frame of the fleet heatmap for 100k devices in a 1200x800 view: the
+ * engine advances 33 ms of sample time (about 1,900 samples at the default rates), then
+ * the heatmap recolors the cells that changed. {@code fillRect} is the original approach,
+ * a Graphics fillRect per cell every frame; {@code value}, {@code alerts} and
+ * {@code staleness} write only changed cells into the image raster; {@code fullRedraw}
+ * is the same after a mode switch or resize, when every cell is written. {@code step} is
+ * the engine alone, which runs on the fleet thread in the dashboard; subtract it for the
+ * EDT's share. 30 fps needs that share well under 33 ms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class HeatmapBench {
+    public interface Ops {
+        void setUp(String mode);
+        int step();
+        int fillRect();
+        int frame();
+        int fullRedraw();
+    }
+
+    @Param({ "VALUE", "ALERTS", "STALENESS" })
+    public String mode;
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() {
+        ops = Fixtures.load(Ops.class, "HeatmapFixture");
+        ops.setUp(mode);
+    }
+
+    @Benchmark
+    public int step() { return ops.step(); }
+
+    @Benchmark
+    public int fillRect() { return ops.fillRect(); }
+
+    @Benchmark
+    public int frame() { return ops.frame(); }
+
+    @Benchmark
+    public int fullRedraw() { return ops.fullRedraw(); }
+}
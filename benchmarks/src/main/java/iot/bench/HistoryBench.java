@@ -0,0 +1,43 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * History queries against two days of a 1000-device store (17M samples in 2.9M records).
+ * {@code scanHour} is one device's hour through the original sequential segment scan,
+ * which reads every record header; {@code rangeHour} is the same query through the block
+ * index. {@code downsampleTwoDays} reduces one device's two days to 5-minute buckets, and
+ * {@code latestAll} reads the newest sample of every device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HistoryBench {
+    public interface Ops {
+        double scanHour();
+        double rangeHour();
+        double downsampleTwoDays();
+        double latestAll();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "HistoryFixture"); }
+
+    @Benchmark
+    public double scanHour() { return ops.scanHour(); }
+
+    @Benchmark
+    public double rangeHour() { return ops.rangeHour(); }
+
+    @Benchmark
+    public double downsampleTwoDays() { return ops.downsampleTwoDays(); }
+
+    @Benchmark
+    public double latestAll() { return ops.latestAll(); }
+}
@@ -0,0 +1,39 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Activity log cost per sample: the original {@code log()} formatted every line up
+ * front with a fresh SimpleDateFormat and String.format. The pipeline now queues the
+ * raw record and only formats the lines that are painted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LogFormatBench {
+    public interface Ops {
+        String legacyFormat();
+        /** What a sensor thread pays now: one ring slot, drained by the frame timer. */
+        int enqueue();
+        /** What the EDT pays per visible line. */
+        String formatVisibleLine();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "LogFormatFixture"); }
+
+    @Benchmark
+    public String legacyFormat() { return ops.legacyFormat(); }
+
+    @Benchmark
+    public int enqueue() { return ops.enqueue(); }
+
+    @Benchmark
+    public String formatVisibleLine() { return ops.formatVisibleLine(); }
+}
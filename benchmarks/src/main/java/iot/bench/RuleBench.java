@@ -0,0 +1,32 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Rule engine throughput on the default rules (threshold, zone activity, silence) for
+ * 100k devices. One invocation replays {@value #SAMPLES} pre-generated fleet samples with
+ * time moving forward, so scores are samples per second; each sample checks two rules.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleBench {
+    public static final int SAMPLES = 1 << 16;
+
+    public interface Ops {
+        long evaluate();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "RuleFixture"); }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long evaluate() { return ops.evaluate(); }
+}
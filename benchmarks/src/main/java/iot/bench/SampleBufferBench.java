@@ -0,0 +1,45 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Sample buffer insert and snapshot: the original boxed ArrayDeque guarded by its own
+ * monitor (as {@code tempBuf} was) against the lock-free SampleRing that replaced it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleBufferBench {
+    public interface Ops {
+        void dequeInsert();
+        void ringInsert();
+        /** The dashboard ring: one million samples plus the min/max pyramid. */
+        void historyInsert();
+        Object dequeSnapshot();
+        Object ringSnapshot();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "SampleBufferFixture"); }
+
+    @Benchmark
+    public void dequeInsert() { ops.dequeInsert(); }
+
+    @Benchmark
+    public void ringInsert() { ops.ringInsert(); }
+
+    @Benchmark
+    public void historyInsert() { ops.historyInsert(); }
+
+    @Benchmark
+    public Object dequeSnapshot() { return ops.dequeSnapshot(); }
+
+    @Benchmark
+    public Object ringSnapshot() { return ops.ringSnapshot(); }
+}
@@ -0,0 +1,34 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Scheduler tick throughput for 100k devices: one operation is one second of virtual
+ * time (1000 ticks of 1 ms, about 58k samples). The FleetEngine timing wheel is run
+ * inline without pacing; {@code heapQueue} is the same schedule on a binary heap of due
+ * times, which is what a ScheduledThreadPoolExecutor keeps per task.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SchedulerBench {
+    public interface Ops {
+        long timingWheel();
+        long heapQueue();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "SchedulerFixture"); }
+
+    @Benchmark
+    public long timingWheel() { return ops.timingWheel(); }
+
+    @Benchmark
+    public long heapQueue() { return ops.heapQueue(); }
+}
@@ -0,0 +1,39 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Sample generation for one second of a 1M-device fleet at 1 Hz: 1M values, produced
+ * in batches of 1000 per 1 ms tick, split by model as the fleet shards keep them.
+ * {@code legacySample} is the original per-value SplittableRandom generator,
+ * {@code uniformModel} the same distribution through a SignalBank, and
+ * {@code realisticModels} diurnal temperature, bursty motion and faults.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SignalBench {
+    public interface Ops {
+        double legacySample();
+        double uniformModel();
+        double realisticModels();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "SignalFixture"); }
+
+    @Benchmark
+    public double legacySample() { return ops.legacySample(); }
+
+    @Benchmark
+    public double uniformModel() { return ops.uniformModel(); }
+
+    @Benchmark
+    public double realisticModels() { return ops.realisticModels(); }
+}
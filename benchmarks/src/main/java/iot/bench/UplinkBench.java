@@ -0,0 +1,39 @@
+package iot.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of the simulated uplink on a 100k-device fleet: one operation is one second of
+ * virtual time (1000 ticks of 1 ms, about 58k samples). {@code direct} hands samples
+ * straight to the sink, {@code uplink} queues every sample for 50..80 ms of latency, and
+ * {@code outages} also takes half the fleet offline for 5 s of every 10 s, so it includes
+ * buffering and the reconnect flushes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UplinkBench {
+    public interface Ops {
+        long direct();
+        long uplink();
+        long outages();
+    }
+
+    private Ops ops;
+
+    @Setup
+    public void setUp() { ops = Fixtures.load(Ops.class, "UplinkFixture"); }
+
+    @Benchmark
+    public long direct() { return ops.direct(); }
+
+    @Benchmark
+    public long uplink() { return ops.uplink(); }
+
+    @Benchmark
+    public long outages() { return ops.outages(); }
+}
@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BitsTest {
+
+    @Test
+    void fieldsOfEveryWidthAcrossWordBoundaries() {
+        Random rnd = new Random(11);
+        long[] w = new long[32_768];
+        int[] at = new int[20_000], width = new int[at.length];
+        long[] val = new long[at.length];
+        int pos = 0;
+        for (int i = 0; i < at.length; i++) {
+            int n = i < 65 ? i : rnd.nextInt(65);
+            long v = n == 0 ? 0 : rnd.nextLong() >>> (64 - n);
+            if (i % 7 == 0 && n > 0) v = n == 64 ? -1L : (1L << n) - 1;     // all ones
+            at[i] = pos;
+            width[i] = n;
+            val[i] = v;
+            pos = Bits.put(w, pos, v, n);
+        }
+        for (int i = 0; i < at.length; i++) assertEquals(val[i], Bits.get(w, at[i], width[i]), "field " + i);
+    }
+
+    @Test
+    void putMasksToTheFieldWidth() {
+        long[] w = new long[2];
+        int pos = Bits.put(w, 0, -1L, 3);
+        Bits.put(w, pos, 0, 5);
+        assertEquals(0b111, Bits.get(w, 0, 3));
+        assertEquals(0, Bits.get(w, 3, 61));
+    }
+
+    @Test
+    void gammaCodes() {
+        long[] runs = { 1, 2, 3, 4, 7, 8, 255, 256, 1L << 20, (1L << 31) + 1, (1L << 62) + 12345 };
+        long[] w = new long[64];
+        int pos = 0;
+        for (long r : runs) pos = Bits.gamma(w, pos, r);
+        int vp = 0;
+        for (long r : runs) {
+            int z = 0;
+            while (Bits.get(w, vp++, 1) == 0) z++;
+            long n = (1L << z) | (z == 0 ? 0 : Bits.get(w, vp, z));
+            vp += z;
+            assertEquals(r, n);
+        }
+        assertEquals(pos, vp);
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** A fleet written to a checkpoint and read back must resume exactly where it stopped, whatever the shard count. */
+class CheckpointTest {
+    private static final int N = 5_000;
+    private static final long SEED = 7, EPOCH = 1_700_000_000_000L;
+
+    @TempDir Path dir;
+
+    @Test
+    void everyDeviceSurvivesSaveAndRestore() throws Exception {
+        FleetEngine e = fleet(3, (d, t, v) -> {}, true);
+        e.step(1_200);
+        FleetEngine.Frozen saved = e.capture(null);
+        Path file = dir.resolve("fleet.ckpt");
+        Checkpoint.write(file, saved.sections());
+        FleetEngine.Frozen read = FleetEngine.Frozen.read(new Checkpoint(file));
+        assertSameDevices(saved, read);
+
+        // restored onto a different shard count, then captured again without stepping
+        FleetEngine.Frozen again = FleetEngine.restore(read, 2, 0, (d, t, v) -> {}).capture(null);
+        assertSameDevices(saved, again);
+    }
+
+    @Test
+    void restoredFleetEmitsTheSameSamples() throws Exception {
+        Streams reference = new Streams();
+        fleet(3, reference, false).step(3_000);
+
+        FleetEngine e = fleet(3, (d, t, v) -> {}, false);
+        e.step(1_200);
+        Path file = dir.resolve("fleet.ckpt");
+        Checkpoint.write(file, e.capture(null).sections());
+        FleetEngine.Frozen f = FleetEngine.Frozen.read(new Checkpoint(file));
+        Streams resumed = new Streams();
+        FleetEngine.restore(f, 2, 0, resumed).step((int) (3_000 - f.tick));
+
+        long end = EPOCH + 3_000 * 10L, compared = 0;
+        for (int d = 0; d < N; d++) {
+            int done = (int) (f.rows[d * DeviceTable.ROW + DeviceTable.COUNT] >>> 8);
+            List<long[]> want = reference.per[d], have = resumed.per[d];
+            List<long[]> tail = new ArrayList<>();
+            for (int k = done; k < want.size(); k++) if (want.get(k)[0] < end) tail.add(want.get(k));
+            assertEquals(tail.size(), have.size(), "device " + d);
+            for (int k = 0; k < tail.size(); k++) assertArrayEquals(tail.get(k), have.get(k), "device " + d + " sample " + k);
+            compared += tail.size();
+        }
+        assertTrue(compared > N, "compared " + compared);
+    }
+
+    private static FleetEngine fleet(int shards, SampleSink sink, boolean realistic) {
+        FleetEngine e = new FleetEngine(N, shards, 10, SEED, 0, EPOCH, sink, realistic);
+        for (int d = 0; d < 50; d++) e.setRate(d, 200);
+        return e;
+    }
+
+    private static void assertSameDevices(FleetEngine.Frozen want, FleetEngine.Frozen have) {
+        assertEquals(want.n, have.n);
+        assertEquals(want.seed, have.seed);
+        assertEquals(want.epoch, have.epoch);
+        assertEquals(want.tickMillis, have.tickMillis);
+        assertEquals(want.realistic, have.realistic);
+        assertEquals(want.tick, have.tick);
+        assertArrayEquals(want.ids, have.ids);
+        for (int d = 0; d < want.n; d++) {
+            String at = "device " + want.ids[d];
+            assertEquals(want.due[d], have.due[d], at);
+            assertEquals(want.period[d], have.period[d], at);
+            for (int k = 0; k < DeviceTable.ROW; k++) assertEquals(want.rows[d * DeviceTable.ROW + k], have.rows[d * DeviceTable.ROW + k], at);
+            for (int k = 0; k < SignalBank.CELL; k++) assertEquals(want.cells[d * SignalBank.CELL + k], have.cells[d * SignalBank.CELL + k], at);
+            assertEquals(want.bias[d], have.bias[d], at);
+            assertEquals(want.held[d], have.held[d], at);
+            assertEquals(want.burst[d], have.burst[d], at);
+            assertEquals(want.faultIn[d], have.faultIn[d], at);
+            assertEquals(want.fault[d], have.fault[d], at);
+        }
+    }
+
+    /* Per device: (time, raw value bits) in emission order. */
+    private static final class Streams implements SampleSink {
+        @SuppressWarnings("unchecked")
+        final List<long[]>[] per = new List[N];
+
+        Streams() { for (int i = 0; i < N; i++) per[i] = new ArrayList<>(); }
+
+        @Override public synchronized void accept(int device, long t, double v) {
+            per[device].add(new long[] { t, Double.doubleToRawLongBits(v) });
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Round trips through the store's encoders: what goes in must come back bit for bit, before and after sealing. */
+class TelemetryStoreTest {
+    private static final long T0 = 1_700_000_000_000L;
+
+    @TempDir Path dir;
+
+    /* Default segment size and age; retention long enough that the 2^40 ms timestamp jump expires nothing. */
+    private TelemetryStore open() throws IOException {
+        return new TelemetryStore(dir, 64 << 20, 3_600_000, 1L << 50, Long.MAX_VALUE);
+    }
+
+    @Test
+    void timestampsAtEveryDeltaOfDeltaBoundary() throws IOException {
+        long[] dods = { 0, 1, -1, 63, 64, 65, -63, -64, 255, 256, 257, -255, -256, -257,
+                        2047, 2048, 2049, -2047, -2048, -2049, 1L << 40, -(1L << 40) + 5_000, 0, 0 };
+        long[] t = new long[dods.length + 1];
+        t[0] = T0;
+        long delta = 5_000;
+        for (int i = 0; i < dods.length; i++) {
+            delta += dods[i];
+            t[i + 1] = t[i] + delta;
+        }
+        double[] v = new double[t.length];
+        Arrays.fill(v, 21.5);
+        assertRoundTrip(FleetEngine.TEMP, t, v);
+    }
+
+    @Test
+    void nanInfinityNegativeAndSignedZeroValues() throws IOException {
+        double[] v = { 20.0, Double.NaN, -20.0, -0.0, 0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                       Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+                       Double.longBitsToDouble(0x8000_0000_0000_0001L),      // xor of 64 significant bits
+                       Double.longBitsToDouble(0x7ff8_0000_0000_0001L),      // NaN with a payload
+                       20.000000000000004, 20.0, 20.0, -273.15, Double.NaN, Double.NaN, 1e-300 };
+        long[] t = new long[v.length];
+        for (int i = 0; i < t.length; i++) t[i] = T0 + i * 1_000L;
+        assertRoundTrip(FleetEngine.TEMP, t, v);
+    }
+
+    @Test
+    void randomTemperaturesAcrossManyChunks() throws IOException {
+        Random rnd = new Random(7);
+        int n = 20_000;
+        long[] t = new long[n];
+        double[] v = new double[n];
+        long now = T0;
+        for (int i = 0; i < n; i++) {
+            now += 1 + rnd.nextInt(3_000);
+            t[i] = now;
+            v[i] = rnd.nextInt(10) == 0 ? -rnd.nextDouble() * 40 : 15 + rnd.nextGaussian() * 5;
+        }
+        assertRoundTrip(FleetEngine.TEMP, t, v);
+    }
+
+    @Test
+    void longAndShortMotionRuns() throws IOException {
+        int[] runs = { 1, 1, 2, 3, 100_000, 1, 65_536, 65_537, 2, 1, 4_095, 4_096, 1 };
+        int n = 0;
+        for (int r : runs) n += r;
+        long[] t = new long[n];
+        double[] v = new double[n], expected = new double[n];
+        int k = 0;
+        for (int i = 0; i < runs.length; i++) {
+            for (int j = 0; j < runs[i]; j++, k++) {
+                t[k] = T0 + k * 10L;
+                v[k] = i % 2 == 0 ? (j % 2 == 0 ? 0.0 : 0.3) : (j % 2 == 0 ? 1.0 : 0.7);   // stored as 0 / 1
+                expected[k] = i % 2 == 0 ? 0 : 1;
+            }
+        }
+        assertRoundTrip(FleetEngine.MOTION, t, v, expected);
+    }
+
+    @Test
+    void segmentsRollAndReopen() throws IOException {
+        int devices = 4, n = 40_000;
+        long[][] t = new long[devices][n];
+        double[][] v = new double[devices][n];
+        Random rnd = new Random(3);
+        try (TelemetryStore store = new TelemetryStore(dir, 1 << 16, 600_000, 1L << 50, Long.MAX_VALUE)) {
+            for (int d = 0; d < devices; d++) assertEquals(d, store.register("dev-" + d, d % 2 == 0 ? FleetEngine.TEMP : FleetEngine.MOTION));
+            for (int i = 0; i < n; i++) {
+                for (int d = 0; d < devices; d++) {
+                    t[d][i] = T0 + i * 250L + d;
+                    v[d][i] = d % 2 == 0 ? Math.round(rnd.nextGaussian() * 1000) / 100.0 : (i / 37 + d) % 2;
+                    store.accept(d, t[d][i], v[d][i]);
+                }
+            }
+            for (int d = 0; d < devices; d++) assertSamples(store, d, t[d], v[d]);   // mostly sealed, the rest still open
+            store.flush();
+            assertTrue(store.segments().size() > 3, "segments: " + store.segments().size());
+        }
+        try (TelemetryStore store = new TelemetryStore(dir, 1 << 16, 600_000, 1L << 50, Long.MAX_VALUE)) {
+            assertEquals(devices, store.deviceCount());
+            for (int d = 0; d < devices; d++) assertSamples(store, d, t[d], v[d]);
+        }
+    }
+
+    @Test
+    void downsampleMatchesTheSamples() throws IOException {
+        int n = 10_000;
+        try (TelemetryStore store = new TelemetryStore(dir)) {
+            int id = store.register("t", FleetEngine.TEMP);
+            for (int i = 0; i < n; i++) store.accept(id, T0 + i * 100L, i % 100 - 50.0);
+            BucketCursor b = store.downsample(id, T0, T0 + n * 100L, 60_000, new BucketCursor());
+            long total = 0;
+            while (b.next()) {
+                assertEquals(-50.0, b.min());
+                assertEquals(49.0, b.max());
+                assertEquals(-0.5, b.mean(), 1e-9);
+                total += b.count();
+            }
+            assertEquals(n, total);
+        }
+    }
+
+    private void assertRoundTrip(int type, long[] t, double[] v) throws IOException {
+        assertRoundTrip(type, t, v, v);
+    }
+
+    /* Reads back before sealing (open chunk), after flush (sealed records) and after reopening (rebuilt index). */
+    private void assertRoundTrip(int type, long[] t, double[] v, double[] expected) throws IOException {
+        try (TelemetryStore store = open()) {
+            int id = store.register("device", type);
+            for (int i = 0; i < t.length; i++) store.accept(id, t[i], v[i]);
+            assertSamples(store, id, t, expected);
+            store.flush();
+            assertSamples(store, id, t, expected);
+        }
+        try (TelemetryStore store = open()) {
+            assertSamples(store, 0, t, expected);
+        }
+    }
+
+    private static void assertSamples(TelemetryStore store, int device, long[] t, double[] v) {
+        SampleCursor c = store.range(device, Long.MIN_VALUE, Long.MAX_VALUE, new SampleCursor());
+        assertEquals(t.length, c.size());
+        assertArrayEquals(t, c.times());
+        for (int i = 0; i < v.length; i++) {
+            assertEquals(Double.doubleToRawLongBits(v[i]), Double.doubleToRawLongBits(c.valueAt(i)), "sample " + i);
+        }
+    }
+}